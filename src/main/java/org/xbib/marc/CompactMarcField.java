@@ -0,0 +1,431 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compact, immutable MARC field.
+ *
+ * The subfield IDs are kept as codes in a byte array and the subfield values as end offsets into a single
+ * character array, instead of a linked list of subfield objects with two strings each. Subfield objects
+ * and value strings are only created when asked for. If a subfield ID is not a single character
+ * below U+0100, the subfield IDs of the field are kept as strings.
+ *
+ * A compact MARC field is built by {@link MarcField.Builder#buildCompact()}, by {@link MarcField#compact()},
+ * or by a MARC generator with compact fields enabled, which collects the subfields directly into a
+ * {@link Buffer} while parsing.
+ */
+public final class CompactMarcField extends MarcField {
+
+    private static final byte[] NO_CODES = new byte[0];
+
+    private static final int[] NO_ENDS = new int[0];
+
+    private static final char[] NO_CHARS = new char[0];
+
+    private final String tag;
+
+    private final String indicator;
+
+    private final String value;
+
+    private final int position;
+
+    private final int length;
+
+    private final boolean control;
+
+    private final boolean controlFieldsDisabled;
+
+    private final MarcFieldValidator validator;
+
+    private final byte[] codes;
+
+    private final String[] ids;
+
+    /**
+     * The end offsets of the subfield values in the character array, or the complement of the end offset
+     * for a null value.
+     */
+    private final int[] ends;
+
+    private final char[] chars;
+
+    CompactMarcField(MarcField.Builder builder, Buffer buffer) {
+        super(null);
+        this.tag = builder.tag();
+        this.indicator = builder.indicator();
+        this.value = builder.value();
+        this.position = builder.position();
+        this.length = builder.length();
+        this.control = builder.isControl();
+        this.controlFieldsDisabled = builder.isControlFieldsDisabled();
+        this.validator = builder.validator();
+        Buffer b = buffer;
+        if (b == null || !builder.subfields().isEmpty()) {
+            b = new Buffer();
+            for (Subfield subfield : builder.subfields()) {
+                b.add(subfield.getId(), subfield.getValue());
+            }
+            if (buffer != null) {
+                b.addAll(buffer);
+                buffer.reset();
+            }
+        }
+        this.codes = b.ids != null ? null : b.count == 0 ? NO_CODES : Arrays.copyOf(b.codes, b.count);
+        this.ids = b.ids != null ? Arrays.copyOf(b.ids, b.count) : null;
+        this.ends = b.count == 0 ? NO_ENDS : Arrays.copyOf(b.ends, b.count);
+        this.chars = b.length == 0 ? NO_CHARS : Arrays.copyOf(b.chars, b.length);
+        b.reset();
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public String getIndicator() {
+        return indicator;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the number of subfields.
+     * @return the number of subfields
+     */
+    public int getSubfieldCount() {
+        return ends.length;
+    }
+
+    /**
+     * Return the ID of a subfield.
+     * @param i the subfield index
+     * @return the subfield ID
+     */
+    public String getSubfieldId(int i) {
+        return codes != null ? MarcSymbolTable.symbol((char) (codes[i] & 0xff)) : ids[i];
+    }
+
+    /**
+     * Return the value of a subfield.
+     * @param i the subfield index
+     * @return the subfield value, or null
+     */
+    public String getSubfieldValue(int i) {
+        if (ends[i] < 0) {
+            return null;
+        }
+        int start = start(i);
+        return new String(chars, start, ends[i] - start);
+    }
+
+    /**
+     * Return the subfields. The subfields are created on each call, changes to the deque do not
+     * change this field.
+     * @return a new deque of the subfields
+     */
+    @Override
+    public Deque<Subfield> getSubfields() {
+        Deque<Subfield> deque = new LinkedList<>();
+        for (int i = 0; i < ends.length; i++) {
+            deque.add(subfield(i));
+        }
+        return deque;
+    }
+
+    @Override
+    public List<String> getSubfieldValues(Collection<String> subfieldIds) {
+        List<String> list = new LinkedList<>();
+        for (int i = 0; i < ends.length; i++) {
+            if (subfieldIds.contains(getSubfieldId(i))) {
+                list.add(getSubfieldValue(i));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public Deque<Subfield> getSubfield(String subfieldId) {
+        Deque<Subfield> deque = new LinkedList<>();
+        for (int i = 0; i < ends.length; i++) {
+            if (getSubfieldId(i).equals(subfieldId)) {
+                deque.add(subfield(i));
+            }
+        }
+        return deque;
+    }
+
+    @Override
+    public Subfield getFirstSubfield() {
+        return ends.length == 0 ? emptySubfield() : subfield(0);
+    }
+
+    @Override
+    public String getFirstSubfieldValue(String subfieldId) {
+        for (int i = 0; i < ends.length; i++) {
+            if (getSubfieldId(i).equals(subfieldId)) {
+                return getSubfieldValue(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Subfield getLastSubfield() {
+        return ends.length == 0 ? emptySubfield() : subfield(ends.length - 1);
+    }
+
+    @Override
+    public String getLastSubfieldValue(String subfieldId) {
+        for (int i = ends.length - 1; i >= 0; i--) {
+            if (getSubfieldId(i).equals(subfieldId)) {
+                return getSubfieldValue(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean isControl() {
+        return control;
+    }
+
+    @Override
+    public boolean isControlFieldsDisabled() {
+        return controlFieldsDisabled;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tag == null;
+    }
+
+    @Override
+    public boolean isTagValid() {
+        return validator.isTagValid(tag);
+    }
+
+    @Override
+    public boolean isIndicatorValid() {
+        if (control || indicator == null) {
+            return true;
+        }
+        return validator.isIndicatorValid(indicator);
+    }
+
+    @Override
+    public boolean areAllSubfieldsValid() {
+        if (control) {
+            return true;
+        }
+        for (int i = 0; i < ends.length; i++) {
+            if (!validator.isSubfieldIdValid(getSubfieldId(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean matchesValue(Pattern pattern) {
+        if (value != null && pattern.matcher(value).matches()) {
+            return true;
+        }
+        for (int i = 0; i < ends.length; i++) {
+            if (ends[i] >= 0) {
+                int start = start(i);
+                if (pattern.matcher(CharBuffer.wrap(chars, start, ends[i] - start)).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getSubfieldIds() {
+        if (codes != null) {
+            char[] ch = new char[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                ch[i] = (char) (codes[i] & 0xff);
+            }
+            Arrays.sort(ch);
+            return new String(ch);
+        }
+        String[] s = ids.clone();
+        Arrays.sort(s);
+        return String.join("", s);
+    }
+
+    @Override
+    public CompactMarcField compact() {
+        return this;
+    }
+
+    private Subfield subfield(int i) {
+        return MarcField.subfield(getSubfieldId(i), getSubfieldValue(i));
+    }
+
+    private int start(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int end = ends[i - 1];
+        return end < 0 ? ~end : end;
+    }
+
+    /**
+     * A reusable buffer for collecting the subfields of a compact MARC field.
+     */
+    static final class Buffer {
+
+        private byte[] codes;
+
+        private String[] ids;
+
+        private int[] ends;
+
+        private char[] chars;
+
+        private int count;
+
+        private int length;
+
+        Buffer() {
+            this.codes = new byte[16];
+            this.ends = new int[16];
+            this.chars = new char[256];
+        }
+
+        /**
+         * Add a subfield.
+         * @param id the validated subfield ID
+         * @param value the subfield value, or null
+         */
+        void add(String id, String value) {
+            addId(id);
+            if (value == null) {
+                ends[count++] = ~length;
+            } else {
+                add(value, 0);
+            }
+        }
+
+        /**
+         * Add a subfield with the value from a position of a string to the end of the string.
+         * @param id the validated subfield ID
+         * @param s the string
+         * @param from the position of the value in the string
+         */
+        void add(String id, String s, int from) {
+            addId(id);
+            add(s, from);
+        }
+
+        /**
+         * Add a subfield with the remaining characters of a character buffer as value.
+         * @param id the validated subfield ID
+         * @param value the value
+         */
+        void add(String id, CharBuffer value) {
+            addId(id);
+            int n = value.remaining();
+            ensureChars(n);
+            value.get(chars, length, n);
+            length += n;
+            ends[count++] = length;
+        }
+
+        void addAll(Buffer buffer) {
+            for (int i = 0; i < buffer.count; i++) {
+                addId(buffer.ids != null ? buffer.ids[i] : MarcSymbolTable.symbol((char) (buffer.codes[i] & 0xff)));
+                int end = buffer.ends[i];
+                int start = i == 0 ? 0 : buffer.ends[i - 1] < 0 ? ~buffer.ends[i - 1] : buffer.ends[i - 1];
+                if (end < 0) {
+                    ends[count++] = ~length;
+                } else {
+                    ensureChars(end - start);
+                    System.arraycopy(buffer.chars, start, chars, length, end - start);
+                    length += end - start;
+                    ends[count++] = length;
+                }
+            }
+        }
+
+        void reset() {
+            count = 0;
+            length = 0;
+            ids = null;
+        }
+
+        private void add(String s, int from) {
+            int n = s.length() - from;
+            ensureChars(n);
+            s.getChars(from, s.length(), chars, length);
+            length += n;
+            ends[count++] = length;
+        }
+
+        private void addId(String id) {
+            if (count == ends.length) {
+                codes = Arrays.copyOf(codes, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                if (ids != null) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+            }
+            if (ids == null) {
+                if (id != null && id.length() == 1 && id.charAt(0) < 256) {
+                    codes[count] = (byte) id.charAt(0);
+                    return;
+                }
+                ids = new String[ends.length];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = MarcSymbolTable.symbol((char) (codes[i] & 0xff));
+                }
+            }
+            ids[count] = id;
+        }
+
+        private void ensureChars(int n) {
+            if (length + n > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(length + n, chars.length * 2));
+            }
+        }
+    }
+}
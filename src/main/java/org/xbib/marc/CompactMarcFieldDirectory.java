@@ -0,0 +1,250 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compact ISO 2709 record directory, for a {@link MarcGenerator} that locates fields by their position.
+ *
+ * The directory entries are parsed digit by digit from the encoded record label and directory, into parallel
+ * arrays of field positions, field lengths and the offsets of the tags in the encoded directory,
+ * sorted by field position. Field positions are looked up by binary search, with a shortcut for the next
+ * position in sequence, which is the usual case. Field builders are only created when a field is looked up.
+ *
+ * Like in {@link MarcFieldDirectory}, if two entries have the same position, the last entry wins.
+ */
+public final class CompactMarcFieldDirectory {
+
+    private static final int TAG_LENGTH = 3;
+
+    private final CharSequence encodedDirectory;
+
+    private final int[] positions;
+
+    private final int[] lengths;
+
+    private final int[] tagOffsets;
+
+    private final MarcField.Builder[] builders;
+
+    private int next;
+
+    /**
+     * Parse a record directory.
+     * @param label the record label
+     * @param encodedDirectory the encoded record label and directory
+     * @throws IOException if the directory is not valid
+     */
+    public CompactMarcFieldDirectory(RecordLabel label, CharSequence encodedDirectory) throws IOException {
+        if (label == null) {
+            throw new IllegalArgumentException("label must not be null");
+        }
+        this.encodedDirectory = encodedDirectory;
+        int directoryLength = label.getBaseAddressOfData() - (RecordLabel.LENGTH + 1);
+        // assume that negative values means prohibiting directory access
+        if (directoryLength <= 0
+                || encodedDirectory.length() < directoryLength
+                || label.getDataFieldLength() <= 0
+                || label.getStartingCharacterPositionLength() <= 0
+                || label.getSegmentIdentifierLength() < 0) {
+            this.positions = new int[0];
+            this.lengths = positions;
+            this.tagOffsets = positions;
+            this.builders = new MarcField.Builder[0];
+            return;
+        }
+        int dataFieldLength = label.getDataFieldLength();
+        int startingCharacterPositionLength = label.getStartingCharacterPositionLength();
+        int entrysize = TAG_LENGTH + dataFieldLength + startingCharacterPositionLength
+                + label.getSegmentIdentifierLength();
+        if (directoryLength % entrysize != 0) {
+            throw new IOException("invalid ISO 2709 directory length: "
+                    + directoryLength + ", definitions in record label: "
+                    + " data field length = " + dataFieldLength
+                    + " starting character position length = " + startingCharacterPositionLength
+                    + " segment identifier length = " + label.getSegmentIdentifierLength());
+        }
+        int n = directoryLength / entrysize;
+        // the keys are the position in the high and the entry number in the low 32 bits
+        long[] keys = new long[n];
+        int[] entryLengths = new int[n];
+        boolean sorted = true;
+        for (int e = 0; e < n; e++) {
+            int i = RecordLabel.LENGTH + e * entrysize;
+            int l = i + TAG_LENGTH + dataFieldLength;
+            if (l + startingCharacterPositionLength > encodedDirectory.length()) {
+                throw new IOException("directory entry corrupt for tag = " + tag(i) + " at position " + i +
+                        " directory length = " + directoryLength);
+            }
+            int length = parseDigits(encodedDirectory, i + TAG_LENGTH, dataFieldLength);
+            int start = parseDigits(encodedDirectory, l, startingCharacterPositionLength);
+            if (length < 0 || start < 0) {
+                throw new IOException("directory entry corrupt for tag = " + tag(i) + " at position " + i +
+                        " directory length = " + directoryLength);
+            }
+            keys[e] = ((long) (label.getBaseAddressOfData() + start) << 32) | e;
+            entryLengths[e] = length;
+            if (e > 0 && keys[e] < keys[e - 1]) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(keys);
+        }
+        // remove duplicate positions, keeping the last entry
+        int size = 0;
+        for (int k = 0; k < n; k++) {
+            if (k + 1 < n && (keys[k + 1] >>> 32) == (keys[k] >>> 32)) {
+                continue;
+            }
+            keys[size++] = keys[k];
+        }
+        this.positions = new int[size];
+        this.lengths = new int[size];
+        this.tagOffsets = new int[size];
+        for (int k = 0; k < size; k++) {
+            int e = (int) keys[k];
+            positions[k] = (int) (keys[k] >>> 32);
+            lengths[k] = entryLengths[e];
+            tagOffsets[k] = RecordLabel.LENGTH + e * entrysize;
+        }
+        this.builders = new MarcField.Builder[size];
+    }
+
+    /**
+     * Return true if the directory has no entries.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return positions.length == 0;
+    }
+
+    /**
+     * Return the number of entries, with unique positions.
+     * @return the number of entries
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Find the entry of a field position.
+     * @param position the field position
+     * @return the entry number, or -1 if there is no field at the position
+     */
+    public int indexOf(int position) {
+        int i = next < positions.length && positions[next] == position ?
+                next : Arrays.binarySearch(positions, position);
+        if (i < 0) {
+            return -1;
+        }
+        next = i + 1;
+        return i;
+    }
+
+    /**
+     * Return the field builder of an entry, with tag, position and length. The builder is created
+     * on the first call and the same builder is returned on later calls.
+     * @param i the entry number
+     * @return the field builder
+     */
+    public MarcField.Builder getBuilder(int i) {
+        if (builders[i] == null) {
+            builders[i] = MarcField.builder()
+                    .tag(tag(tagOffsets[i]))
+                    .position(positions[i])
+                    .length(lengths[i]);
+        }
+        return builders[i];
+    }
+
+    /**
+     * Check if the field of an entry is wanted by a field projection, without creating the tag.
+     * @param i the entry number
+     * @param fieldProjection the field projection
+     * @return true if the field is wanted
+     */
+    public boolean includes(int i, MarcFieldProjection fieldProjection) {
+        return fieldProjection.includes(encodedDirectory, tagOffsets[i]);
+    }
+
+    /**
+     * Check if the field of an entry has a tag, without creating the tag. Like the default field validator,
+     * the placeholder characters {@code -#.^_} in the directory match a blank.
+     * @param i the entry number
+     * @param tag the tag
+     * @return true if the field has the tag
+     */
+    public boolean hasTag(int i, String tag) {
+        int offset = tagOffsets[i];
+        if (tag == null || tag.length() != TAG_LENGTH || offset + TAG_LENGTH > encodedDirectory.length()) {
+            return false;
+        }
+        for (int j = 0; j < TAG_LENGTH; j++) {
+            char ch = encodedDirectory.charAt(offset + j);
+            if (ch == '-' || ch == '#' || ch == '.' || ch == '^' || ch == '_') {
+                ch = ' ';
+            }
+            if (ch != tag.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the field position of an entry.
+     * @param i the entry number
+     * @return the field position
+     */
+    public int getPosition(int i) {
+        return positions[i];
+    }
+
+    /**
+     * Return the field length of an entry.
+     * @param i the entry number
+     * @return the field length
+     */
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    private String tag(int offset) {
+        int end = Math.min(offset + TAG_LENGTH, encodedDirectory.length());
+        return offset < end ? encodedDirectory.subSequence(offset, end).toString() : null;
+    }
+
+    /**
+     * Parse decimal digits.
+     * @return the value, or -1 if there is a character that is not a digit, or if the value overflows
+     */
+    private static int parseDigits(CharSequence s, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
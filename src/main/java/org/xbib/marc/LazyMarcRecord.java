@@ -0,0 +1,373 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.io.BytesArray;
+import org.xbib.marc.io.BytesReference;
+import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.io.SeparatorScanner;
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A MARC record that keeps the bytes of an ISO 2709 record and its parsed directory, and decodes
+ * the fields only when they are accessed.
+ *
+ * The lookups by tag, like {@link #getAll(String)} or {@link #getFirst(String)}, only decode the fields
+ * with the tag. All other access to the fields, and the map view, decode all fields. A decoded field is kept.
+ * If the directory does not describe the record data exactly, the record is parsed like by
+ * {@link Marc.Builder#recordIterator()} on first access.
+ *
+ * The record bytes are available by {@link #getRecordBytes()} until the fields are filtered,
+ * so that an unchanged record can be copied to an ISO 2709 output without encoding it again.
+ */
+public final class LazyMarcRecord extends MarcRecord {
+
+    private final byte[] bytes;
+
+    private final Charset charset;
+
+    private final MarcField[] fields;
+
+    private CompactMarcFieldDirectory directory;
+
+    private boolean filtered;
+
+    /**
+     * Create a MARC record over ISO 2709 record bytes.
+     * @param format the format of the record
+     * @param type the type of the record
+     * @param recordLabel the record label
+     * @param bytes the record bytes, beginning with the record label
+     * @param charset the character set of the record
+     * @param comparator a tag comparator for the map view
+     */
+    public LazyMarcRecord(String format, String type, RecordLabel recordLabel, byte[] bytes, Charset charset,
+                          Comparator<String> comparator) {
+        super(format, type, recordLabel, comparator);
+        this.bytes = bytes;
+        this.charset = charset;
+        this.directory = parseDirectory(recordLabel, bytes);
+        this.fields = new MarcField[directory != null ? directory.size() : 0];
+    }
+
+    /**
+     * Return the record bytes, if the fields of the record have not been filtered.
+     * The bytes must not be changed.
+     * @return the record bytes, or null
+     */
+    public BytesReference getRecordBytes() {
+        return filtered ? null : new BytesArray(bytes);
+    }
+
+    /**
+     * Return the record bytes, if they can be copied to an ISO 2709 output with directory as they are:
+     * the fields have not been filtered, the directory describes the record data, and the record label
+     * has not been changed, e.g. by a record label fixer.
+     * @return the record bytes, or null
+     */
+    BytesReference getCopyableRecordBytes() {
+        if (filtered || directory == null || bytes.length < RecordLabel.LENGTH
+                || !getRecordLabel().toString().equals(new String(bytes, 0, RecordLabel.LENGTH,
+                StandardCharsets.ISO_8859_1))) {
+            return null;
+        }
+        return new BytesArray(bytes);
+    }
+
+    /**
+     * Return the character set of the record bytes.
+     * @return the character set
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    Collection<MarcField> decodeFields() {
+        if (directory != null) {
+            List<MarcField> list = new ArrayList<>(fields.length);
+            for (int i = 0; i < fields.length && directory != null; i++) {
+                list.add(field(i));
+            }
+            if (directory != null) {
+                return list;
+            }
+        }
+        return parse();
+    }
+
+    @Override
+    public void filterFields(Comparator<MarcField> comparator) {
+        filtered = true;
+        super.filterFields(comparator);
+    }
+
+    @Override
+    public void filterFields(Predicate<? super MarcField> predicate, Comparator<MarcField> comparator) {
+        filtered = true;
+        super.filterFields(predicate, comparator);
+    }
+
+    @Override
+    public void filterFields(Predicate<? super MarcField> predicate, Stream<MarcField> marcFieldStream,
+                             Comparator<MarcField> comparator) {
+        filtered = true;
+        super.filterFields(predicate, marcFieldStream, comparator);
+    }
+
+    @Override
+    public void all(String tag, MarcFieldHandler handler) {
+        matching(tag, null).forEach(handler::field);
+    }
+
+    @Override
+    public void all(String tag, String indicator, MarcFieldHandler handler) {
+        matching(tag, indicator(indicator)).forEach(handler::field);
+    }
+
+    @Override
+    public void all(String tag, String indicator, String subfieldId, MarcFieldHandler handler) {
+        matching(tag, indicator(indicator).and(subfieldId(subfieldId))).forEach(handler::field);
+    }
+
+    @Override
+    public List<MarcField> getAll(String tag) {
+        return matching(tag, null);
+    }
+
+    @Override
+    public List<MarcField> getAll(String tag, String indicator) {
+        return matching(tag, indicator(indicator));
+    }
+
+    @Override
+    public List<MarcField> getAll(String tag, String indicator, String subfieldId) {
+        return matching(tag, indicator(indicator).and(subfieldId(subfieldId)));
+    }
+
+    @Override
+    public void first(String tag, MarcFieldHandler handler) {
+        firstMatching(tag, null, handler);
+    }
+
+    @Override
+    public void first(String tag, String indicator, MarcFieldHandler handler) {
+        firstMatching(tag, indicator(indicator), handler);
+    }
+
+    @Override
+    public void first(String tag, String indicator, String subfieldId, MarcFieldHandler handler) {
+        firstMatching(tag, indicator(indicator).and(subfieldId(subfieldId)), handler);
+    }
+
+    @Override
+    public MarcField getFirst(String tag) {
+        return firstMatching(tag, null);
+    }
+
+    @Override
+    public MarcField getFirst(String tag, String indicator) {
+        return firstMatching(tag, indicator(indicator));
+    }
+
+    @Override
+    public MarcField getFirst(String tag, String indicator, String subfieldId) {
+        return firstMatching(tag, indicator(indicator).and(subfieldId(subfieldId)));
+    }
+
+    private void firstMatching(String tag, Predicate<MarcField> predicate, MarcFieldHandler handler) {
+        MarcField marcField = firstMatching(tag, predicate);
+        if (marcField != null) {
+            handler.field(marcField);
+        }
+    }
+
+    private List<MarcField> matching(String tag, Predicate<MarcField> predicate) {
+        if (decodedFields() == null && directory != null) {
+            List<MarcField> list = new LinkedList<>();
+            for (int i = 0; i < fields.length && directory != null; i++) {
+                if (directory.hasTag(i, tag)) {
+                    MarcField marcField = field(i);
+                    if (marcField != null && (predicate == null || predicate.test(marcField))) {
+                        list.add(marcField);
+                    }
+                }
+            }
+            if (directory != null) {
+                return list;
+            }
+        }
+        return super.getAll(withTag(tag, predicate));
+    }
+
+    private MarcField firstMatching(String tag, Predicate<MarcField> predicate) {
+        if (decodedFields() == null && directory != null) {
+            for (int i = 0; i < fields.length && directory != null; i++) {
+                if (directory.hasTag(i, tag)) {
+                    MarcField marcField = field(i);
+                    if (marcField != null && (predicate == null || predicate.test(marcField))) {
+                        return marcField;
+                    }
+                }
+            }
+            if (directory != null) {
+                return null;
+            }
+        }
+        return super.getFirst(withTag(tag, predicate));
+    }
+
+    private static Predicate<MarcField> withTag(String tag, Predicate<MarcField> predicate) {
+        Predicate<MarcField> p = marcField -> marcField.getTag().equals(tag);
+        return predicate != null ? p.and(predicate) : p;
+    }
+
+    private static Predicate<MarcField> indicator(String indicator) {
+        return marcField -> marcField.getIndicator().equals(indicator);
+    }
+
+    private static Predicate<MarcField> subfieldId(String subfieldId) {
+        return marcField -> marcField.getSubfieldIds().contains(subfieldId);
+    }
+
+    /**
+     * Return the field of a directory entry, decoded on first access. If the field data is not like
+     * a parser would see it, the directory is dropped and null is returned.
+     */
+    private MarcField field(int i) {
+        if (fields[i] == null) {
+            fields[i] = decode(i);
+            if (fields[i] == null) {
+                directory = null;
+            }
+        }
+        return fields[i];
+    }
+
+    private MarcField decode(int i) {
+        RecordLabel recordLabel = getRecordLabel();
+        MarcField.Builder builder = directory.getBuilder(i);
+        int start = directory.getPosition(i);
+        // the field terminator is not part of the field data
+        int end = start + directory.getLength(i) - 1;
+        if (SeparatorScanner.indexOfSeparator(bytes, start, end) == -1) {
+            String s = decode(start, end);
+            if (s.isEmpty()) {
+                return null;
+            }
+            head(builder, recordLabel, s);
+            return builder.build();
+        }
+        int pos = start;
+        int next = SeparatorScanner.indexOf(bytes, pos, end, (byte) InformationSeparator.US);
+        if (next == pos || SeparatorScanner.indexOfSeparator(bytes, pos, next) != -1) {
+            return null;
+        }
+        head(builder, recordLabel, decode(pos, next));
+        while (next != -1) {
+            pos = next + 1;
+            next = SeparatorScanner.indexOf(bytes, pos, end, (byte) InformationSeparator.US);
+            int to = next != -1 ? next : end;
+            // empty chunks and other separators would end the record in a parser
+            if (to == pos || SeparatorScanner.indexOfSeparator(bytes, pos, to) != -1) {
+                return null;
+            }
+            builder.value(recordLabel, decode(pos, to));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decode the field data before the first subfield, like the MARC generator does.
+     */
+    private static void head(MarcField.Builder builder, RecordLabel recordLabel, String s) {
+        if (builder.isControl()) {
+            builder.value(s);
+            return;
+        }
+        int pos = Math.min(recordLabel.getIndicatorLength(), s.length());
+        builder.indicator(s.substring(0, pos));
+        if (pos < s.length()) {
+            builder.value(s.substring(pos));
+        }
+    }
+
+    private String decode(int from, int to) {
+        return new String(bytes, from, to - from, charset);
+    }
+
+    /**
+     * Parse the record. Lazy records are only created by builders without settings that change
+     * the fields while parsing, so a default builder parses the fields like the builder of the record.
+     */
+    private List<MarcField> parse() {
+        Iterator<MarcRecord> iterator = Marc.builder()
+                .setInputStream(new ByteArrayInputStream(bytes))
+                .setCharset(charset)
+                .setFormat(getFormat())
+                .setType(getType())
+                .lightweightRecord()
+                .recordIterator();
+        return iterator.hasNext() ? new ArrayList<>(iterator.next().getFields()) : new ArrayList<>();
+    }
+
+    /**
+     * Parse the directory, and check that the fields follow each other in the order of the directory,
+     * each field ends with a field terminator, and the last field ends before the record terminator.
+     * @return the directory, or null if the directory does not describe the record data
+     */
+    private static CompactMarcFieldDirectory parseDirectory(RecordLabel recordLabel, byte[] bytes) {
+        int base = recordLabel.getBaseAddressOfData();
+        if (base <= RecordLabel.LENGTH || base > bytes.length || bytes[base - 1] != InformationSeparator.RS) {
+            return null;
+        }
+        CompactMarcFieldDirectory directory;
+        try {
+            directory = new CompactMarcFieldDirectory(recordLabel,
+                    new String(bytes, 0, base - 1, StandardCharsets.ISO_8859_1));
+        } catch (IOException e) {
+            return null;
+        }
+        if (directory.isEmpty()) {
+            return null;
+        }
+        int expected = base;
+        for (int i = 0; i < directory.size(); i++) {
+            int position = directory.getPosition(i);
+            int length = directory.getLength(i);
+            if (position != expected || length < 2 || position + length > bytes.length
+                    || bytes[position + length - 1] != InformationSeparator.RS) {
+                return null;
+            }
+            expected = position + length;
+        }
+        int end = bytes.length - 1;
+        return expected == end && bytes[end] == InformationSeparator.GS ? directory : null;
+    }
+}
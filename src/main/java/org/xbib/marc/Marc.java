@@ -22,10 +22,16 @@ import org.xbib.marc.dialects.mab.diskette.MabDisketteInputStream;
 import org.xbib.marc.dialects.pica.PicaInputStream;
 import org.xbib.marc.dialects.pica.PicaPlainInputStream;
 import org.xbib.marc.dialects.sisis.SisisInputStream;
+import org.xbib.marc.io.BlockCompressedReader;
 import org.xbib.marc.io.BufferedSeparatorInputStream;
 import org.xbib.marc.io.BytesReference;
 import org.xbib.marc.io.Chunk;
 import org.xbib.marc.io.ChunkStream;
+import org.xbib.marc.io.MappedSeparatorChunkStream;
+import org.xbib.marc.io.PageRecycler;
+import org.xbib.marc.io.RecordFramingChunkStream;
+import org.xbib.marc.io.RecordInputStream;
+import org.xbib.marc.io.SeparatorChunkFeeder;
 import org.xbib.marc.label.RecordLabel;
 import org.xbib.marc.label.RecordLabelFixer;
 import org.xbib.marc.transformer.MarcTransformer;
@@ -54,12 +60,17 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -69,6 +80,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -88,6 +100,8 @@ public final class Marc {
 
     private static final int DEFAULT_BUFFER_SIZE = 8192;
 
+    private static final long DEFAULT_SPLIT_SIZE = 16L * 1024L * 1024L;
+
     private final Builder builder;
 
     private Marc(Builder builder) {
@@ -136,6 +150,9 @@ public final class Marc {
                 consumer.setMarcListener(entry.getKey(), entry.getValue());
             }
         }
+        if (builder.getFieldProjection() != null) {
+            consumer.setFieldProjection(builder.getFieldProjection());
+        }
         XMLEventReader xmlEventReader = xmlInputFactory.createXMLEventReader(builder.getInputStream());
         while (xmlEventReader.hasNext()) {
             consumer.add(xmlEventReader.nextEvent());
@@ -150,6 +167,9 @@ public final class Marc {
                 consumer.setMarcListener(entry.getKey(), entry.getValue());
             }
         }
+        if (builder.getFieldProjection() != null) {
+            consumer.setFieldProjection(builder.getFieldProjection());
+        }
         while (xmlEventReader.hasNext() && !consumer.isEndRecordReached()) {
             consumer.add(xmlEventReader.nextEvent());
         }
@@ -285,7 +305,7 @@ public final class Marc {
      * @throws IOException if writing fails
      */
     public void writeCollection(int bufferSize) throws IOException {
-        wrapIntoCollection(new BufferedSeparatorInputStream(builder.getInputStream(), bufferSize));
+        wrapIntoCollection(builder.separatorChunkStream(bufferSize));
     }
 
     public void writeCollection(String type) throws IOException {
@@ -293,7 +313,7 @@ public final class Marc {
     }
 
     public void writeCollection(String type, int bufferSize) throws IOException {
-        wrapIntoCollection(type, new BufferedSeparatorInputStream(builder.getInputStream(), bufferSize));
+        wrapIntoCollection(type, builder.separatorChunkStream(bufferSize));
     }
 
     public int wrapIntoCollection(ChunkStream<byte[], BytesReference> stream) throws IOException {
@@ -366,7 +386,7 @@ public final class Marc {
      * @throws IOException if writing fails
      */
     public void writeRecordCollection(int bufferSize) throws IOException {
-        wrapRecords(new BufferedSeparatorInputStream(builder.getInputStream(), bufferSize), true);
+        wrapRecords(builder.separatorChunkStream(bufferSize), true);
     }
 
     public void writeRecords() throws IOException {
@@ -379,7 +399,7 @@ public final class Marc {
      * @throws IOException if writing fails
      */
     public void writeRecords(int bufferSize) throws IOException {
-        wrapRecords(new BufferedSeparatorInputStream(builder.getInputStream(), bufferSize), false);
+        wrapRecords(builder.separatorChunkStream(bufferSize), false);
     }
 
     /**
@@ -532,6 +552,10 @@ public final class Marc {
             if (builder.getContentHandler() == null) {
                 builder.setContentHandler(handler);
             }
+            if (builder.getFieldProjection() != null
+                    && builder.getContentHandler() instanceof MarcContentHandler) {
+                ((MarcContentHandler) builder.getContentHandler()).setFieldProjection(builder.getFieldProjection());
+            }
             try {
                 if (saxParser == null) {
                     SAXParserFactory factory = SAXParserFactory.newInstance();
@@ -627,6 +651,8 @@ public final class Marc {
 
         private InputStream inputStream;
 
+        private Path path;
+
         private Charset charset;
 
         private String schema;
@@ -673,6 +699,12 @@ public final class Marc {
 
         private boolean isLightweightRecord;
 
+        private boolean tagIndex;
+
+        private boolean reuseRecord;
+
+        private MarcRecord reusableRecord;
+
         private Comparator<String> comparator;
 
         private Pattern keyPattern;
@@ -681,6 +713,18 @@ public final class Marc {
 
         private boolean disableControlFields;
 
+        private boolean recordFraming;
+
+        private boolean byteDecoding;
+
+        private boolean compactFields;
+
+        private MarcFieldProjection fieldProjection;
+
+        private MarcRecordPreFilter recordPreFilter;
+
+        private PageRecycler pageRecycler;
+
         private Builder() {
             this.charset = StandardCharsets.UTF_8;
             this.recordLabel = RecordLabel.EMPTY;
@@ -743,6 +787,22 @@ public final class Marc {
             return this;
         }
 
+        /**
+         * Set the input stream for MARC instance to the ISO 2709 records of a block-compressed container,
+         * starting at a record. Only the block of the record is sought and decompressed from the start,
+         * the records before it are not read. The input stream must be closed by the caller.
+         * @param archive the path of the block-compressed container, with its sidecar index
+         * @param recordNumber the number of the first record, counting from 0
+         * @return this builder
+         * @throws IOException if the container can not be opened
+         */
+        public Builder setBlockCompressedInput(Path archive, long recordNumber) throws IOException {
+            try (BlockCompressedReader reader = new BlockCompressedReader(archive)) {
+                this.inputStream = reader.openRecord(recordNumber);
+            }
+            return this;
+        }
+
         /**
          * Return input stream.
          * @return input stream
@@ -751,6 +811,26 @@ public final class Marc {
             return inputStream;
         }
 
+        /**
+         * Set the path of a local ISO 2709 file for MARC instance. If a path is set, the ISO 2709 methods
+         * read the file by memory-mapped regions instead of reading from the input stream, and
+         * the chunk data are not copied. This is recommended for large files.
+         * @param path the path
+         * @return this builder
+         */
+        public Builder setPath(Path path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * Return path.
+         * @return path
+         */
+        public Path getPath() {
+            return path;
+        }
+
         /**
          * Set the character set encoding.
          * @param charset the character set encoding of the MARC fields
@@ -861,6 +941,109 @@ public final class Marc {
             return this;
         }
 
+        /**
+         * Frame ISO 2709 records from the input stream by the record length in the leader and
+         * locate the fields by the record directory, instead of scanning every byte for separators.
+         * If the leader of a record is inconsistent, the rest of the input is scanned for separators.
+         * @return this builder
+         */
+        public Builder enableRecordFraming() {
+            this.recordFraming = true;
+            return this;
+        }
+
+        /**
+         * Let the MARC generator read indicators and subfield IDs from the bytes of the chunks
+         * and decode only the field and subfield values, instead of decoding each chunk into a string.
+         * @return this builder
+         */
+        public Builder enableByteDecoding() {
+            this.byteDecoding = true;
+            return this;
+        }
+
+        /**
+         * Let the MARC generator emit compact, immutable MARC fields, which keep the subfields in arrays
+         * instead of subfield objects. This reduces the memory of MARC records that are held in memory.
+         * @return this builder
+         */
+        public Builder enableCompactFields() {
+            this.compactFields = true;
+            return this;
+        }
+
+        /**
+         * Set a field projection. The ISO 2709 and XML parsers created by this builder skip the unwanted fields
+         * before decoding the field data and creating fields. The skipped input length is added to the projection.
+         * @param fieldProjection the field projection
+         * @return this builder
+         */
+        public Builder setFieldProjection(MarcFieldProjection fieldProjection) {
+            this.fieldProjection = fieldProjection;
+            return this;
+        }
+
+        /**
+         * Set a field projection of tags and tag ranges, like {@code 001}, {@code 245}, or {@code 6XX}.
+         * @param tags the tags and tag ranges
+         * @return this builder
+         */
+        public Builder setFieldProjection(String... tags) {
+            return setFieldProjection(MarcFieldProjection.of(tags));
+        }
+
+        /**
+         * Set a field projection by a tag predicate.
+         * @param predicate the tag predicate, returning true for the tags of the wanted fields
+         * @return this builder
+         */
+        public Builder setFieldProjection(Predicate<String> predicate) {
+            return setFieldProjection(MarcFieldProjection.of(predicate));
+        }
+
+        public MarcFieldProjection getFieldProjection() {
+            return fieldProjection;
+        }
+
+        /**
+         * Set a record pre-filter. The ISO 2709 parsers created by this builder check the record label
+         * and the control fields of each record as soon as they are decoded, and a rejected record does not
+         * emit any events. With record framing, a record rejected by the record label is dropped
+         * as a block of the record length in the leader, without locating its fields.
+         * @param recordPreFilter the record pre-filter
+         * @return this builder
+         */
+        public Builder setRecordPreFilter(MarcRecordPreFilter recordPreFilter) {
+            this.recordPreFilter = recordPreFilter;
+            return this;
+        }
+
+        /**
+         * Set a record pre-filter by a record label predicate.
+         * @param predicate the record label predicate, returning true for the wanted records
+         * @return this builder
+         */
+        public Builder setRecordPreFilter(Predicate<RecordLabel> predicate) {
+            return setRecordPreFilter(MarcRecordPreFilter.of(predicate));
+        }
+
+        public MarcRecordPreFilter getRecordPreFilter() {
+            return recordPreFilter;
+        }
+
+        /**
+         * Set a page recycler for the buffers of the buffered ISO 2709 streams and of the dialect streams
+         * created by this builder. The buffer size of an ISO 2709 stream must be the page size of the recycler
+         * for the buffer to be taken from the recycler.
+         * The pages are given back to the recycler when the stream is closed.
+         * @param pageRecycler the page recycler
+         * @return this builder
+         */
+        public Builder setPageRecycler(PageRecycler pageRecycler) {
+            this.pageRecycler = pageRecycler;
+            return this;
+        }
+
         /**
          * Set XML content handler.
          * @param contentHandler the XML content handler
@@ -908,6 +1091,14 @@ public final class Marc {
             if (disableControlFields) {
                 marcGenerator.disableControlFields();
             }
+            if (byteDecoding) {
+                marcGenerator.enableByteDecoding();
+            }
+            if (compactFields) {
+                marcGenerator.enableCompactFields();
+            }
+            marcGenerator.setFieldProjection(fieldProjection);
+            marcGenerator.setRecordPreFilter(recordPreFilter);
             return marcGenerator;
         }
 
@@ -977,7 +1168,56 @@ public final class Marc {
          * @return ISO 2709 stream
          */
         public BufferedSeparatorInputStream iso2709Stream(int bufferSize) {
-            return new BufferedSeparatorInputStream(inputStream, bufferSize);
+            return new BufferedSeparatorInputStream(inputStream, bufferSize, pageRecycler);
+        }
+
+        /**
+         * Create a push parser for ISO 2709, fed by byte buffer fragments instead of an input stream.
+         * The MARC listeners of this builder receive the events of a field as soon as the field is complete.
+         * Closing the feeder emits the last record, if it was not terminated. The builder keeps the record state,
+         * so each concurrent feed needs a builder of its own.
+         * @return ISO 2709 feeder
+         */
+        public SeparatorChunkFeeder iso2709Feeder() {
+            MarcGenerator generator = createGenerator();
+            return new SeparatorChunkFeeder(generator, pageRecycler) {
+
+                private boolean closed;
+
+                @Override
+                public void close() {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    super.close();
+                    generator.flush();
+                }
+            };
+        }
+
+        /**
+         * Create a chunk stream for ISO 2709, either memory-mapped from the path, if set,
+         * or framed by record length or buffered from the input stream.
+         * @param bufferSize buffer size for the input stream
+         * @return ISO 2709 chunk stream
+         * @throws IOException if the path can not be mapped
+         */
+        private ChunkStream<byte[], BytesReference> separatorChunkStream(int bufferSize) throws IOException {
+            if (path != null) {
+                return new MappedSeparatorChunkStream(path);
+            }
+            if (recordFraming || recordPreFilter != null) {
+                RecordFramingChunkStream chunkStream = new RecordFramingChunkStream(inputStream, bufferSize);
+                if (recordPreFilter != null) {
+                    MarcRecordPreFilter filter = recordPreFilter;
+                    RecordLabelFixer fixer = recordLabelFixer;
+                    chunkStream.setRecordLabelFilter(label ->
+                            filter.acceptRecordLabel(fixer != null ? fixer.fix(label) : label));
+                }
+                return chunkStream;
+            }
+            return new BufferedSeparatorInputStream(inputStream, bufferSize, pageRecycler);
         }
 
         /**
@@ -986,7 +1226,8 @@ public final class Marc {
          * @return MAB DISKETTE input stream
          */
         public MabDisketteInputStream mabDiskette(byte[] pattern) {
-            return new MabDisketteInputStream(inputStream, pattern, createGenerator());
+            return new MabDisketteInputStream(inputStream, pattern, '\u0000', createGenerator(),
+                    patternBufferSize(), pageRecycler);
         }
 
         /**
@@ -996,7 +1237,8 @@ public final class Marc {
          * @return MAB DISKETTE input stream
          */
         public MabDisketteInputStream mabDiskette(byte[] pattern, char subfieldDelimiter) {
-            return new MabDisketteInputStream(inputStream, pattern, subfieldDelimiter, createGenerator());
+            return new MabDisketteInputStream(inputStream, pattern, subfieldDelimiter, createGenerator(),
+                    patternBufferSize(), pageRecycler);
         }
 
         /**
@@ -1005,7 +1247,7 @@ public final class Marc {
          * @return SISIS input stream
          */
         public SisisInputStream sisis(byte[] pattern) {
-            return new SisisInputStream(inputStream, pattern, createGenerator());
+            return new SisisInputStream(inputStream, pattern, createGenerator(), patternBufferSize(), pageRecycler);
         }
 
         /**
@@ -1014,7 +1256,8 @@ public final class Marc {
          * @return ALEPH SEQUENTIAL input stream
          */
         public AlephSequentialInputStream aleph(byte[] pattern) {
-            return new AlephSequentialInputStream(inputStream, pattern, createGenerator());
+            return new AlephSequentialInputStream(inputStream, pattern, createGenerator(), patternBufferSize(),
+                    pageRecycler);
         }
 
         /**
@@ -1023,7 +1266,7 @@ public final class Marc {
          * @return Pica input stream
          */
         public PicaInputStream pica(byte[] pattern) {
-            return new PicaInputStream(inputStream, pattern, createGenerator());
+            return new PicaInputStream(inputStream, pattern, createGenerator(), patternBufferSize(), pageRecycler);
         }
 
         /**
@@ -1032,7 +1275,7 @@ public final class Marc {
          * @return Pica input stream
          */
         public PicaPlainInputStream picaPlain(byte[] pattern) {
-            return new PicaPlainInputStream(inputStream, pattern, createGenerator());
+            return new PicaPlainInputStream(inputStream, pattern, createGenerator(), patternBufferSize(), pageRecycler);
         }
 
         /**
@@ -1041,7 +1284,16 @@ public final class Marc {
          * @return MARC tagged input stream
          */
         public BiblioMondoInputStream bibliomondo(byte[] pattern) {
-            return new BiblioMondoInputStream(inputStream, pattern, createGenerator());
+            return new BiblioMondoInputStream(inputStream, pattern, createGenerator(), patternBufferSize(),
+                    pageRecycler);
+        }
+
+        /**
+         * The buffer size of the pattern input streams of the dialects. With a page recycler, the buffer is a page.
+         * @return the buffer size
+         */
+        private int patternBufferSize() {
+            return pageRecycler != null ? pageRecycler.getPageSize() : 8192;
         }
 
         public Builder setKeyPattern(Pattern keyPattern) {
@@ -1074,7 +1326,11 @@ public final class Marc {
             if (marcRecordListener != null) {
                 setFormat(format);
                 setType(type);
-                marcFieldList = new LinkedList<>();
+                if (reuseRecord && marcFieldList instanceof ArrayList) {
+                    marcFieldList.clear();
+                } else {
+                    marcFieldList = reuseRecord ? new ArrayList<>() : new LinkedList<>();
+                }
             }
         }
 
@@ -1148,11 +1404,41 @@ public final class Marc {
             return this;
         }
 
+        /**
+         * Build MARC records with an empty map view. The map view of a MARC record is created
+         * on first use only, so this is not needed to avoid the cost of the map view for records
+         * that are only accessed by their fields.
+         * @return this builder
+         */
         public Marc.Builder lightweightRecord() {
             this.isLightweightRecord = true;
             return this;
         }
 
+        /**
+         * Index the fields of the built MARC records by tag, so that lookups by tag only visit the fields
+         * with the tag. This pays off when many lookups are made on a record.
+         * @return this builder
+         */
+        public Marc.Builder enableTagIndex() {
+            this.tagIndex = true;
+            return this;
+        }
+
+        /**
+         * Reuse one MARC record and its field list for all records that are built from the input, for scanning
+         * many records without creating garbage for each record. A record returned by {@link #recordIterator()}
+         * is only valid until the next call of {@code hasNext()} or {@code next()}, and must not be kept or
+         * handed to another thread. The MARC fields of a record are immutable and can be kept.
+         * Use {@link MarcRecord#copy()} to keep a record. Parallel record streams, block-compressed record
+         * streams and record pipelines always create distinct records.
+         * @return this builder
+         */
+        public Marc.Builder reuseRecord() {
+            this.reuseRecord = true;
+            return this;
+        }
+
         public Marc.Builder comparator(Comparator<String> comparator) {
             this.comparator = comparator;
             return this;
@@ -1163,7 +1449,16 @@ public final class Marc {
          * @return MARC record
          */
         public MarcRecord buildRecord() {
-            return new MarcRecord(format, type, recordLabel, marcFieldList, isLightweightRecord, comparator);
+            if (reuseRecord && reusableRecord != null) {
+                reusableRecord.reset(format, type, recordLabel, marcFieldList);
+                return reusableRecord;
+            }
+            MarcRecord marcRecord = new MarcRecord(format, type, recordLabel, marcFieldList, isLightweightRecord,
+                    comparator, tagIndex);
+            if (reuseRecord) {
+                reusableRecord = marcRecord;
+            }
+            return marcRecord;
         }
 
         /**
@@ -1172,7 +1467,11 @@ public final class Marc {
          */
         public Iterator<MarcRecord> recordIterator() {
             if (stream == null) {
-                this.stream = new BufferedSeparatorInputStream(inputStream, DEFAULT_BUFFER_SIZE);
+                try {
+                    this.stream = separatorChunkStream(DEFAULT_BUFFER_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
             if (marcGenerator == null) {
                 this.marcGenerator = createGenerator();
@@ -1231,6 +1530,264 @@ public final class Marc {
             return StreamSupport.stream(iterable().spliterator(), false);
         }
 
+        /**
+         * Iterator over the ISO 2709 records of the input stream or the path of this builder, as
+         * {@link LazyMarcRecord}s that keep the record bytes and decode their fields on first access.
+         * The record label fixer of this builder is applied. Settings that change the fields while parsing,
+         * like validators, transformers, key or value patterns, field projections, record pre-filters,
+         * or disabled control fields, can not be applied to lazy records and are rejected.
+         * A file at the path of this builder is closed at the end of the records.
+         * @return a MARC record iterator
+         * @throws IllegalStateException if this builder has settings that can not be applied to lazy records
+         */
+        public Iterator<MarcRecord> lazyRecordIterator() {
+            return new LazyRecordIterator();
+        }
+
+        /**
+         * Create a stream of {@link LazyMarcRecord}s, see {@link #lazyRecordIterator()}.
+         * The stream should be closed for closing a file at the path of this builder.
+         * @return a stream of records
+         * @throws IllegalStateException if this builder has settings that can not be applied to lazy records
+         */
+        public Stream<MarcRecord> lazyRecordStream() {
+            LazyRecordIterator iterator = new LazyRecordIterator();
+            Iterable<MarcRecord> iterable = () -> iterator;
+            return StreamSupport.stream(iterable.spliterator(), false).onClose(iterator::close);
+        }
+
+        private void checkLazyRecordSettings() {
+            if (marcTransformer != null || marcValueTransformers != null || marcFieldTransformers != null
+                    || (validator != null && validator != MarcField.DEFAULT_VALIDATOR)
+                    || keyPattern != null || valuePattern != null || fieldProjection != null
+                    || recordPreFilter != null || disableControlFields) {
+                throw new IllegalStateException("lazy records are not parsed, and can not be validated, "
+                        + "transformed, projected, pre-filtered, or have control fields disabled");
+            }
+        }
+
+        private MarcRecord lazyRecord(byte[] bytes) {
+            RecordLabel label = RecordLabel.builder()
+                    .from(new String(bytes, 0, Math.min(bytes.length, RecordLabel.LENGTH), StandardCharsets.ISO_8859_1))
+                    .build();
+            if (recordLabelFixer != null) {
+                label = recordLabelFixer.fix(label);
+            }
+            return new LazyMarcRecord(format, type, label, bytes, charset, comparator);
+        }
+
+        /**
+         * Iterator over lazy records. The input is closed at the end of the records, or if reading fails,
+         * if the input is a file opened by this iterator.
+         */
+        private class LazyRecordIterator implements Iterator<MarcRecord>, Closeable {
+
+            private final RecordInputStream recordInputStream;
+
+            private final boolean closeInput;
+
+            private MarcRecord next;
+
+            private boolean closed;
+
+            private LazyRecordIterator() {
+                checkLazyRecordSettings();
+                try {
+                    this.recordInputStream = new RecordInputStream(path != null ? Files.newInputStream(path)
+                            : inputStream, DEFAULT_BUFFER_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.closeInput = path != null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !closed) {
+                    try {
+                        byte[] bytes = recordInputStream.readRecord();
+                        if (bytes != null) {
+                            next = lazyRecord(bytes);
+                        } else {
+                            close();
+                        }
+                    } catch (IOException e) {
+                        close();
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public MarcRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                MarcRecord marcRecord = next;
+                next = null;
+                return marcRecord;
+            }
+
+            @Override
+            public void close() {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (closeInput) {
+                    try {
+                        recordInputStream.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Create a parallel stream of the MARC records of the ISO 2709 file at the path of this builder.
+         * The file is split into ranges of at least 16 MB at record boundaries, each range is parsed by
+         * its own MARC generator in the fork-join pool of the stream.
+         * The stream must be closed, e.g. by try-with-resources, for closing the file mappings of the ranges.
+         * @param ordered true if the stream should keep the order of the records in the file
+         * @return a parallel stream of records
+         */
+        public Stream<MarcRecord> parallelRecordStream(boolean ordered) {
+            return parallelRecordStream(ordered, DEFAULT_SPLIT_SIZE);
+        }
+
+        /**
+         * Create a parallel stream of the MARC records of the ISO 2709 file at the path of this builder.
+         * The file is split into ranges at record boundaries, each range is parsed by its own MARC generator
+         * in the fork-join pool of the stream. Listeners of this builder do not receive events,
+         * but validator and transformers are shared between the ranges and must be thread safe.
+         * The stream must be closed, e.g. by try-with-resources, for closing the file mappings of ranges
+         * that are not read to the end, by short-circuiting operations like {@code findFirst} or {@code limit},
+         * or by failures in a stage of the stream.
+         * @param ordered true if the stream should keep the order of the records in the file
+         * @param minSplitSize the minimum number of bytes of a range
+         * @return a parallel stream of records
+         */
+        public Stream<MarcRecord> parallelRecordStream(boolean ordered, long minSplitSize) {
+            Objects.requireNonNull(path, "a path is required for a parallel record stream");
+            long size;
+            try {
+                size = Files.size(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            MarcRecordSpliterator spliterator = new MarcRecordSpliterator(path, size, minSplitSize, ordered,
+                    this::createRangeGenerator);
+            return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+        }
+
+        /**
+         * Create a stream of the MARC records of a block-compressed container of ISO 2709 records.
+         * Because records never straddle blocks, each block is parsed by its own MARC generator.
+         * If parallel, the blocks are decompressed and parsed in parallel, while the stream keeps the
+         * order of the records. Listeners of this builder do not receive events, but validator and
+         * transformers are shared between the blocks and must be thread safe.
+         * The stream should be closed for closing the container.
+         * @param archive the path of the block-compressed container
+         * @param parallel true if the blocks should be decompressed and parsed in parallel
+         * @return a stream of records
+         */
+        public Stream<MarcRecord> blockCompressedRecordStream(Path archive, boolean parallel) {
+            BlockCompressedReader reader;
+            try {
+                reader = new BlockCompressedReader(archive);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return reader.blocks(parallel)
+                    .map(this::parseBlock)
+                    .flatMap(List::stream)
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+
+        /**
+         * Create a pipeline that reads, parses, transforms and writes the ISO 2709 records of the input stream
+         * or the path of this builder in separate stages.
+         * @return the record pipeline
+         */
+        public MarcRecordPipeline recordPipeline() {
+            return new MarcRecordPipeline(this);
+        }
+
+        /**
+         * Parse a block of ISO 2709 records with a MARC generator that has the settings of this builder.
+         * @param block the block of records
+         * @return the records
+         */
+        List<MarcRecord> parseBlock(byte[] block) {
+            List<MarcRecord> records = new ArrayList<>();
+            MarcGenerator marcGenerator = createRangeGenerator(new MarcRecordListener() {
+                @Override
+                public void beginCollection() {
+                    // not used
+                }
+
+                @Override
+                public void record(MarcRecord marcRecord) {
+                    records.add(marcRecord);
+                }
+
+                @Override
+                public void endCollection() {
+                    // not used
+                }
+            });
+            try (BufferedSeparatorInputStream stream =
+                         new BufferedSeparatorInputStream(new ByteArrayInputStream(block), DEFAULT_BUFFER_SIZE)) {
+                Chunk<byte[], BytesReference> chunk;
+                while ((chunk = stream.readChunk()) != null) {
+                    marcGenerator.chunk(chunk);
+                }
+                marcGenerator.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return records;
+        }
+
+        /**
+         * Create a MARC generator with the settings of this builder, for parsing a range of records
+         * into the given MARC record listener.
+         * @param marcRecordListener the MARC record listener
+         * @return MARC generator
+         */
+        private MarcGenerator createRangeGenerator(MarcRecordListener marcRecordListener) {
+            Builder builder = new Builder();
+            builder.charset = charset;
+            builder.format = format;
+            builder.type = type;
+            builder.validator = validator;
+            builder.fatalErrors = fatalErrors;
+            builder.recordLabelFixer = recordLabelFixer;
+            builder.marcTransformer = marcTransformer;
+            builder.marcFieldTransformers = marcFieldTransformers;
+            builder.marcValueTransformers = marcValueTransformers;
+            builder.disableControlFields = disableControlFields;
+            builder.byteDecoding = byteDecoding;
+            builder.compactFields = compactFields;
+            builder.fieldProjection = fieldProjection;
+            builder.recordPreFilter = recordPreFilter;
+            builder.isLightweightRecord = isLightweightRecord;
+            builder.tagIndex = tagIndex;
+            builder.comparator = comparator;
+            builder.keyPattern = keyPattern;
+            builder.valuePattern = valuePattern;
+            builder.marcRecordListener = marcRecordListener;
+            return builder.createGenerator();
+        }
+
         /**
          * Send chunk to MARC generator.
          * @param chunk chunk
@@ -1268,6 +1825,9 @@ public final class Marc {
                 }
             }, Comparator.naturalOrder());
             consumer.setMarcListener(marcRecordAdapter);
+            if (fieldProjection != null) {
+                consumer.setFieldProjection(fieldProjection);
+            }
             return new MarcRecordIterator() {
                 @Override
                 public long getTotalNumberOfRecords() {
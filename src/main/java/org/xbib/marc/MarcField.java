@@ -52,7 +52,7 @@ public class MarcField implements Comparable<MarcField> {
 
     private final Builder builder;
 
-    private MarcField(Builder builder) {
+    MarcField(Builder builder) {
         this.builder = builder;
     }
 
@@ -117,7 +117,7 @@ public class MarcField implements Comparable<MarcField> {
      * @return the subfields as map
      */
     public Map<String, Object> getSubfieldsAsMap() {
-        return builder.subfields.stream().collect(Collectors.toMap(Subfield::getId, Subfield::getValue));
+        return getSubfields().stream().collect(Collectors.toMap(Subfield::getId, Subfield::getValue));
     }
 
     /**
@@ -127,7 +127,7 @@ public class MarcField implements Comparable<MarcField> {
      * @return the subfields as map
      */
     public Map<String, Object> getSubfieldsAsMap(BinaryOperator<Object> mergeFunction, Supplier<Map<String, Object>> supplier) {
-        return builder.subfields.stream().collect(Collectors.toMap(Subfield::getId, Subfield::getValue,
+        return getSubfields().stream().collect(Collectors.toMap(Subfield::getId, Subfield::getValue,
                 mergeFunction, supplier));
     }
 
@@ -283,10 +283,11 @@ public class MarcField implements Comparable<MarcField> {
      * @return thhis MARC field if pattern matches, or null if not
      */
     public boolean matchesValue(Pattern pattern) {
-        if (builder.value != null && pattern.matcher(builder.value).matches()) {
+        String value = getValue();
+        if (value != null && pattern.matcher(value).matches()) {
             return true;
         }
-        for (Subfield subfield : builder.subfields) {
+        for (Subfield subfield : getSubfields()) {
             if (pattern.matcher(subfield.getValue()).matches()) {
                 return true;
             }
@@ -301,7 +302,8 @@ public class MarcField implements Comparable<MarcField> {
      * @return the tag-based key of this MARC field
      */
     public String toTagKey() {
-        return builder.tag == null ? EMPTY_STRING : builder.tag;
+        String tag = getTag();
+        return tag == null ? EMPTY_STRING : tag;
     }
 
     /**
@@ -311,7 +313,8 @@ public class MarcField implements Comparable<MarcField> {
      * @return the tag/indicator-based key of this MARC field
      */
     public String toTagIndicatorKey() {
-        return toTagKey() + DELIMITER + (builder.indicator == null ? EMPTY_STRING : builder.indicator);
+        String indicator = getIndicator();
+        return toTagKey() + DELIMITER + (indicator == null ? EMPTY_STRING : indicator);
     }
 
     /**
@@ -329,7 +332,7 @@ public class MarcField implements Comparable<MarcField> {
      * @return the subfield ID list as a string.
      */
     public String getSubfieldIds() {
-        return builder.subfields.stream().map(Subfield::getId).sorted().collect(Collectors.joining());
+        return getSubfields().stream().map(Subfield::getId).sorted().collect(Collectors.joining());
     }
 
     @Override
@@ -349,7 +352,16 @@ public class MarcField implements Comparable<MarcField> {
 
     @Override
     public String toString() {
-        return toKey() + (builder.hasSubfields() ? getSubfields() : getValue());
+        Deque<Subfield> subfields = getSubfields();
+        return toKey() + (!subfields.isEmpty() ? subfields : getValue());
+    }
+
+    /**
+     * Return a compact, immutable copy of this MARC field.
+     * @return the compact MARC field
+     */
+    public CompactMarcField compact() {
+        return new CompactMarcField(builder, null);
     }
 
     /**
@@ -391,7 +403,7 @@ public class MarcField implements Comparable<MarcField> {
          * @return this builder
          */
         public Builder tag(String tag) {
-            this.tag = validator.validateTag(tag);
+            this.tag = MarcSymbolTable.symbol(validator.validateTag(tag));
             return this;
         }
 
@@ -409,7 +421,7 @@ public class MarcField implements Comparable<MarcField> {
          * @return this builder
          */
         public Builder indicator(String indicator) {
-            this.indicator = validator.validateIndicator(indicator);
+            this.indicator = MarcSymbolTable.symbol(validator.validateIndicator(indicator));
             return this;
         }
 
@@ -421,6 +433,14 @@ public class MarcField implements Comparable<MarcField> {
             return indicator;
         }
 
+        /**
+         * Returns the value.
+         * @return the value
+         */
+        public String value() {
+            return value;
+        }
+
         /**
          * Set position.
          * @param position the position
@@ -480,7 +500,7 @@ public class MarcField implements Comparable<MarcField> {
          * @return this builder
          */
         public Builder subfield(String subfieldId, String value) {
-            String id = validator.validateSubfieldId(subfieldId);
+            String id = MarcSymbolTable.symbol(validator.validateSubfieldId(subfieldId));
             subfields.add(new Subfield(id, value));
             return this;
         }
@@ -493,7 +513,7 @@ public class MarcField implements Comparable<MarcField> {
          */
         public Builder subfieldIfNotNull(String subfieldId, String value) {
             if (value != null) {
-                String id = validator.validateSubfieldId(subfieldId);
+                String id = MarcSymbolTable.symbol(validator.validateSubfieldId(subfieldId));
                 subfields.add(new Subfield(id, value));
             }
             return this;
@@ -515,7 +535,7 @@ public class MarcField implements Comparable<MarcField> {
          * @return this builder
          */
         public Builder subfield(char subfieldId) {
-            subfield(Character.toString(subfieldId));
+            subfield(MarcSymbolTable.symbol(subfieldId));
             return this;
         }
 
@@ -548,7 +568,7 @@ public class MarcField implements Comparable<MarcField> {
             if (value.length() > 0) {
                 int len = recordLabel.getSubfieldIdentifierLength() - 1; /* minus length of US separator char */
                 if (!isControl() && len >= 0 && value.length() >= len) {
-                    String id = value.substring(0, len);
+                    String id = MarcSymbolTable.symbol(value, 0, len);
                     String content = value.substring(len);
                     subfield(id, content);
                 } else {
@@ -567,7 +587,7 @@ public class MarcField implements Comparable<MarcField> {
                 }
                 boolean canDeriveSubfieldId = value.length() > len && len > 0;
                 if (canDeriveSubfieldId) {
-                    String id = value.substring(0, len);
+                    String id = MarcSymbolTable.symbol(value, 0, len);
                     String content = value.substring(len);
                     subfield(id, content);
                 } else {
@@ -588,7 +608,7 @@ public class MarcField implements Comparable<MarcField> {
          */
         public Builder field(String format, String type, RecordLabel recordLabel, String raw) {
             if (raw.length() >= 3) {
-                tag(raw.substring(0, 3));
+                tag(MarcSymbolTable.symbol(raw, 0, 3));
             }
             if (isControl()) {
                 if (raw.length() > 3) {
@@ -597,7 +617,7 @@ public class MarcField implements Comparable<MarcField> {
             } else {
                 int pos = 3 + recordLabel.getIndicatorLength();
                 if (raw.length() >= pos) {
-                    indicator(raw.substring(3, pos));
+                    indicator(MarcSymbolTable.symbol(raw, 3, pos));
                     value(format, type, recordLabel, raw.substring(pos));
                 }
             }
@@ -780,6 +800,34 @@ public class MarcField implements Comparable<MarcField> {
             return new MarcField(this);
         }
 
+        /**
+         * Build a compact, immutable MARC field.
+         * @return the built MARC field
+         */
+        public CompactMarcField buildCompact() {
+            return new CompactMarcField(this, null);
+        }
+
+        /**
+         * Build a compact MARC field with the subfields of this builder, followed by the subfields
+         * in the buffer. The buffer is reset.
+         */
+        CompactMarcField buildCompact(CompactMarcField.Buffer buffer) {
+            return new CompactMarcField(this, buffer);
+        }
+
+        List<Subfield> subfields() {
+            return subfields;
+        }
+
+        MarcFieldValidator validator() {
+            return validator;
+        }
+
+        boolean isControlFieldsDisabled() {
+            return disableControlFields;
+        }
+
         @Override
         public String toString() {
             return "tag=" + tag + ",indicator=" + indicator + ",value=" + value + ",subfields=" + subfields;
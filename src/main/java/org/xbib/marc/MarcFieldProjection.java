@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.io.BytesReference;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A projection of MARC fields by tag, for skipping unwanted fields at parse time.
+ *
+ * A projection is either a set of tags and tag ranges, where {@code X} stands for any character at a
+ * position of a tag, like {@code 6XX} for all subject access fields, or a tag predicate. The tags
+ * are the tags of the input, before any field transformer is applied. The record label is never skipped.
+ *
+ * Parsers that use a projection skip the unwanted fields before any value decoding or object allocation,
+ * and add the length of the skipped input to this projection. For ISO 2709, the skipped bytes are counted,
+ * for XML, the skipped characters of the field content. Projections can be shared between threads.
+ */
+public final class MarcFieldProjection {
+
+    private static final int TAG_LENGTH = 3;
+
+    private static final char WILDCARD = 'X';
+
+    private final char[][] patterns;
+
+    private final Predicate<String> predicate;
+
+    private final LongAdder skipped;
+
+    private MarcFieldProjection(char[][] patterns, Predicate<String> predicate) {
+        this.patterns = patterns;
+        this.predicate = predicate;
+        this.skipped = new LongAdder();
+    }
+
+    /**
+     * Create a projection of tags and tag ranges, like {@code 001}, {@code 245}, or {@code 6XX}.
+     * @param tags the tags and tag ranges
+     * @return the projection
+     */
+    public static MarcFieldProjection of(String... tags) {
+        return of(Arrays.asList(tags));
+    }
+
+    /**
+     * Create a projection of tags and tag ranges, like {@code 001}, {@code 245}, or {@code 6XX}.
+     * @param tags the tags and tag ranges
+     * @return the projection
+     */
+    public static MarcFieldProjection of(Collection<String> tags) {
+        char[][] patterns = new char[tags.size()][];
+        int i = 0;
+        for (String tag : tags) {
+            Objects.requireNonNull(tag);
+            if (tag.length() != TAG_LENGTH) {
+                throw new IllegalArgumentException("invalid tag or tag range: " + tag);
+            }
+            patterns[i++] = tag.replace('x', WILDCARD).toCharArray();
+        }
+        return new MarcFieldProjection(patterns, null);
+    }
+
+    /**
+     * Create a projection by a tag predicate.
+     * @param predicate the predicate, returning true for the tags of the wanted fields
+     * @return the projection
+     */
+    public static MarcFieldProjection of(Predicate<String> predicate) {
+        return new MarcFieldProjection(null, Objects.requireNonNull(predicate));
+    }
+
+    /**
+     * Check if the field with a tag is wanted.
+     * @param tag the tag
+     * @return true if the field is wanted, false if it should be skipped
+     */
+    public boolean includes(String tag) {
+        if (predicate != null) {
+            return predicate.test(tag);
+        }
+        return tag != null && tag.length() == TAG_LENGTH
+                && matches(tag.charAt(0), tag.charAt(1), tag.charAt(2));
+    }
+
+    /**
+     * Check if the field with the tag at a position in a character sequence is wanted.
+     * @param s the character sequence
+     * @param offset the position of the tag
+     * @return true if the field is wanted, false if it should be skipped
+     */
+    public boolean includes(CharSequence s, int offset) {
+        if (predicate != null) {
+            return predicate.test(s.subSequence(offset, offset + TAG_LENGTH).toString());
+        }
+        return matches(s.charAt(offset), s.charAt(offset + 1), s.charAt(offset + 2));
+    }
+
+    /**
+     * Check if the field with the tag at a position in bytes is wanted. The tag bytes are taken as
+     * ISO 8859-1 characters.
+     * @param bytesReference the bytes
+     * @param offset the position of the tag
+     * @return true if the field is wanted, false if it should be skipped
+     */
+    public boolean includes(BytesReference bytesReference, int offset) {
+        char c0 = (char) (bytesReference.get(offset) & 0xff);
+        char c1 = (char) (bytesReference.get(offset + 1) & 0xff);
+        char c2 = (char) (bytesReference.get(offset + 2) & 0xff);
+        if (predicate != null) {
+            return predicate.test(new String(new char[] { c0, c1, c2 }));
+        }
+        return matches(c0, c1, c2);
+    }
+
+    /**
+     * Add to the length of the skipped input.
+     * @param length the length
+     */
+    public void skipped(long length) {
+        skipped.add(length);
+    }
+
+    /**
+     * Return the length of the input that was skipped with this projection, in bytes for ISO 2709
+     * and in characters for XML.
+     * @return the skipped length
+     */
+    public long getSkippedBytes() {
+        return skipped.sum();
+    }
+
+    private boolean matches(char c0, char c1, char c2) {
+        for (char[] pattern : patterns) {
+            if ((pattern[0] == WILDCARD || pattern[0] == c0)
+                    && (pattern[1] == WILDCARD || pattern[1] == c1)
+                    && (pattern[2] == WILDCARD || pattern[2] == c2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
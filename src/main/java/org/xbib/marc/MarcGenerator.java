@@ -25,7 +25,15 @@ import org.xbib.marc.transformer.field.MarcFieldTransformers;
 import org.xbib.marc.transformer.value.MarcValueTransformers;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -62,12 +70,34 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
 
     private RecordLabel recordLabel;
 
-    private MarcFieldDirectory directory;
+    private CompactMarcFieldDirectory directory;
 
     private MarcField.Builder builder;
 
     private final List<MarcField> marcFieldList;
 
+    private boolean byteDecoding;
+
+    private CharsetDecoder decoder;
+
+    private CharBuffer charBuffer;
+
+    private boolean asciiCompatible;
+
+    private MarcFieldProjection fieldProjection;
+
+    private boolean skipField;
+
+    private MarcRecordPreFilter recordPreFilter;
+
+    private CompactMarcField.Buffer compactSubfields;
+
+    private boolean skipRecord;
+
+    private boolean deferred;
+
+    private final List<MarcField> deferredFields = new ArrayList<>();
+
     public MarcGenerator() {
         this.builder = MarcField.builder();
         this.position = 0;
@@ -95,6 +125,7 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
 
     public MarcGenerator setCharset(Charset charset) {
         this.charset = charset;
+        this.decoder = null;
         return this;
     }
 
@@ -133,17 +164,76 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
         return this;
     }
 
+    /**
+     * Set a field projection. Unwanted fields are skipped by the tag in the directory, or by the tag at the
+     * beginning of the field if there is no directory, before the field data is decoded.
+     * If there is no directory and a MARC transformer is set, all fields are passed to the transformer.
+     * @param fieldProjection the field projection, or null for all fields
+     * @return this generator
+     */
+    public MarcGenerator setFieldProjection(MarcFieldProjection fieldProjection) {
+        this.fieldProjection = fieldProjection;
+        return this;
+    }
+
+    /**
+     * Set a record pre-filter. A record that is rejected by its record label or by its control fields
+     * does not emit any events, and the rest of the record is skipped without decoding.
+     * If the pre-filter has a control field predicate, the events of a record are held back until the
+     * first data field of the record is reached.
+     * @param recordPreFilter the record pre-filter, or null for all records
+     * @return this generator
+     */
+    public MarcGenerator setRecordPreFilter(MarcRecordPreFilter recordPreFilter) {
+        this.recordPreFilter = recordPreFilter;
+        return this;
+    }
+
+    /**
+     * Emit compact MARC fields. The subfields of a field are collected into a reusable buffer while parsing,
+     * and each field is built in one step as a {@link CompactMarcField}.
+     * @return this generator
+     */
+    public MarcGenerator enableCompactFields() {
+        this.compactSubfields = new CompactMarcField.Buffer();
+        return this;
+    }
+
+    /**
+     * Read indicators and subfield IDs directly from the chunk bytes, and decode only the values,
+     * with a reused charset decoder. The MARC listener receives the same events as without byte decoding.
+     * Indicators and subfield IDs that are not printable ASCII, or a charset that does not encode
+     * ASCII as single bytes, fall back to decoding the whole chunk.
+     * @return this generator
+     */
+    public MarcGenerator enableByteDecoding() {
+        this.byteDecoding = true;
+        return this;
+    }
+
     @Override
     public void chunk(Chunk<byte[], BytesReference> chunk) throws IOException {
         char separator = (char) chunk.separator()[0];
         BytesReference bytesReference = chunk.data();
+        if (skipRecord) {
+            if (bytesReference == null || bytesReference.length() == 0) {
+                endSkippedRecord();
+                return;
+            }
+            if (separator != GS) {
+                return;
+            }
+            // a new record begins without a field terminator before the record terminator
+            endSkippedRecord();
+        }
         if (bytesReference == null || bytesReference.length() == 0) {
             emitMarcField();
             emitMarcRecord();
             return;
         }
-        this.data = new String(bytesReference.toBytes(), charset);
+        this.data = null;
         if (position == 0) {
+            data(bytesReference);
             newRecord();
             position += bytesReference.length() + 1;
             return;
@@ -152,63 +242,46 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
             case GS: /* 1d */ {
                 emitMarcField();
                 emitMarcRecord();
+                data(bytesReference);
                 newRecord();
                 break;
             }
             case RS: /* 1e */ {
                 emitMarcField();
+                if (skipRecord) {
+                    break;
+                }
                 if (directory == null || directory.isEmpty()) {
-                    if (marcTransformer != null) {
-                        marcTransformer.transform(builder, recordLabel, data);
+                    if (fieldProjection != null && marcTransformer == null && bytesReference.length() >= 3
+                            && !fieldProjection.includes(bytesReference, 0)) {
+                        skipField(bytesReference);
+                    } else if (marcTransformer != null) {
+                        marcTransformer.transform(builder, recordLabel, data(bytesReference));
                     } else {
-                        builder.field(format, type, recordLabel, data);
-                    }
-                } else if (directory.containsKey(position)) {
-                    builder = directory.get(position);
-                    if (builder.isControl()) {
-                        builder.value(data);
-                    } else {
-                        int pos = recordLabel.getIndicatorLength();
-                        builder.indicator(data.substring(0, pos));
-                        if (pos < data.length()) {
-                            builder.value(data.substring(pos));
-                        }
+                        builder.field(format, type, recordLabel, data(bytesReference));
                     }
                 } else {
-                    boolean found = false;
+                    int i = directory.indexOf(position);
                     // try more than one position
-                    for (int offset = 1; offset < 5; offset++) {
-                        if (directory.containsKey(position + offset)) {
+                    for (int offset = 1; i < 0 && offset < 5; offset++) {
+                        if ((i = directory.indexOf(position + offset)) >= 0) {
                             position = position + offset;
-                            builder = directory.get(position);
-                            if (builder.isControl()) {
-                                builder.value(data);
-                            } else {
-                                int pos = recordLabel.getIndicatorLength();
-                                builder.indicator(data.substring(0, pos));
-                                if (pos < data.length()) {
-                                    builder.value(this.data.substring(pos));
-                                }
-                            }
-                            found = true;
-                            break;
-                        } else if (directory.containsKey(position - offset)) {
+                        } else if ((i = directory.indexOf(position - offset)) >= 0) {
                             position = position - offset;
-                            builder = directory.get(position);
-                            if (builder.isControl()) {
-                                builder.value(data);
-                            } else {
-                                int pos = recordLabel.getIndicatorLength();
-                                builder.indicator(data.substring(0, pos));
-                                if (pos < data.length()) {
-                                    builder.value(data.substring(pos));
-                                }
-                            }
-                            found = true;
-                            break;
                         }
                     }
-                    if (!found && fatalerrors) {
+                    if (i >= 0 && deferred && !directory.getBuilder(i).isControl() && !acceptDeferred()) {
+                        // rejected by control fields, before the first data field is decoded
+                        break;
+                    }
+                    if (i >= 0) {
+                        if (fieldProjection != null && !directory.includes(i, fieldProjection)) {
+                            skipField(bytesReference);
+                        } else {
+                            builder = directory.getBuilder(i);
+                            fieldValue(bytesReference);
+                        }
+                    } else if (fatalerrors) {
                         throw new IOException("byte position not found in MARC directory: "
                                 + position + " - broken directory or bad encoding?");
                     }
@@ -216,7 +289,11 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
                 break;
             }
             case US: /* 1f */ {
-                builder.value(recordLabel, data);
+                if (skipField) {
+                    fieldProjection.skipped(bytesReference.length() + 1L);
+                } else {
+                    subfieldValue(bytesReference);
+                }
                 break;
             }
             default: {
@@ -231,16 +308,46 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
      * Useful if chunk streams have no closing record separator.
      */
     public void flush() {
+        if (skipRecord) {
+            endSkippedRecord();
+        }
         if (position > 0) {
             emitMarcRecord();
         }
     }
 
+    private void skipField(BytesReference bytesReference) {
+        skipField = true;
+        fieldProjection.skipped(bytesReference.length() + 1L);
+    }
+
     private void emitMarcField() {
-        MarcField marcField = builder.build();
+        if (skipField) {
+            // the builder of a skipped field was never used
+            skipField = false;
+            return;
+        }
+        MarcField marcField = compactSubfields != null ? builder.buildCompact(compactSubfields) : builder.build();
         if (marcValueTransformers != null) {
             marcField = marcValueTransformers.transformValue(marcField);
+            if (compactSubfields != null) {
+                marcField = marcField.compact();
+            }
         }
+        builder = MarcField.builder();
+        if (deferred) {
+            if (marcField.isEmpty() || marcField.isControl()) {
+                deferredFields.add(marcField);
+                return;
+            }
+            if (!acceptDeferred()) {
+                return;
+            }
+        }
+        emitMarcField(marcField);
+    }
+
+    private void emitMarcField(MarcField marcField) {
         if (marcFieldTransformers != null) {
             marcFieldList.add(marcField);
         } else {
@@ -248,14 +355,75 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
                 marcListener.field(marcField);
             }
         }
+    }
+
+    /**
+     * Begin a record, or hold back the events of the record if the record pre-filter must check the control fields.
+     */
+    private void beginMarcRecord() {
+        if (recordPreFilter != null && recordPreFilter.hasControlFieldPredicate()) {
+            deferred = true;
+            return;
+        }
+        if (marcListener != null) {
+            marcListener.beginRecord(format, type);
+            marcListener.leader(recordLabel);
+        }
+    }
+
+    /**
+     * Check the control fields of a record, and emit the held back events if the record is accepted.
+     * @return true if the record is accepted, false if it is skipped
+     */
+    private boolean acceptDeferred() {
+        deferred = false;
+        List<MarcField> controlFields = new ArrayList<>();
+        for (MarcField marcField : deferredFields) {
+            if (!marcField.isEmpty()) {
+                controlFields.add(marcField);
+            }
+        }
+        if (!recordPreFilter.acceptControlFields(controlFields)) {
+            deferredFields.clear();
+            skipRecord = true;
+            return false;
+        }
+        if (marcListener != null) {
+            marcListener.beginRecord(format, type);
+            marcListener.leader(recordLabel);
+        }
+        for (MarcField marcField : deferredFields) {
+            emitMarcField(marcField);
+        }
+        deferredFields.clear();
+        return true;
+    }
+
+    private void endSkippedRecord() {
+        skipRecord = false;
+        skipField = false;
+        deferred = false;
+        deferredFields.clear();
         builder = MarcField.builder();
+        if (compactSubfields != null) {
+            compactSubfields.reset();
+        }
+        marcFieldList.clear();
+        if (marcFieldTransformers != null) {
+            marcFieldTransformers.reset();
+        }
+        position = 0;
     }
 
     private void emitMarcRecord() {
+        if (deferred && !acceptDeferred()) {
+            endSkippedRecord();
+            return;
+        }
         if (marcFieldTransformers != null) {
             for (MarcField marcField : marcFieldTransformers.transform(marcFieldList)) {
                 if (!marcField.isEmpty() && marcListener != null) {
-                    marcListener.field(marcField);
+                    marcListener.field(compactSubfields != null ? marcField.compact() : marcField);
                 }
             }
             marcFieldTransformers.reset();
@@ -267,6 +435,139 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
         position = 0;
     }
 
+    private void fieldValue(BytesReference bytesReference) throws IOException {
+        if (builder.isControl()) {
+            builder.value(data(bytesReference));
+            return;
+        }
+        int pos = recordLabel.getIndicatorLength();
+        if (byteDecoding && isPrintableAscii(bytesReference, pos)) {
+            builder.indicator(ascii(bytesReference, pos));
+            if (pos < bytesReference.length()) {
+                builder.value(decode(bytesReference, pos));
+            }
+        } else {
+            String s = data(bytesReference);
+            builder.indicator(MarcSymbolTable.symbol(s, 0, pos));
+            if (pos < s.length()) {
+                builder.value(s.substring(pos));
+            }
+        }
+    }
+
+    private void subfieldValue(BytesReference bytesReference) throws IOException {
+        int len = recordLabel.getSubfieldIdentifierLength() - 1; /* minus length of US separator char */
+        if (byteDecoding && !builder.isControl() && len >= 0 && isPrintableAscii(bytesReference, len)) {
+            if (compactSubfields != null) {
+                String id = MarcSymbolTable.symbol(builder.validator().validateSubfieldId(ascii(bytesReference, len)));
+                compactSubfields.add(id, decodeChars(bytesReference, len));
+            } else {
+                builder.subfield(ascii(bytesReference, len), decode(bytesReference, len));
+            }
+        } else if (compactSubfields != null) {
+            String s = data(bytesReference);
+            if (s.length() > 0 && !builder.isControl() && len >= 0 && s.length() >= len) {
+                String id = MarcSymbolTable.symbol(builder.validator()
+                        .validateSubfieldId(MarcSymbolTable.symbol(s, 0, len)));
+                compactSubfields.add(id, s, len);
+            } else {
+                builder.value(recordLabel, s);
+            }
+        } else {
+            builder.value(recordLabel, data(bytesReference));
+        }
+    }
+
+    /**
+     * Return the decoded chunk data. The chunk is only decoded on demand, so skipped fields are never decoded.
+     */
+    private String data(BytesReference bytesReference) throws IOException {
+        if (data == null) {
+            data = byteDecoding ? decode(bytesReference, 0) : new String(bytesReference.toBytes(), charset);
+        }
+        return data;
+    }
+
+    /**
+     * Check if the first bytes of the chunk data can be read without decoding, because they are
+     * printable ASCII in a charset that encodes ASCII as single bytes.
+     */
+    private boolean isPrintableAscii(BytesReference bytesReference, int length) {
+        if (bytesReference.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = bytesReference.get(i);
+            if (b < 0x20 || b > 0x7e) {
+                return false;
+            }
+        }
+        decoder();
+        return asciiCompatible;
+    }
+
+    private static String ascii(BytesReference bytesReference, int length) {
+        if (length == 1) {
+            return MarcSymbolTable.symbol((char) (bytesReference.get(0) & 0xff));
+        }
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = bytesReference.get(i);
+        }
+        return MarcSymbolTable.symbol(new String(b, StandardCharsets.ISO_8859_1));
+    }
+
+    private String decode(BytesReference bytesReference, int from) throws IOException {
+        if (bytesReference.length() == from) {
+            return "";
+        }
+        return decodeChars(bytesReference, from).toString();
+    }
+
+    /**
+     * Decode the chunk data from a position into the reused character buffer.
+     */
+    private CharBuffer decodeChars(BytesReference bytesReference, int from) throws IOException {
+        int length = bytesReference.length() - from;
+        CharsetDecoder charsetDecoder = decoder();
+        ByteBuffer in = bytesReference.toByteBuffer(from, length);
+        int capacity = (int) (length * (double) charsetDecoder.maxCharsPerByte()) + 1;
+        if (charBuffer == null || charBuffer.capacity() < capacity) {
+            charBuffer = CharBuffer.allocate(Math.max(capacity, 1024));
+        }
+        charBuffer.clear();
+        charsetDecoder.reset();
+        CoderResult result = charsetDecoder.decode(in, charBuffer, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = charsetDecoder.flush(charBuffer);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        charBuffer.flip();
+        return charBuffer;
+    }
+
+    /**
+     * Create the decoder for the charset on first use. Like {@code new String(byte[], Charset)}, the decoder
+     * replaces malformed input and unmappable characters.
+     */
+    private CharsetDecoder decoder() {
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            byte[] b = new byte[0x7f - 0x20];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (byte) (0x20 + i);
+            }
+            String s = new String(b, StandardCharsets.ISO_8859_1);
+            asciiCompatible = charset.canEncode() && Arrays.equals(b, s.getBytes(charset));
+        }
+        return decoder;
+    }
+
     private void newRecord() throws IOException {
         // skip line-feed (OCLC PICA quirk)
         if (data.charAt(0) == '\n') {
@@ -278,11 +579,12 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
             if (recordLabelFixer != null) {
                 this.recordLabel = recordLabelFixer.fix(recordLabel);
             }
-            if (marcListener != null) {
-                marcListener.beginRecord(format, type);
-                marcListener.leader(recordLabel);
+            if (recordPreFilter != null && !recordPreFilter.acceptRecordLabel(recordLabel)) {
+                skipRecord = true;
+                return;
             }
-            directory = new MarcFieldDirectory(recordLabel, this.data);
+            beginMarcRecord();
+            directory = new CompactMarcFieldDirectory(recordLabel, this.data);
             if (directory.isEmpty()) {
                 builder.field(format, type, recordLabel, data.substring(RecordLabel.LENGTH));
             }
@@ -291,13 +593,14 @@ public class MarcGenerator implements ChunkListener<byte[], BytesReference> {
             if (recordLabelFixer != null) {
                 this.recordLabel = recordLabelFixer.fix(recordLabel);
             }
+            if (recordPreFilter != null && !recordPreFilter.acceptRecordLabel(recordLabel)) {
+                skipRecord = true;
+                return;
+            }
             // record label only = new format without directory
-            directory = new MarcFieldDirectory(recordLabel, this.data);
+            directory = new CompactMarcFieldDirectory(recordLabel, this.data);
             if (directory.isEmpty()) {
-                if (marcListener != null) {
-                    marcListener.beginRecord(format, type);
-                    marcListener.leader(recordLabel);
-                }
+                beginMarcRecord();
             } else {
                 builder = MarcField.builder();
             }
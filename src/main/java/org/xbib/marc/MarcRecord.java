@@ -25,6 +25,7 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,6 +47,11 @@ import static org.xbib.marc.json.MarcJsonWriter.TYPE_TAG;
 
 /**
  * A MARC record.
+ *
+ * The map view of a record is created from the MARC fields on first use of a map method, and created again
+ * on next use after the fields are filtered. The map view is published safely, so a record that is
+ * not changed can be read by several threads. Changing a record, by filtering its fields or by the map
+ * methods, is not thread safe.
  */
 public class MarcRecord implements Map<String, Object> {
 
@@ -59,7 +65,15 @@ public class MarcRecord implements Map<String, Object> {
                     .appendPattern("MMdd")
                     .toFormatter();
 
-    private Map<String, Object> delegate;
+    private static final String[] REPEAT_KEYS = new String[32];
+
+    static {
+        for (int i = 0; i < REPEAT_KEYS.length; i++) {
+            REPEAT_KEYS[i] = Integer.toString(i);
+        }
+    }
+
+    private volatile Map<String, Object> delegate;
 
     private String format;
 
@@ -69,13 +83,38 @@ public class MarcRecord implements Map<String, Object> {
 
     private transient Collection<MarcField> marcFields;
 
+    private transient Comparator<String> comparator;
+
+    private transient MarcRecordTagIndex tagIndex;
+
+    private transient boolean lightweight;
+
     private MarcRecord(Map<String, Object> delegate) {
         this.delegate = delegate;
     }
 
+    /**
+     * Create a MARC record whose fields are decoded on first access, by {@link #decodeFields()}.
+     * The map is created from the fields on first access.
+     * @param format      the format of the record
+     * @param type        the type
+     * @param recordLabel the record label
+     * @param comparator  a tag comparator for the underlying map
+     */
+    MarcRecord(String format, String type, RecordLabel recordLabel, Comparator<String> comparator) {
+        this.format = format;
+        this.type = type;
+        this.recordLabel = Objects.requireNonNull(recordLabel, "record label must not be null");
+        this.comparator = comparator;
+    }
+
     /**
      * Create a MARC record. Use {@link Marc.Builder} to create a MARC record.
      *
+     * The map view of the record is created from the MARC fields on first use of a map method,
+     * so records that are only accessed by their fields do not pay for it.
+     * A lightweight record has an empty map view.
+     *
      * @param format      the format of the record
      * @param type        the type
      * @param recordLabel the record label
@@ -89,12 +128,40 @@ public class MarcRecord implements Map<String, Object> {
                       Collection<MarcField> marcFields,
                       boolean lightweight,
                       Comparator<String> comparator) {
+        this(format, type, recordLabel, marcFields, lightweight, comparator, false);
+    }
+
+    /**
+     * Create a MARC record. Use {@link Marc.Builder} to create a MARC record.
+     *
+     * With a tag index, the lookups by tag, like {@link #getAll(String)} or {@link #getFirst(String, String)},
+     * only visit the fields with the tag. The index is built from the fields when the record is created,
+     * and again when the fields are filtered, so the field collection must not be changed in other ways.
+     *
+     * @param format      the format of the record
+     * @param type        the type
+     * @param recordLabel the record label
+     * @param marcFields  the MARC field
+     * @param lightweight true if MARC record fields should not be entered into the underlying hash map.
+     * @param comparator  a tag comparator for the underlying map
+     * @param tagIndex    true if the MARC fields should be indexed by tag
+     */
+    public MarcRecord(String format,
+                      String type,
+                      RecordLabel recordLabel,
+                      Collection<MarcField> marcFields,
+                      boolean lightweight,
+                      Comparator<String> comparator,
+                      boolean tagIndex) {
         this.format = format;
         this.type = type;
         this.recordLabel = recordLabel;
         Objects.requireNonNull(recordLabel, "record label must not be null");
         this.marcFields = marcFields;
-        this.delegate = lightweight ? Map.of() : createMapFromMarcFields(comparator);
+        this.delegate = lightweight ? Map.of() : null;
+        this.lightweight = lightweight;
+        this.comparator = comparator;
+        this.tagIndex = tagIndex ? MarcRecordTagIndex.of(marcFields) : null;
     }
 
     /**
@@ -151,6 +218,34 @@ public class MarcRecord implements Map<String, Object> {
         return Marc.builder().setInputStream(inputStream).setCharset(charset).iterable();
     }
 
+    /**
+     * Return a copy of this MARC record with a copy of the field list, for keeping a record that is
+     * reused by {@link Marc.Builder#reuseRecord()}. The MARC fields are immutable and are shared by the copy.
+     * The map view of the copy is created from the fields.
+     * @return the copy of this MARC record
+     */
+    public MarcRecord copy() {
+        return new MarcRecord(format, type, recordLabel,
+                getFields() != null ? new ArrayList<>(marcFields) : new ArrayList<>(),
+                lightweight, comparator, tagIndex != null);
+    }
+
+    /**
+     * Reset this MARC record to new content, for reusing the record.
+     * @param format      the format of the record
+     * @param type        the type
+     * @param recordLabel the record label
+     * @param marcFields  the MARC fields
+     */
+    void reset(String format, String type, RecordLabel recordLabel, Collection<MarcField> marcFields) {
+        this.format = format;
+        this.type = type;
+        this.recordLabel = Objects.requireNonNull(recordLabel, "record label must not be null");
+        this.marcFields = marcFields;
+        resetMap();
+        reindex();
+    }
+
     /**
      * Return the MARC record format.
      *
@@ -184,20 +279,37 @@ public class MarcRecord implements Map<String, Object> {
      * @return the MARC field list
      */
     public Collection<MarcField> getFields() {
+        if (marcFields == null) {
+            marcFields = decodeFields();
+        }
+        return marcFields;
+    }
+
+    /**
+     * Decode the MARC fields of a record that decodes its fields on first access.
+     * @return the MARC fields, or null
+     */
+    Collection<MarcField> decodeFields() {
+        return null;
+    }
+
+    /**
+     * Return the MARC fields if they are decoded, without decoding them.
+     * @return the MARC fields, or null
+     */
+    Collection<MarcField> decodedFields() {
         return marcFields;
     }
 
     public LocalDate getCreationDate(LocalDate defaultDate) {
-        if (marcFields != null) {
-            MarcField marcField = getFirst("008");
-            if (marcField != null) {
-                String value = marcField.recoverControlFieldValue();
-                if (value != null && value.length() >= 6 && value.substring(0, 6).matches("\\d+")) {
-                    try {
-                        return LocalDate.parse(value.substring(0, 6), SHORT_DATE_FORMAT);
-                    } catch (DateTimeException e) {
-                        return defaultDate;
-                    }
+        MarcField marcField = getFirst("008");
+        if (marcField != null) {
+            String value = marcField.recoverControlFieldValue();
+            if (value != null && value.length() >= 6 && value.substring(0, 6).matches("\\d+")) {
+                try {
+                    return LocalDate.parse(value.substring(0, 6), SHORT_DATE_FORMAT);
+                } catch (DateTimeException e) {
+                    return defaultDate;
                 }
             }
         }
@@ -205,16 +317,14 @@ public class MarcRecord implements Map<String, Object> {
     }
 
     public LocalDate getLastModificationDate(LocalDate defaultDate) {
-        if (marcFields != null) {
-            MarcField marcField = getFirst("005");
-            if (marcField != null) {
-                String value = marcField.recoverControlFieldValue();
-                if (value != null && value.length() >= 8 && value.substring(0, 8).matches("\\d+")) {
-                    try {
-                        return LocalDate.parse(value.substring(0, 8), DATE_FORMAT);
-                    } catch (DateTimeException e) {
-                        return defaultDate;
-                    }
+        MarcField marcField = getFirst("005");
+        if (marcField != null) {
+            String value = marcField.recoverControlFieldValue();
+            if (value != null && value.length() >= 8 && value.substring(0, 8).matches("\\d+")) {
+                try {
+                    return LocalDate.parse(value.substring(0, 8), DATE_FORMAT);
+                } catch (DateTimeException e) {
+                    return defaultDate;
                 }
             }
         }
@@ -222,18 +332,20 @@ public class MarcRecord implements Map<String, Object> {
     }
 
     public void filterFields(Comparator<MarcField> comparator) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             Stream<MarcField> stream = marcFields.stream();
             if (comparator != null) {
                 stream = stream.sorted(comparator);
             }
             marcFields = stream.toList();
+            resetMap();
+            reindex();
         }
     }
 
     public void filterFields(Predicate<? super MarcField> predicate,
                              Comparator<MarcField> comparator) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             Stream<MarcField> stream = marcFields.stream();
             if (predicate != null) {
                 stream = stream.filter(predicate);
@@ -242,13 +354,15 @@ public class MarcRecord implements Map<String, Object> {
                 stream = stream.sorted(comparator);
             }
             marcFields = stream.toList();
+            resetMap();
+            reindex();
         }
     }
 
     public void filterFields(Predicate<? super MarcField> predicate,
                              Stream<MarcField> marcFieldStream,
                              Comparator<MarcField> comparator) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             Stream<MarcField> stream = marcFields.stream();
             if (predicate != null) {
                 stream = stream.filter(predicate);
@@ -260,6 +374,8 @@ public class MarcRecord implements Map<String, Object> {
                 stream = stream.sorted(comparator);
             }
             marcFields = stream.toList();
+            resetMap();
+            reindex();
         }
     }
 
@@ -270,7 +386,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void all(String tag, MarcFieldHandler handler) {
-        all(marcField -> marcField.getTag().equals(tag), handler);
+        allWithTag(tag, marcField -> marcField.getTag().equals(tag), handler);
     }
 
     /**
@@ -280,7 +396,8 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void all(String tag, String indicator, MarcFieldHandler handler) {
-        all(marcField -> marcField.getTag().equals(tag) && marcField.getIndicator().equals(indicator), handler);
+        allWithTag(tag, marcField -> marcField.getTag().equals(tag) &&
+                marcField.getIndicator().equals(indicator), handler);
     }
 
     /**
@@ -291,7 +408,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void all(String tag, String indicator, String subfieldId, MarcFieldHandler handler) {
-        all(marcField -> marcField.getTag().equals(tag) &&
+        allWithTag(tag, marcField -> marcField.getTag().equals(tag) &&
                 marcField.getIndicator().equals(indicator) &&
                 marcField.getSubfieldIds().contains(subfieldId), handler);
     }
@@ -311,7 +428,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void all(Predicate<? super MarcField> predicate, MarcFieldHandler handler) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             marcFields.stream().filter(predicate).forEach(handler::field);
         }
     }
@@ -322,7 +439,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return a list of MARC fields
      */
     public List<MarcField> getAll(String tag) {
-        return getAll(marcField -> marcField.getTag().equals(tag));
+        List<MarcField> list = new ArrayList<>();
+        all(tag, list::add);
+        return list;
     }
 
     /**
@@ -332,7 +451,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return a list of MARC fields
      */
     public List<MarcField> getAll(String tag, String indicator) {
-        return getAll(marcField -> marcField.getTag().equals(tag) && marcField.getIndicator().equals(indicator));
+        List<MarcField> list = new ArrayList<>();
+        all(tag, indicator, list::add);
+        return list;
     }
 
     /**
@@ -343,9 +464,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return a list of MARC fields
      */
     public List<MarcField> getAll(String tag, String indicator, String subfieldId) {
-        return getAll(marcField -> marcField.getTag().equals(tag) &&
-                marcField.getIndicator().equals(indicator) &&
-                marcField.getSubfieldIds().contains(subfieldId));
+        List<MarcField> list = new ArrayList<>();
+        all(tag, indicator, subfieldId, list::add);
+        return list;
     }
 
     /**
@@ -354,7 +475,7 @@ public class MarcRecord implements Map<String, Object> {
      * @return a list of MARC fields
      */
     public List<MarcField> getAll(Predicate<? super MarcField> predicate) {
-        List<MarcField> list = new LinkedList<>();
+        List<MarcField> list = new ArrayList<>();
         all(predicate, list::add);
         return list;
     }
@@ -365,7 +486,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void first(String tag, MarcFieldHandler handler) {
-        first(marcField -> marcField.getTag().equals(tag), handler);
+        firstWithTag(tag, marcField -> marcField.getTag().equals(tag), handler);
     }
 
     /**
@@ -375,7 +496,8 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void first(String tag, String indicator, MarcFieldHandler handler) {
-        first(marcField -> marcField.getTag().equals(tag) && marcField.getIndicator().equals(indicator), handler);
+        firstWithTag(tag, marcField -> marcField.getTag().equals(tag) &&
+                marcField.getIndicator().equals(indicator), handler);
     }
 
     /**
@@ -386,7 +508,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void first(String tag, String indicator, String subfieldId, MarcFieldHandler handler) {
-        first(marcField -> marcField.getTag().equals(tag) &&
+        firstWithTag(tag, marcField -> marcField.getTag().equals(tag) &&
                 marcField.getIndicator().equals(indicator) &&
                 marcField.getSubfieldIds().contains(subfieldId), handler);
     }
@@ -397,7 +519,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void first(Predicate<? super MarcField> predicate, MarcFieldHandler handler) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             marcFields.stream().filter(predicate).findFirst().ifPresent(handler::field);
         }
     }
@@ -408,7 +530,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return the MARC field or null
      */
     public MarcField getFirst(String tag) {
-        return getFirst(marcField -> marcField.getTag().equals(tag));
+        final MarcField[] array = new MarcField[1];
+        first(tag, marcField -> array[0] = marcField);
+        return array[0];
     }
 
     /**
@@ -418,7 +542,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return the MARC field or null
      */
     public MarcField getFirst(String tag, String indicator) {
-        return getFirst(marcField -> marcField.getTag().equals(tag) && marcField.getIndicator().equals(indicator));
+        final MarcField[] array = new MarcField[1];
+        first(tag, indicator, marcField -> array[0] = marcField);
+        return array[0];
     }
 
     /**
@@ -429,9 +555,9 @@ public class MarcRecord implements Map<String, Object> {
      * @return the MARC field or null
      */
     public MarcField getFirst(String tag, String indicator, String subfieldId) {
-        return getFirst(marcField -> marcField.getTag().equals(tag) &&
-                marcField.getIndicator().equals(indicator) &&
-                marcField.getSubfieldIds().contains(subfieldId));
+        final MarcField[] array = new MarcField[1];
+        first(tag, indicator, subfieldId, marcField -> array[0] = marcField);
+        return array[0];
     }
 
     /**
@@ -451,7 +577,7 @@ public class MarcRecord implements Map<String, Object> {
      * @param handler the handler
      */
     public void any(Predicate<? super MarcField> predicate, MarcFieldHandler handler) {
-        if (marcFields != null) {
+        if (getFields() != null) {
             marcFields.stream().filter(predicate).findAny().ifPresent(handler::field);
         }
     }
@@ -467,6 +593,48 @@ public class MarcRecord implements Map<String, Object> {
         return array[0];
     }
 
+    private void allWithTag(String tag, Predicate<? super MarcField> predicate, MarcFieldHandler handler) {
+        List<MarcField> list = tagIndex != null ? tagIndex.get(tag) : null;
+        if (list == null) {
+            all(predicate, handler);
+            return;
+        }
+        for (MarcField marcField : list) {
+            if (predicate.test(marcField)) {
+                handler.field(marcField);
+            }
+        }
+    }
+
+    private void firstWithTag(String tag, Predicate<? super MarcField> predicate, MarcFieldHandler handler) {
+        List<MarcField> list = tagIndex != null ? tagIndex.get(tag) : null;
+        if (list == null) {
+            first(predicate, handler);
+            return;
+        }
+        for (MarcField marcField : list) {
+            if (predicate.test(marcField)) {
+                handler.field(marcField);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop a map view that was created from the fields, it is created again from the fields on next use.
+     */
+    private void resetMap() {
+        if (!lightweight) {
+            delegate = null;
+        }
+    }
+
+    private void reindex() {
+        if (tagIndex != null) {
+            tagIndex = MarcRecordTagIndex.of(marcFields);
+        }
+    }
+
     public void rebuildMap() {
         rebuildMap(Comparator.naturalOrder());
     }
@@ -477,109 +645,124 @@ public class MarcRecord implements Map<String, Object> {
 
     @Override
     public int size() {
-        return delegate.size();
+        return delegate().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return delegate.isEmpty();
+        return delegate().isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return delegate.containsKey(key);
+        return delegate().containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return delegate.containsValue(value);
+        return delegate().containsValue(value);
     }
 
     @Override
     public Object get(Object key) {
-        return delegate.get(key);
+        return delegate().get(key);
     }
 
     @Override
     public Object put(String key, Object value) {
-        return delegate.put(key, value);
+        return delegate().put(key, value);
     }
 
     @Override
     public Object remove(Object key) {
-        return delegate.remove(key);
+        return delegate().remove(key);
     }
 
     @Override
     public void putAll(Map<? extends String, ?> m) {
-        delegate.putAll(m);
+        delegate().putAll(m);
     }
 
     @Override
     public void clear() {
-        delegate.clear();
+        delegate().clear();
     }
 
     @Override
     public Set<String> keySet() {
-        return delegate.keySet();
+        return delegate().keySet();
     }
 
     @Override
     public Collection<Object> values() {
-        return delegate.values();
+        return delegate().values();
     }
 
     @Override
     public Set<Entry<String, Object>> entrySet() {
-        return delegate.entrySet();
+        return delegate().entrySet();
     }
 
     @Override
     public boolean equals(Object obj) {
         return obj == this || (obj instanceof MarcRecord)
                 && recordLabel.equals(((MarcRecord) obj).getRecordLabel())
-                && marcFields.equals(((MarcRecord) obj).getFields());
+                && Objects.equals(getFields(), ((MarcRecord) obj).getFields());
     }
 
     @Override
     public int hashCode() {
-        return (recordLabel.toString() + (marcFields != null ? marcFields.toString() : "")).hashCode();
+        return (recordLabel.toString() + (getFields() != null ? marcFields.toString() : "")).hashCode();
     }
 
     public String toString() {
-        return delegate.toString();
+        return delegate().toString();
+    }
+
+    private Map<String, Object> delegate() {
+        Map<String, Object> map = delegate;
+        if (map == null) {
+            synchronized (this) {
+                map = delegate;
+                if (map == null) {
+                    map = createMapFromMarcFields(comparator);
+                    delegate = map;
+                }
+            }
+        }
+        return map;
     }
 
     @SuppressWarnings("unchecked")
     private Map<String, Object> createMapFromMarcFields(Comparator<String> comparator) {
         Map<String, Object> map = comparator!= null ? new TreeMap<>(comparator) : new LinkedHashMap<>();
-        if (marcFields == null) {
+        if (getFields() == null) {
             return map;
         }
         for (MarcField marcField : marcFields) {
             String tag = marcField.getTag();
             int repeat;
             Map<String, Object> repeatMap;
-            if (!map.containsKey(tag)) {
+            repeatMap = (Map<String, Object>) map.get(tag);
+            if (repeatMap == null) {
                 repeatMap = new LinkedHashMap<>();
                 repeat = 1;
                 map.put(tag, repeatMap);
             } else {
-                repeatMap = (Map<String, Object>) map.get(tag);
                 repeat = repeatMap.size() + 1;
             }
+            String repeatKey = repeat < REPEAT_KEYS.length ? REPEAT_KEYS[repeat] : Integer.toString(repeat);
             String indicator = marcField.getIndicator();
             if (indicator != null && !indicator.isEmpty()) {
                 Map<String, Object> indicators = new LinkedHashMap<>();
-                repeatMap.put(Integer.toString(repeat), indicators);
+                repeatMap.put(repeatKey, indicators);
                 if (!indicators.containsKey(indicator)) {
                     indicators.put(indicator, new LinkedHashMap<>());
                 }
                 Map<String, Object> subfields = (Map<String, Object>) indicators.get(indicator);
                 // we may have values instead of subfields, even on non-control fields. See MAB
                 if (marcField.getValue() != null && !marcField.getValue().isEmpty()) {
-                    repeatMap.put(Integer.toString(repeat), marcField.getValue());
+                    repeatMap.put(repeatKey, marcField.getValue());
                 } else {
                     for (MarcField.Subfield subfield : marcField.getSubfields()) {
                         String code = subfield.getId();
@@ -598,7 +781,7 @@ public class MarcRecord implements Map<String, Object> {
                     }
                 }
             } else {
-                repeatMap.put(Integer.toString(repeat), marcField.getValue());
+                repeatMap.put(repeatKey, marcField.getValue());
             }
         }
         if (format != null) {
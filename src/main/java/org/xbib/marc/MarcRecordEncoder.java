@@ -0,0 +1,367 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An encoder for ISO 2709 records with record label, directory, and variable fields.
+ *
+ * A record is assembled in a single pass in one buffer, which is reused for the next record. The space for the
+ * directory is reserved in front of the variable fields, the values are encoded directly into the buffer by a
+ * reused {@link CharsetEncoder}, and the record length, the base address of data and the directory entries are
+ * filled in when all fields are encoded.
+ *
+ * The lengths of the directory entries are taken from the record label, with the MARC 21 defaults of
+ * four digits for the field length and five digits for the starting character position. A record can not
+ * be longer than 99999 bytes, and a field can not be longer or start later than the directory digits allow.
+ * What happens to records that do not fit is decided by the {@link OverflowPolicy}.
+ *
+ * An encoder is not thread safe.
+ */
+public final class MarcRecordEncoder {
+
+    /**
+     * The maximum length of a record, given by the five digits of the record length in the record label.
+     */
+    public static final int MAX_RECORD_LENGTH = 99999;
+
+    private static final int TAG_LENGTH = 3;
+
+    private static final int DEFAULT_INDICATOR_LENGTH = 2;
+
+    private static final int DEFAULT_SUBFIELD_IDENTIFIER_LENGTH = 2;
+
+    private static final int DEFAULT_DATA_FIELD_LENGTH = 4;
+
+    private static final int DEFAULT_STARTING_CHARACTER_POSITION_LENGTH = 5;
+
+    private final CharsetEncoder encoder;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private byte[] buffer;
+
+    private int length;
+
+    private String[] entryTags;
+
+    private int[] entryLengths;
+
+    private int[] entryStarts;
+
+    private long overflowCounter;
+
+    /**
+     * Create an encoder which fails on records that do not fit.
+     * @param charset the character set of the values
+     */
+    public MarcRecordEncoder(Charset charset) {
+        this(charset, OverflowPolicy.FAIL);
+    }
+
+    /**
+     * Create an encoder.
+     * @param charset the character set of the values
+     * @param overflowPolicy the policy for records that do not fit
+     */
+    public MarcRecordEncoder(Charset charset, OverflowPolicy overflowPolicy) {
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.overflowPolicy = overflowPolicy;
+        this.buffer = new byte[8192];
+        this.entryTags = new String[64];
+        this.entryLengths = new int[64];
+        this.entryStarts = new int[64];
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Encode a record.
+     * @param marcRecord the MARC record
+     * @return true if the record is encoded, false if the record is skipped by the overflow policy
+     * @throws IOException if the record does not fit and the overflow policy is {@link OverflowPolicy#FAIL}
+     */
+    public boolean encode(MarcRecord marcRecord) throws IOException {
+        return encode(marcRecord.getRecordLabel(), marcRecord.getFields());
+    }
+
+    /**
+     * Encode a record from a record label and fields. Like in {@link MarcWriter}, empty fields are not encoded.
+     * @param recordLabel the record label, or null for an empty record label
+     * @param fields the fields
+     * @return true if the record is encoded, false if the record is skipped by the overflow policy
+     * @throws IOException if the record does not fit and the overflow policy is {@link OverflowPolicy#FAIL}
+     */
+    public boolean encode(RecordLabel recordLabel, Collection<MarcField> fields) throws IOException {
+        length = 0;
+        RecordLabel label = recordLabel != null ? recordLabel : RecordLabel.EMPTY;
+        int indicatorLength = label.getIndicatorLength() > 0 ?
+                label.getIndicatorLength() : DEFAULT_INDICATOR_LENGTH;
+        int subfieldIdentifierLength = label.getSubfieldIdentifierLength() > 0 ?
+                label.getSubfieldIdentifierLength() : DEFAULT_SUBFIELD_IDENTIFIER_LENGTH;
+        int dataFieldLength = label.getDataFieldLength() > 0 ?
+                label.getDataFieldLength() : DEFAULT_DATA_FIELD_LENGTH;
+        int startingCharacterPositionLength = label.getStartingCharacterPositionLength() > 0 ?
+                label.getStartingCharacterPositionLength() : DEFAULT_STARTING_CHARACTER_POSITION_LENGTH;
+        int entrySize = TAG_LENGTH + dataFieldLength + startingCharacterPositionLength;
+        int maxFieldLength = maxValue(dataFieldLength);
+        int maxStart = maxValue(startingCharacterPositionLength);
+        int n = 0;
+        for (MarcField field : fields) {
+            if (isEncoded(field)) {
+                n++;
+            }
+        }
+        if (n > entryTags.length) {
+            entryTags = new String[n];
+            entryLengths = new int[n];
+            entryStarts = new int[n];
+        }
+        // reserve the space for the record label and the directory
+        int base = RecordLabel.LENGTH + n * entrySize + 1;
+        ensureCapacity(base);
+        int pos = base;
+        int count = 0;
+        for (MarcField field : fields) {
+            if (!isEncoded(field)) {
+                continue;
+            }
+            int start = pos;
+            pos = encodeField(field, pos, indicatorLength);
+            int fieldLength = pos - start;
+            if (fieldLength > maxFieldLength || start - base > maxStart || pos + 1 > MAX_RECORD_LENGTH) {
+                overflowCounter++;
+                switch (overflowPolicy) {
+                    case SKIP -> {
+                        return false;
+                    }
+                    case DROP_FIELDS -> {
+                        pos = start;
+                        continue;
+                    }
+                    default -> throw new IOException("record overflow at field " + field.getTag() +
+                            ": field length = " + fieldLength +
+                            ", starting character position = " + (start - base) +
+                            ", record length = " + (pos + 1));
+                }
+            }
+            entryTags[count] = field.getTag();
+            entryLengths[count] = fieldLength;
+            entryStarts[count] = start - base;
+            count++;
+        }
+        ensureCapacity(pos + 1);
+        buffer[pos++] = (byte) InformationSeparator.GS;
+        if (count < n) {
+            // fields were dropped, close the gap between the shorter directory and the variable fields
+            int newBase = RecordLabel.LENGTH + count * entrySize + 1;
+            System.arraycopy(buffer, base, buffer, newBase, pos - base);
+            pos -= base - newBase;
+            base = newBase;
+        }
+        String s = label.toString();
+        for (int i = 0; i < RecordLabel.LENGTH; i++) {
+            buffer[i] = (byte) s.charAt(i);
+        }
+        putDigits(0, 5, pos);
+        buffer[10] = (byte) ('0' + indicatorLength);
+        buffer[11] = (byte) ('0' + subfieldIdentifierLength);
+        putDigits(12, 5, base);
+        buffer[20] = (byte) ('0' + dataFieldLength);
+        buffer[21] = (byte) ('0' + startingCharacterPositionLength);
+        // no implementation-defined portion in the directory entries
+        buffer[22] = '0';
+        int d = RecordLabel.LENGTH;
+        for (int k = 0; k < count; k++) {
+            String tag = entryTags[k];
+            for (int i = 0; i < TAG_LENGTH; i++) {
+                buffer[d + i] = (byte) (i < tag.length() ? tag.charAt(i) : ' ');
+            }
+            putDigits(d + TAG_LENGTH, dataFieldLength, entryLengths[k]);
+            putDigits(d + TAG_LENGTH + dataFieldLength, startingCharacterPositionLength, entryStarts[k]);
+            d += entrySize;
+        }
+        buffer[d] = (byte) InformationSeparator.RS;
+        length = pos;
+        return true;
+    }
+
+    /**
+     * Return the length of the last encoded record.
+     * @return the length, or 0 if the last record was not encoded
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the buffer of the encoder. The last encoded record is at the start of the buffer, up to the length.
+     * The buffer is overwritten by the next record.
+     * @return the buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Write the last encoded record.
+     * @param outputStream the output stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, length);
+    }
+
+    /**
+     * Return the last encoded record as a new byte array.
+     * @return the bytes of the record
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Return the number of fields and records that did not fit.
+     * @return the number of overflows
+     */
+    public long getOverflowCounter() {
+        return overflowCounter;
+    }
+
+    private static boolean isEncoded(MarcField field) {
+        if (field.getTag() == null) {
+            return false;
+        }
+        if (field.isControl()) {
+            String value = field.getValue();
+            return value != null && !value.isEmpty();
+        }
+        return !field.isEmpty();
+    }
+
+    private int encodeField(MarcField field, int start, int indicatorLength) throws IOException {
+        int pos = start;
+        if (field.isControl()) {
+            pos = encodeValue(field.getValue(), pos);
+        } else {
+            String indicator = field.getIndicator();
+            ensureCapacity(pos + indicatorLength);
+            for (int i = 0; i < indicatorLength; i++) {
+                buffer[pos++] = (byte) (indicator != null && i < indicator.length() ? indicator.charAt(i) : ' ');
+            }
+            String value = field.getValue();
+            if (value != null && !value.isEmpty()) {
+                pos = encodeValue(value, pos);
+            }
+            for (MarcField.Subfield subfield : field.getSubfields()) {
+                value = subfield.getValue();
+                if (value != null && !value.isEmpty()) {
+                    String id = subfield.getId();
+                    ensureCapacity(pos + 1 + id.length());
+                    buffer[pos++] = (byte) InformationSeparator.US;
+                    for (int i = 0; i < id.length(); i++) {
+                        buffer[pos++] = (byte) id.charAt(i);
+                    }
+                    pos = encodeValue(value, pos);
+                }
+            }
+        }
+        ensureCapacity(pos + 1);
+        buffer[pos++] = (byte) InformationSeparator.RS;
+        return pos;
+    }
+
+    private int encodeValue(String value, int pos) throws IOException {
+        CharBuffer in = CharBuffer.wrap(value);
+        ByteBuffer out = ByteBuffer.wrap(buffer, pos, buffer.length - pos);
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(in, out, true)).isOverflow()) {
+            out = grow(out);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while ((result = encoder.flush(out)).isOverflow()) {
+            out = grow(out);
+        }
+        return out.position();
+    }
+
+    private ByteBuffer grow(ByteBuffer out) {
+        int pos = out.position();
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        return ByteBuffer.wrap(buffer, pos, buffer.length - pos);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private void putDigits(int offset, int digits, int value) {
+        int v = value;
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+    }
+
+    private static int maxValue(int digits) {
+        int value = 1;
+        for (int i = 0; i < digits && value <= MAX_RECORD_LENGTH; i++) {
+            value *= 10;
+        }
+        return value - 1;
+    }
+
+    /**
+     * The policies for records that are longer than {@link #MAX_RECORD_LENGTH}, or with fields that are
+     * longer or start later than the directory entries allow.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Fail with an exception.
+         */
+        FAIL,
+        /**
+         * Skip the record.
+         */
+        SKIP,
+        /**
+         * Drop the fields that do not fit, and encode the rest of the record.
+         */
+        DROP_FIELDS
+    }
+}
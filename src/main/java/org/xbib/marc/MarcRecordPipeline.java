@@ -0,0 +1,514 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.io.RecordInputStream;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * A pipeline that reads, parses, transforms and writes the ISO 2709 records of a {@link Marc.Builder}
+ * in separate stages, for using all cores when converting large files.
+ *
+ * The read stage frames the records of the input and collects them into batches. The parse stage parses
+ * the batches with MARC generators that have the settings of the builder, like {@link
+ * Marc.Builder#parallelRecordStream(boolean)}. The transform stage applies a record transformer, which may
+ * drop records by returning null. The sink stage runs on the calling thread and passes the records to a
+ * {@link MarcRecordListener} in the order of the input.
+ *
+ * The stages are connected by bounded queues, and the number of batches in flight is bounded, so a slow
+ * stage applies back pressure to the stages before it. The parse and transform stages run on a configurable
+ * number of workers. All workers run on one executor, which must be able to run all workers of the pipeline
+ * at the same time, for example an executor with a thread per task or with virtual threads. If no executor
+ * is set, a thread is started for each worker.
+ *
+ * Listeners of the builder do not receive events, but validator and transformers of the builder, and the
+ * record transformer of the pipeline, are shared between workers and must be thread safe.
+ * Each stage counts its batches and records, and the time it was busy, while the pipeline is running.
+ */
+public final class MarcRecordPipeline {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final Batch END = new Batch(-1L, null);
+
+    private final Marc.Builder builder;
+
+    private final Stage readStage;
+
+    private final Stage parseStage;
+
+    private final Stage transformStage;
+
+    private final Stage sinkStage;
+
+    private Executor executor;
+
+    private UnaryOperator<MarcRecord> transformer;
+
+    private int parseWorkers;
+
+    private int transformWorkers;
+
+    private int batchSize;
+
+    private int queueCapacity;
+
+    private volatile long startNanos;
+
+    MarcRecordPipeline(Marc.Builder builder) {
+        this.builder = builder;
+        this.readStage = new Stage("read");
+        this.parseStage = new Stage("parse");
+        this.transformStage = new Stage("transform");
+        this.sinkStage = new Stage("sink");
+        this.parseWorkers = Math.max(1, THREADS - 1);
+        this.transformWorkers = 1;
+        this.batchSize = 256;
+        this.queueCapacity = 2 * THREADS;
+    }
+
+    /**
+     * Set the executor for the workers of the pipeline. The executor must run all workers at the same time,
+     * that is, one reader, the parse and the transform workers. For example,
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+     * @param executor the executor
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set the record transformer of the transform stage. The transformer returns the transformed record,
+     * or null to drop the record.
+     * @param transformer the record transformer
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setTransformer(UnaryOperator<MarcRecord> transformer) {
+        this.transformer = transformer;
+        return this;
+    }
+
+    /**
+     * Set the number of workers of the parse stage. The default is the number of processors minus one.
+     * @param parseWorkers the number of parse workers
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setParseWorkers(int parseWorkers) {
+        this.parseWorkers = requirePositive(parseWorkers, "parse workers");
+        return this;
+    }
+
+    /**
+     * Set the number of workers of the transform stage. The default is one.
+     * @param transformWorkers the number of transform workers
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setTransformWorkers(int transformWorkers) {
+        this.transformWorkers = requirePositive(transformWorkers, "transform workers");
+        return this;
+    }
+
+    /**
+     * Set the number of records in a batch, the unit of work that is passed between the stages.
+     * The default is 256.
+     * @param batchSize the number of records in a batch
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setBatchSize(int batchSize) {
+        this.batchSize = requirePositive(batchSize, "batch size");
+        return this;
+    }
+
+    /**
+     * Set the capacity of the queues between the stages, in batches. The default is twice the number
+     * of processors.
+     * @param queueCapacity the queue capacity
+     * @return this pipeline
+     */
+    public MarcRecordPipeline setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = requirePositive(queueCapacity, "queue capacity");
+        return this;
+    }
+
+    /**
+     * Run the pipeline and pass the records to a record listener, wrapped into a collection, like
+     * {@link Marc#writeRecordCollection()}. The input of the builder is closed at the end.
+     * @param marcRecordListener the record listener
+     * @return the number of records passed to the listener
+     * @throws IOException if reading, parsing or writing fails
+     */
+    public long run(MarcRecordListener marcRecordListener) throws IOException {
+        Objects.requireNonNull(marcRecordListener);
+        BlockingQueue<Batch> parseQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> transformQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> sinkQueue = new ArrayBlockingQueue<>(queueCapacity);
+        parseStage.queue = parseQueue;
+        transformStage.queue = transformQueue;
+        sinkStage.queue = sinkQueue;
+        // the reorder buffer of the sink is bounded by the number of batches in flight
+        Semaphore inFlight = new Semaphore(3 * queueCapacity + parseWorkers + transformWorkers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        tasks.add(task(failure, () -> read(parseQueue, inFlight)));
+        AtomicInteger parsing = new AtomicInteger(parseWorkers);
+        for (int i = 0; i < parseWorkers; i++) {
+            tasks.add(task(failure, () -> parse(parseQueue, transformQueue, parsing)));
+        }
+        AtomicInteger transforming = new AtomicInteger(transformWorkers);
+        for (int i = 0; i < transformWorkers; i++) {
+            tasks.add(task(failure, () -> transform(transformQueue, sinkQueue, transforming)));
+        }
+        Executor workers = executor != null ? executor : r -> {
+            Thread thread = new Thread(r, "marc-pipeline-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        };
+        startNanos = System.nanoTime();
+        try {
+            for (FutureTask<Void> task : tasks) {
+                workers.execute(task);
+            }
+            return sink(marcRecordListener, sinkQueue, inFlight, failure);
+        } finally {
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(true);
+            }
+            if (builder.getInputStream() != null) {
+                builder.getInputStream().close();
+            }
+        }
+    }
+
+    /**
+     * Return the statistics of the read stage.
+     * @return the read stage
+     */
+    public Stage getReadStage() {
+        return readStage;
+    }
+
+    /**
+     * Return the statistics of the parse stage.
+     * @return the parse stage
+     */
+    public Stage getParseStage() {
+        return parseStage;
+    }
+
+    /**
+     * Return the statistics of the transform stage.
+     * @return the transform stage
+     */
+    public Stage getTransformStage() {
+        return transformStage;
+    }
+
+    /**
+     * Return the statistics of the sink stage.
+     * @return the sink stage
+     */
+    public Stage getSinkStage() {
+        return sinkStage;
+    }
+
+    private void read(BlockingQueue<Batch> parseQueue, Semaphore inFlight) throws IOException, InterruptedException {
+        InputStream inputStream = builder.getPath() != null ?
+                Files.newInputStream(builder.getPath()) : builder.getInputStream();
+        try (RecordInputStream recordInputStream = new RecordInputStream(inputStream, BUFFER_SIZE)) {
+            long sequence = 0L;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int count = 0;
+            while (true) {
+                long t = System.nanoTime();
+                byte[] bytes = recordInputStream.readRecord();
+                if (bytes != null) {
+                    out.write(bytes);
+                    count++;
+                }
+                readStage.busy.add(System.nanoTime() - t);
+                if (count > 0 && (bytes == null || count == batchSize)) {
+                    inFlight.acquire();
+                    readStage.count(count);
+                    parseQueue.put(new Batch(sequence++, out.toByteArray()));
+                    out.reset();
+                    count = 0;
+                }
+                if (bytes == null) {
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < parseWorkers; i++) {
+            parseQueue.put(END);
+        }
+    }
+
+    private void parse(BlockingQueue<Batch> parseQueue, BlockingQueue<Batch> transformQueue,
+                       AtomicInteger parsing) throws InterruptedException {
+        Batch batch;
+        while ((batch = parseQueue.take()) != END) {
+            long t = System.nanoTime();
+            batch.records = builder.parseBlock(batch.data);
+            batch.data = null;
+            parseStage.busy.add(System.nanoTime() - t);
+            parseStage.count(batch.records.size());
+            transformQueue.put(batch);
+        }
+        if (parsing.decrementAndGet() == 0) {
+            for (int i = 0; i < transformWorkers; i++) {
+                transformQueue.put(END);
+            }
+        }
+    }
+
+    private void transform(BlockingQueue<Batch> transformQueue, BlockingQueue<Batch> sinkQueue,
+                           AtomicInteger transforming) throws InterruptedException {
+        Batch batch;
+        while ((batch = transformQueue.take()) != END) {
+            if (transformer != null) {
+                long t = System.nanoTime();
+                List<MarcRecord> records = new ArrayList<>(batch.records.size());
+                for (MarcRecord marcRecord : batch.records) {
+                    MarcRecord transformed = transformer.apply(marcRecord);
+                    if (transformed != null) {
+                        records.add(transformed);
+                    }
+                }
+                batch.records = records;
+                transformStage.busy.add(System.nanoTime() - t);
+            }
+            transformStage.count(batch.records.size());
+            sinkQueue.put(batch);
+        }
+        if (transforming.decrementAndGet() == 0) {
+            sinkQueue.put(END);
+        }
+    }
+
+    private long sink(MarcRecordListener marcRecordListener, BlockingQueue<Batch> sinkQueue, Semaphore inFlight,
+                      AtomicReference<Throwable> failure) throws IOException {
+        Map<Long, Batch> pending = new HashMap<>();
+        long next = 0L;
+        long count = 0L;
+        boolean end = false;
+        try {
+            if (marcRecordListener instanceof ContentHandler) {
+                ((ContentHandler) marcRecordListener).startDocument();
+            }
+            marcRecordListener.beginCollection();
+            while (!end || !pending.isEmpty()) {
+                Batch batch = sinkQueue.poll(100L, TimeUnit.MILLISECONDS);
+                if (failure.get() != null) {
+                    break;
+                }
+                if (batch == END) {
+                    end = true;
+                } else if (batch != null) {
+                    pending.put(batch.sequence, batch);
+                }
+                while ((batch = pending.remove(next)) != null) {
+                    long t = System.nanoTime();
+                    for (MarcRecord marcRecord : batch.records) {
+                        marcRecordListener.record(marcRecord);
+                    }
+                    sinkStage.busy.add(System.nanoTime() - t);
+                    sinkStage.count(batch.records.size());
+                    count += batch.records.size();
+                    inFlight.release();
+                    next++;
+                }
+                if (end && !pending.isEmpty()) {
+                    throw new IOException("missing batch " + next + " in pipeline");
+                }
+            }
+            Throwable t = failure.get();
+            if (t != null) {
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                if (t instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) t).getCause();
+                }
+                throw new IOException(t);
+            }
+            marcRecordListener.endCollection();
+            if (marcRecordListener instanceof ContentHandler) {
+                ((ContentHandler) marcRecordListener).endDocument();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+        return count;
+    }
+
+    private static FutureTask<Void> task(AtomicReference<Throwable> failure, Worker worker) {
+        return new FutureTask<>(() -> {
+            try {
+                worker.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+            return null;
+        });
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("invalid number of " + name + ": " + value);
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static class Batch {
+
+        private final long sequence;
+
+        private byte[] data;
+
+        private List<MarcRecord> records;
+
+        private Batch(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The statistics of a pipeline stage.
+     */
+    public final class Stage {
+
+        private final String name;
+
+        private final LongAdder batches;
+
+        private final LongAdder records;
+
+        private final LongAdder busy;
+
+        private volatile BlockingQueue<Batch> queue;
+
+        private Stage(String name) {
+            this.name = name;
+            this.batches = new LongAdder();
+            this.records = new LongAdder();
+            this.busy = new LongAdder();
+        }
+
+        /**
+         * Return the name of the stage.
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Return the number of batches that the stage has passed on.
+         * @return the number of batches
+         */
+        public long getBatches() {
+            return batches.sum();
+        }
+
+        /**
+         * Return the number of records that the stage has passed on.
+         * @return the number of records
+         */
+        public long getRecords() {
+            return records.sum();
+        }
+
+        /**
+         * Return the time that the workers of the stage were busy, summed over the workers, without the time
+         * waiting for the queues.
+         * @return the busy time in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busy.sum();
+        }
+
+        /**
+         * Return the number of records per second that the stage has passed on since the pipeline was started.
+         * @return the throughput in records per second
+         */
+        public double getThroughput() {
+            long nanos = System.nanoTime() - startNanos;
+            return startNanos == 0L || nanos <= 0L ? 0.0d : records.sum() * 1.0e9d / nanos;
+        }
+
+        /**
+         * Return the number of batches that wait in the queue before the stage.
+         * The read stage has no queue.
+         * @return the queue depth
+         */
+        public int getQueueDepth() {
+            BlockingQueue<Batch> q = queue;
+            return q != null ? q.size() : 0;
+        }
+
+        private void count(int n) {
+            batches.increment();
+            records.add(n);
+        }
+
+        @Override
+        public String toString() {
+            return name + " [batches=" + getBatches() + ", records=" + getRecords() +
+                    ", busy=" + TimeUnit.NANOSECONDS.toMillis(getBusyNanos()) + "ms, queue=" + getQueueDepth() + "]";
+        }
+    }
+}
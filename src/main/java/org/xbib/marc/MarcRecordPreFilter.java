@@ -0,0 +1,111 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.label.RecordLabel;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A record filter that is evaluated while a record is parsed, before the record is built.
+ *
+ * The record label predicate is evaluated as soon as the record label is read. The optional control field
+ * predicate is evaluated with the control fields of a record, as soon as the first data field is reached.
+ * The events of a record are held back until the record is accepted. A rejected record does not emit
+ * any events, and the rest of the record is skipped without decoding.
+ *
+ * The number of rejected records is counted. Pre-filters can be shared between threads.
+ */
+public final class MarcRecordPreFilter {
+
+    private final Predicate<RecordLabel> recordLabelPredicate;
+
+    private final Predicate<List<MarcField>> controlFieldPredicate;
+
+    private final LongAdder skipped;
+
+    private MarcRecordPreFilter(Predicate<RecordLabel> recordLabelPredicate,
+                                Predicate<List<MarcField>> controlFieldPredicate) {
+        this.recordLabelPredicate = Objects.requireNonNull(recordLabelPredicate);
+        this.controlFieldPredicate = controlFieldPredicate;
+        this.skipped = new LongAdder();
+    }
+
+    /**
+     * Create a pre-filter on record labels.
+     * @param recordLabelPredicate the predicate, returning true for the record labels of the wanted records
+     * @return the pre-filter
+     */
+    public static MarcRecordPreFilter of(Predicate<RecordLabel> recordLabelPredicate) {
+        return new MarcRecordPreFilter(recordLabelPredicate, null);
+    }
+
+    /**
+     * Create a pre-filter on record labels and control fields.
+     * @param recordLabelPredicate the predicate, returning true for the record labels of the wanted records
+     * @param controlFieldPredicate the predicate, returning true for the control fields of the wanted records
+     * @return the pre-filter
+     */
+    public static MarcRecordPreFilter of(Predicate<RecordLabel> recordLabelPredicate,
+                                         Predicate<List<MarcField>> controlFieldPredicate) {
+        return new MarcRecordPreFilter(recordLabelPredicate, Objects.requireNonNull(controlFieldPredicate));
+    }
+
+    /**
+     * Check a record label. A rejected record is counted.
+     * @param recordLabel the record label
+     * @return true if the record is wanted
+     */
+    public boolean acceptRecordLabel(RecordLabel recordLabel) {
+        if (recordLabelPredicate.test(recordLabel)) {
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * Return true if there is a control field predicate.
+     * @return true if control fields must be checked
+     */
+    public boolean hasControlFieldPredicate() {
+        return controlFieldPredicate != null;
+    }
+
+    /**
+     * Check the control fields of a record. A rejected record is counted.
+     * @param controlFields the control fields of the record
+     * @return true if the record is wanted
+     */
+    public boolean acceptControlFields(List<MarcField> controlFields) {
+        if (controlFieldPredicate == null || controlFieldPredicate.test(controlFields)) {
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * Return the number of rejected records.
+     * @return the number of rejected records
+     */
+    public long getSkippedRecords() {
+        return skipped.sum();
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import org.xbib.marc.io.BytesReference;
+import org.xbib.marc.io.Chunk;
+import org.xbib.marc.io.ChunkStream;
+import org.xbib.marc.io.MappedSeparatorChunkStream;
+import org.xbib.marc.io.RecordBoundaries;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A spliterator over the MARC records of an ISO 2709 file.
+ *
+ * The spliterator covers a byte range of the file. Splitting divides the range at a record boundary
+ * near the middle of the range, as found by {@link RecordBoundaries}, so every range contains complete records.
+ * Each range is parsed by its own {@link MarcGenerator}, which is created on the first advance,
+ * so ranges can be parsed in parallel, e.g. by the fork-join pool of a parallel stream.
+ *
+ * The spliterator reports {@link Spliterator#ORDERED} in ordered mode. The size estimate is the number of bytes
+ * in the range, not the number of records.
+ *
+ * A range closes its file mapping when it is read to the end. The mappings of ranges that are not read
+ * to the end, because a short-circuiting operation like {@code findFirst} or {@code limit} stopped the stream,
+ * or because a stage failed, are closed by {@link #close()}, which closes the mappings of all ranges
+ * split from this spliterator.
+ */
+public class MarcRecordSpliterator implements Spliterator<MarcRecord> {
+
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+
+    private final long minSplitSize;
+
+    private final boolean ordered;
+
+    private final Function<MarcRecordListener, MarcGenerator> generatorFactory;
+
+    private final Deque<MarcRecord> records;
+
+    private final Queue<ChunkStream<byte[], BytesReference>> openStreams;
+
+    private long start;
+
+    private long end;
+
+    private ChunkStream<byte[], BytesReference> stream;
+
+    private MarcGenerator marcGenerator;
+
+    private boolean done;
+
+    /**
+     * Create a MARC record spliterator over a file.
+     * @param path the path of the ISO 2709 file
+     * @param size the size of the file
+     * @param minSplitSize the minimum number of bytes in a range, ranges smaller than twice this size are not split
+     * @param ordered true if the records are in file order
+     * @param generatorFactory a factory for a MARC generator that emits the records to the given listener
+     */
+    public MarcRecordSpliterator(Path path, long size, long minSplitSize, boolean ordered,
+                                 Function<MarcRecordListener, MarcGenerator> generatorFactory) {
+        this(path, 0L, size, minSplitSize, ordered, generatorFactory, new ConcurrentLinkedQueue<>());
+    }
+
+    private MarcRecordSpliterator(Path path, long start, long end, long minSplitSize, boolean ordered,
+                                  Function<MarcRecordListener, MarcGenerator> generatorFactory,
+                                  Queue<ChunkStream<byte[], BytesReference>> openStreams) {
+        this.path = path;
+        this.start = start;
+        this.end = end;
+        this.minSplitSize = Math.max(minSplitSize, 1L);
+        this.ordered = ordered;
+        this.generatorFactory = generatorFactory;
+        this.records = new ArrayDeque<>();
+        this.openStreams = openStreams;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super MarcRecord> action) {
+        if (records.isEmpty() && !fill()) {
+            return false;
+        }
+        action.accept(records.poll());
+        return true;
+    }
+
+    @Override
+    public Spliterator<MarcRecord> trySplit() {
+        if (stream != null || done || end - start < 2 * minSplitSize) {
+            return null;
+        }
+        long mid;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mid = RecordBoundaries.nextRecordStart(channel, start + (end - start) / 2, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (mid <= start) {
+            return null;
+        }
+        MarcRecordSpliterator prefix =
+                new MarcRecordSpliterator(path, start, mid, minSplitSize, ordered, generatorFactory, openStreams);
+        this.start = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return done ? records.size() : end - start;
+    }
+
+    @Override
+    public int characteristics() {
+        return ordered ? NONNULL | ORDERED : NONNULL;
+    }
+
+    /**
+     * Close the file mappings of all ranges of this spliterator and the spliterators split from it
+     * that are not read to the end.
+     * @throws UncheckedIOException if a mapping can not be closed
+     */
+    public void close() {
+        IOException exception = null;
+        ChunkStream<byte[], BytesReference> chunkStream;
+        while ((chunkStream = openStreams.poll()) != null) {
+            try {
+                chunkStream.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Return the number of ranges whose file mapping is open.
+     * @return the number of open ranges
+     */
+    int getOpenRangeCount() {
+        return openStreams.size();
+    }
+
+    private boolean fill() {
+        if (done) {
+            return false;
+        }
+        try {
+            if (stream == null) {
+                stream = new MappedSeparatorChunkStream(path, start, end, REGION_SIZE);
+                openStreams.add(stream);
+                marcGenerator = generatorFactory.apply(new MarcRecordListener() {
+                    @Override
+                    public void beginCollection() {
+                        // not used
+                    }
+
+                    @Override
+                    public void record(MarcRecord marcRecord) {
+                        records.add(marcRecord);
+                    }
+
+                    @Override
+                    public void endCollection() {
+                        // not used
+                    }
+                });
+            }
+            while (records.isEmpty()) {
+                Chunk<byte[], BytesReference> chunk = stream.readChunk();
+                if (chunk == null) {
+                    done = true;
+                    marcGenerator.flush();
+                    closeStream();
+                    break;
+                }
+                marcGenerator.chunk(chunk);
+            }
+        } catch (IOException e) {
+            done = true;
+            try {
+                closeStream();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException(e);
+        }
+        return !records.isEmpty();
+    }
+
+    private void closeStream() throws IOException {
+        // the stream may have been closed by close() already
+        if (stream != null && openStreams.remove(stream)) {
+            stream.close();
+        }
+    }
+}
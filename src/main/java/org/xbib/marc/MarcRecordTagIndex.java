@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of the fields of a {@link MarcRecord} by tag.
+ *
+ * The tags are packed into ints and entered into an open addressing hash table, which maps each tag
+ * to a range of an array where the fields with the tag are grouped in record order. Fields with tags that
+ * can not be packed, because they are not three characters in the range of ISO 8859-1, are not indexed,
+ * and lookups of such tags are left to the caller.
+ */
+final class MarcRecordTagIndex {
+
+    private static final List<MarcField> EMPTY = List.of();
+
+    private final MarcField[] fields;
+
+    private final int[] keys;
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    private final int shift;
+
+    private MarcRecordTagIndex(Collection<MarcField> marcFields) {
+        int capacity = 4;
+        while (capacity < 2 * marcFields.size()) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        int[] slots = new int[marcFields.size()];
+        int n = 0;
+        int count = 0;
+        for (MarcField marcField : marcFields) {
+            int key = pack(marcField.getTag());
+            int slot = key != 0 ? insert(key) : -1;
+            if (slot >= 0) {
+                ends[slot]++;
+                count++;
+            }
+            slots[n++] = slot;
+        }
+        // turn the counts into ranges, and fill the ranges in record order
+        int offset = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            starts[slot] = offset;
+            offset += ends[slot];
+            ends[slot] = starts[slot];
+        }
+        this.fields = new MarcField[count];
+        n = 0;
+        for (MarcField marcField : marcFields) {
+            int slot = slots[n++];
+            if (slot >= 0) {
+                fields[ends[slot]++] = marcField;
+            }
+        }
+    }
+
+    /**
+     * Create an index of MARC fields.
+     * @param marcFields the MARC fields, or null
+     * @return the index, or null if there are no MARC fields
+     */
+    static MarcRecordTagIndex of(Collection<MarcField> marcFields) {
+        return marcFields != null ? new MarcRecordTagIndex(marcFields) : null;
+    }
+
+    /**
+     * Return the MARC fields with a tag, in record order.
+     * @param tag the tag
+     * @return an unmodifiable list of MARC fields, or null if the tag is not in the form of indexed tags
+     */
+    List<MarcField> get(String tag) {
+        int key = pack(tag);
+        if (key == 0) {
+            return null;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return EMPTY;
+        }
+        return Collections.unmodifiableList(Arrays.asList(fields).subList(starts[slot], ends[slot]));
+    }
+
+    private int insert(int key) {
+        int slot = (key * 0x9E3779B9) >>> shift;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        return slot;
+    }
+
+    private int find(int key) {
+        int slot = (key * 0x9E3779B9) >>> shift;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Pack a tag of three characters into an int, with a marker bit so that a packed tag is never 0.
+     * @return the packed tag, or 0 if the tag can not be packed
+     */
+    private static int pack(String tag) {
+        if (tag == null || tag.length() != 3) {
+            return 0;
+        }
+        int key = 1;
+        for (int i = 0; i < 3; i++) {
+            char ch = tag.charAt(i);
+            if (ch > 0xff) {
+                return 0;
+            }
+            key = (key << 8) | ch;
+        }
+        return key;
+    }
+}
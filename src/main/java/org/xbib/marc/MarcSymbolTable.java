@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A shared table of canonical strings for the short symbols of MARC fields: tags, indicators and subfield IDs.
+ * Fields that are parsed from many records share one string instance for each symbol, instead of
+ * holding their own copies.
+ *
+ * Symbols of one character below U+0100, of two characters below U+0080, and tags of three digits are kept
+ * in arrays, other symbols of three characters below U+0080 are kept in a concurrent map up to a fixed number
+ * of symbols. Other strings are not canonicalized. The arrays are filled without locking, which is safe
+ * because strings are immutable: at worst, a symbol is created twice and one of the instances is dropped.
+ *
+ * The table is thread safe.
+ */
+public final class MarcSymbolTable {
+
+    private static final int MAX_SYMBOLS = 65536;
+
+    private static final String[] ONE = new String[256];
+
+    private static final String[] TWO = new String[128 * 128];
+
+    private static final String[] DIGITS = new String[1000];
+
+    private static final Map<String, String> THREE = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < ONE.length; i++) {
+            ONE[i] = String.valueOf((char) i);
+        }
+    }
+
+    private MarcSymbolTable() {
+    }
+
+    /**
+     * Return the canonical string of a single character symbol.
+     * @param ch the character
+     * @return the symbol
+     */
+    public static String symbol(char ch) {
+        return ch < ONE.length ? ONE[ch] : String.valueOf(ch);
+    }
+
+    /**
+     * Return the canonical string of a symbol.
+     * @param s the symbol, or null
+     * @return the canonical string, or the given string if it is not in the form of canonical symbols
+     */
+    public static String symbol(String s) {
+        return s != null ? lookup(s, 0, s.length(), s) : null;
+    }
+
+    /**
+     * Return the canonical string of a symbol in a character sequence, without creating a string
+     * for symbols that are already in the table.
+     * @param s the character sequence
+     * @param from the start of the symbol
+     * @param to the end of the symbol, exclusive
+     * @return the symbol
+     */
+    public static String symbol(CharSequence s, int from, int to) {
+        return lookup(s, from, to, null);
+    }
+
+    private static String lookup(CharSequence s, int from, int to, String string) {
+        switch (to - from) {
+            case 0:
+                return "";
+            case 1:
+                return s.charAt(from) < ONE.length ? ONE[s.charAt(from)] : string(s, from, to, string);
+            case 2: {
+                char c0 = s.charAt(from);
+                char c1 = s.charAt(from + 1);
+                if (c0 >= 0x80 || c1 >= 0x80) {
+                    break;
+                }
+                int i = (c0 << 7) | c1;
+                String symbol = TWO[i];
+                if (symbol == null) {
+                    TWO[i] = symbol = string(s, from, to, string);
+                }
+                return symbol;
+            }
+            case 3: {
+                char c0 = s.charAt(from);
+                char c1 = s.charAt(from + 1);
+                char c2 = s.charAt(from + 2);
+                if (c0 >= '0' && c0 <= '9' && c1 >= '0' && c1 <= '9' && c2 >= '0' && c2 <= '9') {
+                    int i = (c0 - '0') * 100 + (c1 - '0') * 10 + (c2 - '0');
+                    String symbol = DIGITS[i];
+                    if (symbol == null) {
+                        DIGITS[i] = symbol = string(s, from, to, string);
+                    }
+                    return symbol;
+                }
+                if (c0 >= 0x80 || c1 >= 0x80 || c2 >= 0x80) {
+                    break;
+                }
+                String symbol = string(s, from, to, string);
+                String canonical = THREE.get(symbol);
+                if (canonical != null) {
+                    return canonical;
+                }
+                if (THREE.size() < MAX_SYMBOLS) {
+                    canonical = THREE.putIfAbsent(symbol, symbol);
+                }
+                return canonical != null ? canonical : symbol;
+            }
+            default:
+                break;
+        }
+        return string(s, from, to, string);
+    }
+
+    private static String string(CharSequence s, int from, int to, String string) {
+        return string != null ? string : s.subSequence(from, to).toString();
+    }
+}
@@ -15,9 +15,13 @@
  */
 package org.xbib.marc;
 
+import org.xbib.marc.io.BlockCompressedOutputStream;
+import org.xbib.marc.io.BytesReference;
 import org.xbib.marc.io.BytesStreamOutput;
 import org.xbib.marc.io.DefaultChunk;
 import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.io.PageRecycler;
+import org.xbib.marc.io.ParallelGzipOutputStream;
 import org.xbib.marc.io.SeparatorOutputStream;
 import org.xbib.marc.label.RecordLabel;
 import org.xbib.marc.transformer.value.MarcValueTransformers;
@@ -27,18 +31,25 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.Deflater;
-import java.util.zip.GZIPOutputStream;
 
 /**
- * An ISO 2709 "stream format" MARC writer.
+ * An ISO 2709 "stream format" MARC writer. Optionally, records are written with record label,
+ * directory, and variable fields, see {@link #setRecordDirectory(boolean)}.
  */
 public class MarcWriter extends MarcContentHandler implements Flushable, Closeable {
 
@@ -46,7 +57,15 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
 
     private final ReentrantLock lock;
 
-    private final BytesStreamOutput bytesStreamOutput;
+    private BytesStreamOutput bytesStreamOutput;
+
+    private final ThreadLocal<BytesStreamOutput> recordBuffer = ThreadLocal.withInitial(this::createRecordBuffer);
+
+    private final Queue<BytesStreamOutput> recordBuffers = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<MarcRecordEncoder> recordEncoder = ThreadLocal.withInitial(this::createRecordEncoder);
+
+    private final List<MarcField> fields = new ArrayList<>();
 
     private final Charset charset;
 
@@ -66,6 +85,22 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
 
     private boolean compress;
 
+    private int compressionLevel;
+
+    private int compressionBlockSize;
+
+    private Executor compressionExecutor;
+
+    private BlockCompressedOutputStream blockCompressedOutputStream;
+
+    private boolean recordBuffering;
+
+    private boolean recordDirectory;
+
+    private MarcRecordEncoder.OverflowPolicy overflowPolicy = MarcRecordEncoder.OverflowPolicy.FAIL;
+
+    private PageRecycler pageRecycler;
+
     /**
      * Create a MarcWriter on an underlying output stream.
      * @param out the underlying output stream
@@ -88,7 +123,39 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         this.lock = new ReentrantLock();
     }
 
+    /**
+     * Create a MarcWriter in "split writer" mode.
+     * If compress is true and the file name pattern ends with {@link BlockCompressedOutputStream#FILE_EXTENSION},
+     * the files are written as block-compressed containers with a sidecar index, otherwise they are gzipped.
+     * @param fileNamePattern the file name pattern
+     * @param charset the character set
+     * @param bufferSize the buffer size
+     * @param splitlimit split write limit. A splitlimit of -1 prevents splitting.
+     * @param compress if true, compress the output
+     * @throws IOException if writer can not be created
+     */
     public MarcWriter(String fileNamePattern, Charset charset, int bufferSize, int splitlimit, boolean compress) throws IOException {
+        this(fileNamePattern, charset, bufferSize, splitlimit, compress, Deflater.BEST_COMPRESSION, 0, null);
+    }
+
+    /**
+     * Create a MarcWriter in "split writer" mode with compression settings.
+     * @param fileNamePattern the file name pattern
+     * @param charset the character set
+     * @param bufferSize the buffer size
+     * @param splitlimit split write limit. A splitlimit of -1 prevents splitting.
+     * @param compress if true, compress the output
+     * @param compressionLevel the compression level, from 0 to 9, or -1 for the default compression
+     * @param compressionBlockSize the number of uncompressed bytes in a compressed block, or 0 for the default
+     * @param compressionExecutor the executor for compressing gzip blocks, or null for the shared worker pool
+     * @throws IOException if writer can not be created
+     */
+    public MarcWriter(String fileNamePattern, Charset charset, int bufferSize, int splitlimit, boolean compress,
+                      int compressionLevel, int compressionBlockSize, Executor compressionExecutor)
+            throws IOException {
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockSize = compressionBlockSize;
+        this.compressionExecutor = compressionExecutor;
         this.fileNameCounter = new AtomicInteger(0);
         this.fileNamePattern = fileNamePattern;
         this.splitlimit = splitlimit;
@@ -111,6 +178,57 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         return this;
     }
 
+    /**
+     * Encode records given to {@link #record(MarcRecord)} into a buffer of the calling thread, and hold the
+     * writer lock only while the encoded record is appended. Concurrent producers no longer wait for each other
+     * while their records are encoded. The output is the same as without buffering.
+     * Records are written field by field as before if there are MARC listeners on this writer.
+     * @param recordBuffering true if records should be encoded into per-thread buffers
+     * @return this writer
+     */
+    public MarcWriter setRecordBuffering(boolean recordBuffering) {
+        this.recordBuffering = recordBuffering;
+        return this;
+    }
+
+    /**
+     * Write records in the ISO 2709 exchange format, with record label, directory, and variable fields,
+     * as encoded by a {@link MarcRecordEncoder}. The record length, the base address of data, and the
+     * directory are computed, so the records can be loaded without reparsing. No file separator is written
+     * at the end. By default, records are written in the stream format, without directory.
+     * Unchanged {@link LazyMarcRecord}s in the character set of this writer are copied as they are,
+     * if no value transformers are set.
+     * @param recordDirectory true if records should be written with directory
+     * @return this writer
+     */
+    public MarcWriter setRecordDirectory(boolean recordDirectory) {
+        this.recordDirectory = recordDirectory;
+        return this;
+    }
+
+    /**
+     * Set the policy for records with directory that exceed the ISO 2709 limits. The default is to fail.
+     * Must be set before records are written.
+     * @param overflowPolicy the overflow policy
+     * @return this writer
+     */
+    public MarcWriter setOverflowPolicy(MarcRecordEncoder.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * Keep the bytes of record labels and of the per-thread record buffers in pages of a page recycler.
+     * The pages are given back to the recycler when the writer is closed. Must be set before records are written.
+     * @param pageRecycler the page recycler
+     * @return this writer
+     */
+    public MarcWriter setPageRecycler(PageRecycler pageRecycler) {
+        this.pageRecycler = pageRecycler;
+        this.bytesStreamOutput = pageRecycler != null ? new BytesStreamOutput(pageRecycler) : new BytesStreamOutput();
+        return this;
+    }
+
     @Override
     public MarcWriter setMarcListener(MarcListener listener) {
         super.setMarcListener(listener);
@@ -124,6 +242,10 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
             return;
         }
         lock.lock();
+        if (recordDirectory) {
+            label = null;
+            fields.clear();
+        }
     }
 
     @Override
@@ -132,13 +254,18 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         if (exception != null) {
             return;
         }
-        if (label == null) {
+        if (label == null || recordDirectory) {
             return;
         }
         try {
             bytesStreamOutput.reset();
             bytesStreamOutput.write(label.toString().getBytes(StandardCharsets.ISO_8859_1));
-            out.chunk(new DefaultChunk(InformationSeparator.GS, bytesStreamOutput.bytes()));
+            if (blockCompressedOutputStream != null) {
+                // in blocks, a record must be terminated by exactly one record terminator, for seeking
+                out.write(bytesStreamOutput.bytes().toBytes());
+            } else {
+                out.chunk(new DefaultChunk(InformationSeparator.GS, bytesStreamOutput.bytes()));
+            }
         } catch (IOException e) {
             handleException(e);
         }
@@ -150,36 +277,13 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         if (exception != null) {
             return;
         }
+        MarcField marcField = marcValueTransformers != null ? marcValueTransformers.transformValue(field) : field;
+        if (recordDirectory) {
+            fields.add(marcField);
+            return;
+        }
         try {
-            MarcField marcField = marcValueTransformers != null ? marcValueTransformers.transformValue(field) : field;
-            bytesStreamOutput.reset();
-            // we clean up a bit. Write control field, and fields that are not empty.
-            // Do not care about the control field / data field order.
-            if (marcField.isControl()) {
-                String value = marcField.getValue();
-                if (value != null && !value.isEmpty()) {
-                    bytesStreamOutput.write(marcField.getTag().getBytes(StandardCharsets.ISO_8859_1));
-                    bytesStreamOutput.write(value.getBytes(charset));
-                    out.chunk(new DefaultChunk(InformationSeparator.RS, bytesStreamOutput.bytes()));
-                }
-            } else if (!marcField.isEmpty()) {
-                bytesStreamOutput.write(marcField.getTag().getBytes(StandardCharsets.ISO_8859_1));
-                bytesStreamOutput.write(marcField.getIndicator().getBytes(StandardCharsets.ISO_8859_1));
-                String value = marcField.getValue();
-                if (value != null && !value.isEmpty()) {
-                    bytesStreamOutput.write(value.getBytes(charset));
-                }
-                out.chunk(new DefaultChunk(InformationSeparator.RS, bytesStreamOutput.bytes()));
-                for (MarcField.Subfield subfield : marcField.getSubfields()) {
-                    value = subfield.getValue();
-                    if (value != null && !value.isEmpty()) {
-                        bytesStreamOutput.reset();
-                        bytesStreamOutput.write(subfield.getId().getBytes(StandardCharsets.ISO_8859_1));
-                        bytesStreamOutput.write(value.getBytes(charset));
-                        out.chunk(new DefaultChunk(InformationSeparator.US, bytesStreamOutput.bytes()));
-                    }
-                }
-            }
+            writeField(marcField, out);
         } catch (IOException e) {
             handleException(e);
         }
@@ -192,10 +296,21 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
             if (exception != null) {
                 return;
             }
-            // "A record terminator (RT), ASCII control character 1D(hex), is used as the final character
-            // of the record, following the field terminator of the last data field."
-            // https://www.loc.gov/marc/specifications/specrecstruc.html
-            out.chunk(new DefaultChunk(InformationSeparator.GS, null));
+            if (recordDirectory) {
+                MarcRecordEncoder encoder = recordEncoder.get();
+                boolean encoded = encoder.encode(label, fields);
+                fields.clear();
+                if (encoded) {
+                    encoder.writeTo(out);
+                    endBlockRecord();
+                }
+            } else {
+                // "A record terminator (RT), ASCII control character 1D(hex), is used as the final character
+                // of the record, following the field terminator of the last data field."
+                // https://www.loc.gov/marc/specifications/specrecstruc.html
+                out.chunk(new DefaultChunk(InformationSeparator.GS, null));
+                endBlockRecord();
+            }
             afterRecord();
         } catch (Exception e) {
             handleException(e);
@@ -206,9 +321,18 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
 
     @Override
     public void close() throws IOException {
-        // not specified in MARC, but we require a file separator as last character of the file.
-        out.chunk(new DefaultChunk(InformationSeparator.FS, null));
-        out.close();
+        try {
+            if (!recordDirectory) {
+                // not specified in MARC, but we require a file separator as last character of the file.
+                out.chunk(new DefaultChunk(InformationSeparator.FS, null));
+            }
+            out.close();
+        } finally {
+            bytesStreamOutput.release();
+            for (BytesStreamOutput buffer : recordBuffers) {
+                buffer.release();
+            }
+        }
     }
 
     @Override
@@ -232,6 +356,11 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         if (exception != null) {
             return;
         }
+        if ((recordBuffering || copyableRecordBytes(marcRecord) != null)
+                && listeners.isEmpty() && marcRecordListener == null) {
+            writeBuffered(marcRecord);
+            return;
+        }
         lock.lock();
         try {
             super.record(marcRecord);
@@ -242,6 +371,148 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
         }
     }
 
+    /**
+     * Encode a record into the buffer of the current thread, and append the buffer under the lock.
+     * In the stream format, the buffer holds the record label with a leading group separator, the fields,
+     * and the record terminator. Records with directory are encoded by the record encoder of the current thread,
+     * or copied from the record bytes of an unchanged lazy record.
+     */
+    private void writeBuffered(MarcRecord marcRecord) {
+        byte[] bytes = null;
+        int offset = 0;
+        int length = 0;
+        try {
+            BytesReference recordBytes = copyableRecordBytes(marcRecord);
+            if (recordBytes != null) {
+                ByteBuffer byteBuffer = recordBytes.toByteBuffer(0, recordBytes.length());
+                bytes = byteBuffer.array();
+                offset = byteBuffer.arrayOffset() + byteBuffer.position();
+                length = byteBuffer.remaining();
+            } else if (recordDirectory) {
+                MarcRecordEncoder encoder = recordEncoder.get();
+                if (encoder.encode(marcRecord.getRecordLabel(), transformValues(marcRecord.getFields()))) {
+                    bytes = encoder.getBuffer();
+                    length = encoder.getLength();
+                }
+            } else {
+                BytesStreamOutput buffer = recordBuffer.get();
+                buffer.reset();
+                RecordLabel label = marcRecord.getRecordLabel();
+                if (label != null) {
+                    buffer.write(InformationSeparator.GS);
+                    buffer.write(label.toString().getBytes(StandardCharsets.ISO_8859_1));
+                }
+                for (MarcField field : transformValues(marcRecord.getFields())) {
+                    writeField(field, buffer);
+                }
+                buffer.write(InformationSeparator.GS);
+                // in blocks, the record label is written without group separator, see leader().
+                // Whether blocks are written does not change when the output is split.
+                int skip = label != null && blockCompressedOutputStream != null ? 1 : 0;
+                ByteBuffer byteBuffer = buffer.bytes().toByteBuffer(skip, buffer.size() - skip);
+                bytes = byteBuffer.array();
+                offset = byteBuffer.arrayOffset() + byteBuffer.position();
+                length = byteBuffer.remaining();
+            }
+        } catch (Exception e) {
+            handleException(e);
+            return;
+        }
+        lock.lock();
+        try {
+            if (exception != null) {
+                return;
+            }
+            // records skipped by the overflow policy are counted, but not written
+            if (bytes != null) {
+                out.write(bytes, offset, length);
+                endBlockRecord();
+            }
+            recordCounter.incrementAndGet();
+            afterRecord();
+        } catch (Exception e) {
+            handleException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the record bytes of a lazy record that can be written as they are, if records are written
+     * with directory, in the character set of the record, and without value transformers.
+     */
+    private BytesReference copyableRecordBytes(MarcRecord marcRecord) {
+        if (recordDirectory && marcValueTransformers == null && marcRecord instanceof LazyMarcRecord) {
+            LazyMarcRecord lazyMarcRecord = (LazyMarcRecord) marcRecord;
+            if (charset.equals(lazyMarcRecord.getCharset())) {
+                return lazyMarcRecord.getCopyableRecordBytes();
+            }
+        }
+        return null;
+    }
+
+    private Collection<MarcField> transformValues(Collection<MarcField> marcFields) {
+        if (marcValueTransformers == null) {
+            return marcFields;
+        }
+        List<MarcField> list = new ArrayList<>(marcFields.size());
+        for (MarcField marcField : marcFields) {
+            list.add(marcValueTransformers.transformValue(marcField));
+        }
+        return list;
+    }
+
+    private void endBlockRecord() throws IOException {
+        if (blockCompressedOutputStream != null) {
+            out.flush();
+            blockCompressedOutputStream.endRecord();
+        }
+    }
+
+    private BytesStreamOutput createRecordBuffer() {
+        if (pageRecycler == null) {
+            return new BytesStreamOutput();
+        }
+        BytesStreamOutput buffer = new BytesStreamOutput(pageRecycler);
+        recordBuffers.add(buffer);
+        return buffer;
+    }
+
+    private MarcRecordEncoder createRecordEncoder() {
+        return new MarcRecordEncoder(charset, overflowPolicy);
+    }
+
+    /**
+     * Write a field with separators. We clean up a bit. Write control fields, and fields that are not empty.
+     * Do not care about the control field / data field order.
+     */
+    private void writeField(MarcField marcField, OutputStream outputStream) throws IOException {
+        if (marcField.isControl()) {
+            String value = marcField.getValue();
+            if (value != null && !value.isEmpty()) {
+                outputStream.write(InformationSeparator.RS);
+                outputStream.write(marcField.getTag().getBytes(StandardCharsets.ISO_8859_1));
+                outputStream.write(value.getBytes(charset));
+            }
+        } else if (!marcField.isEmpty()) {
+            outputStream.write(InformationSeparator.RS);
+            outputStream.write(marcField.getTag().getBytes(StandardCharsets.ISO_8859_1));
+            outputStream.write(marcField.getIndicator().getBytes(StandardCharsets.ISO_8859_1));
+            String value = marcField.getValue();
+            if (value != null && !value.isEmpty()) {
+                outputStream.write(value.getBytes(charset));
+            }
+            for (MarcField.Subfield subfield : marcField.getSubfields()) {
+                value = subfield.getValue();
+                if (value != null && !value.isEmpty()) {
+                    outputStream.write(InformationSeparator.US);
+                    outputStream.write(subfield.getId().getBytes(StandardCharsets.ISO_8859_1));
+                    outputStream.write(value.getBytes(charset));
+                }
+            }
+        }
+    }
+
     /**
      * Split records if configured.
      */
@@ -269,19 +540,16 @@ public class MarcWriter extends MarcContentHandler implements Flushable, Closeab
     private void newOut(String fileNamePattern, AtomicInteger fileNameCounter, int bufferSize, boolean compress)
             throws IOException {
         String name = String.format(fileNamePattern, fileNameCounter.getAndIncrement());
+        if (compress && BlockCompressedOutputStream.isBlockCompressed(name)) {
+            blockCompressedOutputStream = BlockCompressedOutputStream.create(Paths.get(name), compressionLevel,
+                    compressionBlockSize > 0 ? compressionBlockSize : BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE);
+            out = new SeparatorOutputStream(blockCompressedOutputStream, bufferSize);
+            return;
+        }
         OutputStream outputStream = Files.newOutputStream(Paths.get(name), StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING);
-        out = new SeparatorOutputStream(compress ? new CompressedOutputStream(outputStream, bufferSize) : outputStream, bufferSize);
-    }
-
-    /**
-     * A GZIP output stream, modified for best compression.
-     */
-    private static class CompressedOutputStream extends GZIPOutputStream {
-
-        CompressedOutputStream(OutputStream out, int size) throws IOException {
-            super(out, size, true);
-            def.setLevel(Deflater.BEST_COMPRESSION);
-        }
+        out = new SeparatorOutputStream(compress ? new ParallelGzipOutputStream(outputStream, compressionLevel,
+                compressionBlockSize > 0 ? compressionBlockSize : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE,
+                compressionExecutor) : outputStream, bufferSize);
     }
 }
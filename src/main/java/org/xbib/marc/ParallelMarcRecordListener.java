@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * A MARC record listener that processes records on parallel workers and passes the results to a downstream
+ * MARC record listener in the order of the input.
+ *
+ * Each record is stamped with its input sequence number and handed to a worker. Finished records wait in
+ * a reorder buffer until all records before them are finished, and are then passed downstream by the worker
+ * that completes the sequence, one at a time. The number of records in flight is bounded, so
+ * {@link #record(MarcRecord)} blocks while the workers or the downstream listener are behind.
+ *
+ * The processor returns the processed record, or null to drop the record. If the processor or the downstream
+ * listener fails, also with an error, the record is dropped and the first failure is kept,
+ * see {@link #getException()}.
+ *
+ * Records must be passed by one thread, in input order, and must not be reused by the producer,
+ * see {@link Marc.Builder#reuseRecord()}. {@link #endCollection()} waits until all records are passed downstream.
+ */
+public class ParallelMarcRecordListener implements MarcRecordListener, AutoCloseable {
+
+    private static final Object DROPPED = new Object();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final MarcRecordListener marcRecordListener;
+
+    private final UnaryOperator<MarcRecord> processor;
+
+    private final Executor executor;
+
+    private final ExecutorService ownExecutor;
+
+    private final int maxRecordsInFlight;
+
+    private final Semaphore inFlight;
+
+    private final ReentrantLock lock;
+
+    private final Map<Long, Object> pending;
+
+    private final AtomicReference<Throwable> exception;
+
+    private long sequence;
+
+    private long next;
+
+    /**
+     * Create a parallel MARC record listener with its own worker threads.
+     * @param marcRecordListener the downstream MARC record listener
+     * @param processor the record processor
+     * @param workers the number of worker threads
+     */
+    public ParallelMarcRecordListener(MarcRecordListener marcRecordListener,
+                                      UnaryOperator<MarcRecord> processor,
+                                      int workers) {
+        this(marcRecordListener, processor, createExecutor(workers), 4 * workers, true);
+    }
+
+    /**
+     * Create a parallel MARC record listener.
+     * @param marcRecordListener the downstream MARC record listener
+     * @param processor the record processor
+     * @param executor the executor for processing the records
+     * @param maxRecordsInFlight the maximum number of records that are passed but not written downstream
+     */
+    public ParallelMarcRecordListener(MarcRecordListener marcRecordListener,
+                                      UnaryOperator<MarcRecord> processor,
+                                      Executor executor,
+                                      int maxRecordsInFlight) {
+        this(marcRecordListener, processor, executor, maxRecordsInFlight, false);
+    }
+
+    private ParallelMarcRecordListener(MarcRecordListener marcRecordListener,
+                                       UnaryOperator<MarcRecord> processor,
+                                       Executor executor,
+                                       int maxRecordsInFlight,
+                                       boolean ownExecutor) {
+        this.marcRecordListener = Objects.requireNonNull(marcRecordListener);
+        this.processor = Objects.requireNonNull(processor);
+        this.executor = Objects.requireNonNull(executor);
+        this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+        this.maxRecordsInFlight = Math.max(1, maxRecordsInFlight);
+        this.inFlight = new Semaphore(this.maxRecordsInFlight);
+        this.lock = new ReentrantLock();
+        this.pending = new HashMap<>();
+        this.exception = new AtomicReference<>();
+    }
+
+    @Override
+    public void beginCollection() {
+        marcRecordListener.beginCollection();
+    }
+
+    /**
+     * Stamp a record with its sequence number and hand it to a worker. Blocks while the maximum
+     * number of records is in flight.
+     * @param marcRecord the record
+     */
+    @Override
+    public void record(MarcRecord marcRecord) {
+        inFlight.acquireUninterruptibly();
+        long n = sequence++;
+        try {
+            executor.execute(() -> process(n, marcRecord));
+        } catch (RejectedExecutionException e) {
+            exception.compareAndSet(null, e);
+            complete(n, DROPPED);
+        }
+    }
+
+    /**
+     * Wait until all records are passed downstream, and end the collection of the downstream listener.
+     */
+    @Override
+    public void endCollection() {
+        inFlight.acquireUninterruptibly(maxRecordsInFlight);
+        inFlight.release(maxRecordsInFlight);
+        marcRecordListener.endCollection();
+    }
+
+    /**
+     * Return the number of records that were passed to this listener.
+     * @return the number of records
+     */
+    public long getRecordCounter() {
+        return sequence;
+    }
+
+    /**
+     * Return the first exception or error of the processor or the downstream listener.
+     * @return the exception or error, or null
+     */
+    public Throwable getException() {
+        return exception.get();
+    }
+
+    /**
+     * Shut down the worker threads, if they were created by this listener.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Process a record. Every record must be completed, also if the processor fails with an error,
+     * otherwise the records after it are never passed downstream and {@link #endCollection()} waits forever.
+     */
+    private void process(long n, MarcRecord marcRecord) {
+        Object result = DROPPED;
+        try {
+            MarcRecord processed = processor.apply(marcRecord);
+            if (processed != null) {
+                result = processed;
+            }
+        } catch (Throwable t) {
+            exception.compareAndSet(null, t);
+        } finally {
+            complete(n, result);
+        }
+    }
+
+    private void complete(long n, Object result) {
+        lock.lock();
+        try {
+            pending.put(n, result);
+            Object o;
+            while ((o = pending.remove(next)) != null) {
+                if (o != DROPPED) {
+                    try {
+                        marcRecordListener.record((MarcRecord) o);
+                    } catch (Throwable t) {
+                        exception.compareAndSet(null, t);
+                    }
+                }
+                next++;
+                inFlight.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ExecutorService createExecutor(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("invalid number of workers: " + workers);
+        }
+        return Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "marc-record-worker-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -54,7 +54,7 @@ public class StrictMarcFieldValidator implements MarcFieldValidator {
             } else {
                 // We have inconsistent use of tag symbols as placeholders for a "blank space"
                 // and we need to fix it here for consistency.
-                tag = tag.replaceAll("[-#.^_]", BLANK_STRING);
+                tag = blankPlaceholders(tag);
             }
         }
         return tag;
@@ -70,7 +70,7 @@ public class StrictMarcFieldValidator implements MarcFieldValidator {
             } else {
                 // We have inconsistent use of indicator symbols as placeholders for a "blank space"
                 // and we need to fix it here for consistency.
-                indicator = indicator.replaceAll("[-#.^_]", BLANK_STRING);
+                indicator = blankPlaceholders(indicator);
             }
         }
         return indicator;
@@ -89,11 +89,29 @@ public class StrictMarcFieldValidator implements MarcFieldValidator {
                 id = BLANK_STRING;
             }
             // sorry, but we must disallow . because of Elasticsearch.
-            id = id.replaceAll("\\.", BLANK_STRING);
+            id = id.replace('.', ' ');
         }
         return id;
     }
 
+    /**
+     * Replace the placeholder characters {@code -#.^_} by blanks. The string is returned as it is
+     * if there are no placeholders, which is the usual case.
+     */
+    private static String blankPlaceholders(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '-' || ch == '#' || ch == '.' || ch == '^' || ch == '_') {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = ' ';
+            }
+        }
+        return chars != null ? new String(chars) : s;
+    }
+
     @Override
     public boolean isTagValid(String tag) {
         if (tag == null) {
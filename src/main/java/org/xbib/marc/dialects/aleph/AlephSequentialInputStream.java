@@ -21,6 +21,7 @@ import org.xbib.marc.io.BytesStreamOutput;
 import org.xbib.marc.io.Chunk;
 import org.xbib.marc.io.DefaultChunk;
 import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.io.PageRecycler;
 import org.xbib.marc.io.PatternInputStream;
 import org.xbib.marc.label.RecordLabel;
 
@@ -36,8 +37,6 @@ public class AlephSequentialInputStream extends PatternInputStream {
 
     private final MarcGenerator marcGenerator;
 
-    private final BytesStreamOutput bytesStreamOutput;
-
     private RecordLabel label;
 
     private String alephSysNumber;
@@ -52,9 +51,25 @@ public class AlephSequentialInputStream extends PatternInputStream {
                                       byte[] pattern,
                                       MarcGenerator marcGenerator,
                                       int bufferSize) {
-        super(in, pattern, bufferSize);
+        this(in, pattern, marcGenerator, bufferSize, null);
+    }
+
+    /**
+     * Create a ALEPH SEQUENTIAL input stream with buffers from a page recycler.
+     * The buffers are given back to the recycler when the stream is closed.
+     * @param in the underlying input stream
+     * @param pattern the pattern for the separator
+     * @param marcGenerator a MARC generator
+     * @param bufferSize buffer size
+     * @param recycler the page recycler, or null
+     */
+    public AlephSequentialInputStream(InputStream in,
+                                      byte[] pattern,
+                                      MarcGenerator marcGenerator,
+                                      int bufferSize,
+                                      PageRecycler recycler) {
+        super(in, pattern, bufferSize, recycler);
         this.marcGenerator = marcGenerator;
-        this.bytesStreamOutput = new BytesStreamOutput();
         // this format might come without a record label, create a default one
         this.label = RecordLabel.builder()
                 .setIndicatorLength(2)
@@ -64,6 +79,7 @@ public class AlephSequentialInputStream extends PatternInputStream {
 
     @Override
     protected void processChunk(Chunk<byte[], BytesReference> chunk) throws IOException {
+        BytesStreamOutput bytesStreamOutput = getBytesStreamOutput();
         BytesReference data = chunk.data();
         String str = data.toUtf8();
         String value = str.substring(18);
@@ -22,6 +22,7 @@ import org.xbib.marc.io.BytesStreamOutput;
 import org.xbib.marc.io.Chunk;
 import org.xbib.marc.io.DefaultChunk;
 import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.io.PageRecycler;
 import org.xbib.marc.io.PatternInputStream;
 import org.xbib.marc.label.RecordLabel;
 
@@ -39,8 +40,6 @@ public class MabDisketteInputStream extends PatternInputStream {
 
     private final MarcGenerator marcGenerator;
 
-    private final BytesStreamOutput bytesStreamOutput;
-
     private final char subfieldDelimiter;
 
     private byte[] lastchunk;
@@ -61,14 +60,33 @@ public class MabDisketteInputStream extends PatternInputStream {
                                   char subfieldDelimiter,
                                   MarcGenerator marcGenerator,
                                   int bufferSize) {
-        super(in, pattern, bufferSize);
+        this(in, pattern, subfieldDelimiter, marcGenerator, bufferSize, null);
+    }
+
+    /**
+     * Create a MAB diskette input stream with buffers from a page recycler.
+     * The buffers are given back to the recycler when the stream is closed.
+     * @param in the underlying input stream
+     * @param pattern the pattern for the separator
+     * @param subfieldDelimiter the subfield delimiter
+     * @param marcGenerator a MARC generator
+     * @param bufferSize buffer size
+     * @param recycler the page recycler, or null
+     */
+    public MabDisketteInputStream(InputStream in,
+                                  byte[] pattern,
+                                  char subfieldDelimiter,
+                                  MarcGenerator marcGenerator,
+                                  int bufferSize,
+                                  PageRecycler recycler) {
+        super(in, pattern, bufferSize, recycler);
         this.marcGenerator = marcGenerator;
         this.subfieldDelimiter = subfieldDelimiter;
-        this.bytesStreamOutput = new BytesStreamOutput();
     }
 
     @Override
     protected void processChunk(Chunk<byte[], BytesReference> chunk) throws IOException {
+        BytesStreamOutput bytesStreamOutput = getBytesStreamOutput();
         BytesReference data = chunk.data();
         if (data.length() < 5) {
             return;
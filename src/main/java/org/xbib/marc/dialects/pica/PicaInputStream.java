@@ -22,6 +22,7 @@ import org.xbib.marc.io.BytesStreamOutput;
 import org.xbib.marc.io.Chunk;
 import org.xbib.marc.io.DefaultChunk;
 import org.xbib.marc.io.InformationSeparator;
+import org.xbib.marc.io.PageRecycler;
 import org.xbib.marc.io.PatternInputStream;
 import org.xbib.marc.label.RecordLabel;
 
@@ -47,8 +48,6 @@ public class PicaInputStream extends PatternInputStream {
 
     private final MarcGenerator marcGenerator;
 
-    private final BytesStreamOutput bytesStreamOutput;
-
     public PicaInputStream(InputStream in,
                            byte[] pattern,
                            MarcGenerator marcGenerator) {
@@ -59,13 +58,30 @@ public class PicaInputStream extends PatternInputStream {
                            byte[] pattern,
                            MarcGenerator marcGenerator,
                            int bufferSize) {
-        super(in, pattern, bufferSize);
+        this(in, pattern, marcGenerator, bufferSize, null);
+    }
+
+    /**
+     * Create a Pica input stream with buffers from a page recycler.
+     * The buffers are given back to the recycler when the stream is closed.
+     * @param in the underlying input stream
+     * @param pattern the pattern for the separator
+     * @param marcGenerator a MARC generator
+     * @param bufferSize buffer size
+     * @param recycler the page recycler, or null
+     */
+    public PicaInputStream(InputStream in,
+                           byte[] pattern,
+                           MarcGenerator marcGenerator,
+                           int bufferSize,
+                           PageRecycler recycler) {
+        super(in, pattern, bufferSize, recycler);
         this.marcGenerator = marcGenerator;
-        this.bytesStreamOutput = new BytesStreamOutput();
     }
 
     @Override
     protected void processChunk(Chunk<byte[], BytesReference> chunk) throws IOException {
+        BytesStreamOutput bytesStreamOutput = getBytesStreamOutput();
         BytesArray array = new BytesArray(chunk.data().toBytes());
         Chunk<byte[], BytesReference> newChunk;
         // split into data fields
@@ -15,22 +15,20 @@
  */
 package org.xbib.marc.io;
 
-import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UncheckedIOException;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.Spliterator;
-import java.util.Spliterators;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.Arrays;
 
 /**
  * The base class for streams that work with chunks. The chunks are delimited by
  * information separator characters or by patterns (CR/LF for example).
+ *
+ * The stream reads from the underlying input stream into its own buffer. If a {@link PageRecycler} is given,
+ * the buffer is a page of the recycler if the buffer size is the page size, and the bytes of chunks are
+ * collected in pages of the recycler. The pages are given back to the recycler when the stream is closed.
  */
-abstract class BaseChunkStream extends BufferedInputStream implements ChunkStream<byte[], BytesReference> {
+abstract class BaseChunkStream extends FilterInputStream implements ChunkStream<byte[], BytesReference> {
 
     private static final int DEFAULT_BUFFER_SIZE = 8192;
 
@@ -44,62 +42,90 @@ abstract class BaseChunkStream extends BufferedInputStream implements ChunkStrea
 
     int buffersize;
 
+    private final PageRecycler recycler;
+
+    private boolean pooledBuffer;
+
+    private BytesStreamOutput bytesStreamOutput;
+
     /**
      * Create a base chunk stream.
      * @param in the underlying input stream
      * @param buffersize the buffer size, default is 8192
      */
     BaseChunkStream(InputStream in, int buffersize) {
-        super(in, buffersize);
+        this(in, buffersize, null);
+    }
+
+    /**
+     * Create a base chunk stream with buffers from a page recycler.
+     * @param in the underlying input stream
+     * @param buffersize the buffer size
+     * @param recycler the page recycler, or null
+     */
+    BaseChunkStream(InputStream in, int buffersize, PageRecycler recycler) {
+        super(in);
+        if (buffersize <= 0) {
+            throw new IllegalArgumentException("buffer size <= 0");
+        }
         this.buffersize = buffersize;
-        this.buffer = new byte[buffersize];
+        this.recycler = recycler;
+        this.pooledBuffer = recycler != null && buffersize == recycler.getPageSize();
+        this.buffer = pooledBuffer ? recycler.obtain() : new byte[buffersize];
         this.begin = 0;
         this.end = -1;
-        this.ref = new BytesStreamOutput();
+        this.ref = recycler != null ? new BytesStreamOutput(recycler) : new BytesStreamOutput();
     }
 
     /**
-     * This methods creates a Java 8 stream of chunks.
-     * @return a stream of chunks
+     * Return a second byte stream that is owned by this chunk stream, for building chunks while
+     * the chunk in {@link #ref} is processed. The byte stream is created on first use. If this stream has
+     * a page recycler, the byte stream keeps its bytes in pages of the recycler, and the pages are given back
+     * when this stream is closed.
+     * @return the byte stream
      */
+    protected final BytesStreamOutput getBytesStreamOutput() {
+        if (bytesStreamOutput == null) {
+            bytesStreamOutput = recycler != null ? new BytesStreamOutput(recycler) : new BytesStreamOutput();
+        }
+        return bytesStreamOutput;
+    }
+
     @Override
-    public Stream<Chunk<byte[], BytesReference>> chunks() {
-        Iterator<Chunk<byte[], BytesReference>> iterator = new Iterator<Chunk<byte[], BytesReference>>() {
-            Chunk<byte[], BytesReference> nextData = null;
-
-            @Override
-            public boolean hasNext() {
-                if (nextData != null) {
-                    return true;
-                } else {
-                    try {
-                        nextData = readChunk();
-                        return nextData != null;
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (recycler != null) {
+                ref.release();
+                if (bytesStreamOutput != null) {
+                    bytesStreamOutput.release();
                 }
-            }
-
-            @Override
-            public Chunk<byte[], BytesReference> next() {
-                if (nextData != null || hasNext()) {
-                    Chunk<byte[], BytesReference> data = nextData;
-                    nextData = null;
-                    return data;
-                } else {
-                    throw new NoSuchElementException();
+                if (pooledBuffer) {
+                    pooledBuffer = false;
+                    recycler.release(buffer);
                 }
             }
-        };
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
-                Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
     }
 
     int fillBuf() throws IOException {
         return fillBuf(buffersize);
     }
 
+    /**
+     * Replace the buffer by a larger copy. If the buffer was a page of the recycler, the page is given back.
+     * @param size the new buffer size
+     */
+    void growBuffer(int size) {
+        byte[] b = Arrays.copyOf(buffer, size);
+        if (pooledBuffer) {
+            pooledBuffer = false;
+            recycler.release(buffer);
+        }
+        buffer = b;
+    }
+
     private int fillBuf(int n) throws IOException {
         if (end - begin <= 0) {
             begin = 0;
@@ -0,0 +1,277 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream for a block-compressed container of records, in the style of BGZF.
+ *
+ * The output is a sequence of blocks, where each block is a complete GZIP member, so the whole file can be read
+ * by {@link java.util.zip.GZIPInputStream} or any gzip tool. The writer marks the end of each record by
+ * {@link #endRecord()}, and a block is only completed at the end of a record, when the block has reached the
+ * block size. So records never straddle blocks, and each block can be decompressed and parsed on its own.
+ * A record that is larger than the block size gets a block of its own.
+ *
+ * For each block, an entry of the block offset in the file, the number of the first record in the block,
+ * and the offsets of the records in the uncompressed block is written to a {@link BlockIndex}, which is kept
+ * in a sidecar file. A record is everything written since the end of the previous record, so records of more
+ * than one line, like Elasticsearch bulk action and document pairs, are found by offset. The header of each
+ * block carries the compressed size of the block in an extra field with the subfield identifier {@code MB},
+ * so the block boundaries can also be found without the index.
+ *
+ * Use {@link BlockCompressedReader} for random access to the blocks.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    /**
+     * The file name extension of block-compressed containers.
+     */
+    public static final String FILE_EXTENSION = ".bgz";
+
+    /**
+     * The file name extension of the sidecar index, appended to the container file name.
+     */
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * The default block size, 64 KB of uncompressed data.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final int HEADER_LENGTH = 20;
+
+    static final byte SUBFIELD_ID1 = 'M';
+
+    static final byte SUBFIELD_ID2 = 'B';
+
+    private final OutputStream out;
+
+    private final BlockIndex.Writer index;
+
+    private final int blockSize;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc;
+
+    private final BytesStreamOutput block;
+
+    private final BytesStreamOutput compressed;
+
+    private final byte[] buffer;
+
+    private long offset;
+
+    private long recordCount;
+
+    private long firstRecord;
+
+    private int[] recordOffsets;
+
+    private int recordsInBlock;
+
+    private int recordStart;
+
+    private boolean closed;
+
+    /**
+     * Create a block-compressed output stream.
+     * @param out the output stream for the blocks
+     * @param indexOut the output stream for the index, or null if no index should be written
+     * @param level the compression level
+     * @param blockSize the minimum number of uncompressed bytes in a block
+     * @throws IOException if the index can not be written
+     */
+    public BlockCompressedOutputStream(OutputStream out, OutputStream indexOut, int level, int blockSize)
+            throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("invalid block size " + blockSize);
+        }
+        this.out = out;
+        this.index = indexOut != null ? new BlockIndex.Writer(indexOut) : null;
+        this.blockSize = blockSize;
+        this.deflater = new Deflater(level, true);
+        this.crc = new CRC32();
+        this.block = new BytesStreamOutput(blockSize + blockSize / 4);
+        this.compressed = new BytesStreamOutput(blockSize / 2);
+        this.buffer = new byte[8192];
+        this.recordOffsets = new int[64];
+    }
+
+    /**
+     * Create a block-compressed container file with a sidecar index file, which has the name of the
+     * container file with {@link #INDEX_EXTENSION} appended.
+     * @param path the path of the container file
+     * @param level the compression level
+     * @param blockSize the minimum number of uncompressed bytes in a block
+     * @return the block-compressed output stream
+     * @throws IOException if the files can not be created
+     */
+    public static BlockCompressedOutputStream create(Path path, int level, int blockSize) throws IOException {
+        OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream indexOut = Files.newOutputStream(indexPath(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new BlockCompressedOutputStream(new BufferedOutputStream(out, 65536),
+                new BufferedOutputStream(indexOut, 8192), level, blockSize);
+    }
+
+    /**
+     * Return the path of the sidecar index file of a container file.
+     * @param path the path of the container file
+     * @return the path of the index file
+     */
+    public static Path indexPath(Path path) {
+        return Paths.get(path.toString() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Check if a file name is the name of a block-compressed container.
+     * @param name the file name
+     * @return true if the name ends with {@link #FILE_EXTENSION}
+     */
+    public static boolean isBlockCompressed(String name) {
+        return name.endsWith(FILE_EXTENSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        block.write(b, off, len);
+    }
+
+    /**
+     * Mark the end of a record. The current block is compressed and written if it has reached the block size.
+     * @throws IOException if the block can not be written
+     */
+    public void endRecord() throws IOException {
+        if (recordsInBlock == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, recordsInBlock * 2);
+        }
+        recordOffsets[recordsInBlock++] = recordStart;
+        recordStart = block.size();
+        recordCount++;
+        if (block.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Return the number of records.
+     * @return the number of records, as marked by {@link #endRecord()}
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Flush the underlying streams. The current block is not completed, because a record may not be complete.
+     * @throws IOException if flush fails
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        if (index != null) {
+            index.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (block.size() > 0) {
+                writeBlock();
+            }
+        } finally {
+            deflater.end();
+            if (index != null) {
+                index.close();
+            }
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        BytesReference bytes = block.bytes();
+        byte[] input = bytes.toBytes();
+        int length = bytes.length();
+        crc.reset();
+        crc.update(input, 0, length);
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        compressed.reset();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        long size = HEADER_LENGTH + compressed.size() + 8L;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("block too large: " + size);
+        }
+        writeHeader((int) size);
+        BytesReference data = compressed.bytes();
+        out.write(data.toBytes(), 0, data.length());
+        writeInt((int) crc.getValue());
+        writeInt(length);
+        if (index != null) {
+            index.add(offset, firstRecord, recordOffsets, recordsInBlock);
+        }
+        offset += size;
+        firstRecord = recordCount;
+        recordsInBlock = 0;
+        recordStart = 0;
+        block.reset();
+    }
+
+    private void writeHeader(int size) throws IOException {
+        // ID1, ID2, CM = deflate, FLG = FEXTRA, MTIME, XFL, OS = unknown
+        out.write(new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 4, 0, 0, 0, 0, 0, (byte) 0xff });
+        // XLEN = 8, subfield MB with the total block size
+        out.write(8);
+        out.write(0);
+        out.write(SUBFIELD_ID1);
+        out.write(SUBFIELD_ID2);
+        out.write(4);
+        out.write(0);
+        writeInt(size);
+    }
+
+    private void writeInt(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+}
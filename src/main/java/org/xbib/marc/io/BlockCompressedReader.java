@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A reader for block-compressed containers written by {@link BlockCompressedOutputStream}.
+ *
+ * The block index is read from the sidecar index file. If there is no index file, the blocks are found
+ * by walking the block headers, and the record numbers are not known, so records can not be sought.
+ *
+ * Blocks are read by absolute positions, so {@link #readBlock(int)} can be called concurrently,
+ * and {@link #blocks(boolean)} decompresses the blocks in parallel if requested.
+ */
+public class BlockCompressedReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final BlockIndex index;
+
+    /**
+     * Open a block-compressed container file.
+     * @param path the path of the container file
+     * @throws IOException if the file or its index can not be read
+     */
+    public BlockCompressedReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        Path indexPath = BlockCompressedOutputStream.indexPath(path);
+        this.index = Files.exists(indexPath) ? BlockIndex.read(indexPath) : scan();
+    }
+
+    /**
+     * Return the block index.
+     * @return the block index
+     */
+    public BlockIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Return the number of blocks.
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return index.size();
+    }
+
+    /**
+     * Read and decompress a block.
+     * @param block the block number
+     * @return the uncompressed bytes of the block
+     * @throws IOException if the block can not be read
+     */
+    public byte[] readBlock(int block) throws IOException {
+        long start = index.getOffset(block);
+        long end = block + 1 < index.size() ? index.getOffset(block + 1) : size;
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Math.toIntExact(end - start));
+        read(byteBuffer, start);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(byteBuffer.array()), BUFFER_SIZE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Return a stream of the uncompressed blocks, in the order of the blocks.
+     * @param parallel true if the blocks should be decompressed in parallel
+     * @return a stream of uncompressed blocks
+     */
+    public Stream<byte[]> blocks(boolean parallel) {
+        IntStream stream = IntStream.range(0, index.size());
+        return (parallel ? stream.parallel() : stream).mapToObj(i -> {
+            try {
+                return readBlock(i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Open an input stream of the uncompressed data, starting at a block.
+     * The input stream has its own channel and must be closed by the caller.
+     * @param block the block number
+     * @return the input stream
+     * @throws IOException if the file can not be opened
+     */
+    public InputStream openBlock(int block) throws IOException {
+        if (block >= index.size()) {
+            return InputStream.nullInputStream();
+        }
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        fileChannel.position(index.getOffset(block));
+        return new GZIPInputStream(new BufferedInputStream(Channels.newInputStream(fileChannel), BUFFER_SIZE),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * Open an input stream of the uncompressed data, starting at a record. The stream seeks to the block
+     * of the record and skips to the offset of the record in the block, as given by the index.
+     * The input stream has its own channel and must be closed by the caller.
+     * @param recordNumber the record number, counting from 0
+     * @return the input stream
+     * @throws IOException if the file can not be opened, or the record is not in the index
+     */
+    public InputStream openRecord(long recordNumber) throws IOException {
+        int recordOffset = index.getRecordOffset(recordNumber);
+        if (recordOffset < 0) {
+            throw new IOException("no offset for record " + recordNumber + " in index: " + path);
+        }
+        InputStream in = openBlock(index.findBlock(recordNumber));
+        try {
+            in.skipNBytes(recordOffset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private BlockIndex scan() throws IOException {
+        BlockIndex blockIndex = new BlockIndex();
+        ByteBuffer header = ByteBuffer.allocate(BlockCompressedOutputStream.HEADER_LENGTH);
+        long pos = 0L;
+        while (pos < size) {
+            header.clear();
+            if (read(header, pos) < header.capacity()) {
+                throw new IOException("truncated block header at " + pos);
+            }
+            byte[] h = header.array();
+            if (h[0] != 0x1f || h[1] != (byte) 0x8b || (h[3] & 4) == 0
+                    || h[12] != BlockCompressedOutputStream.SUBFIELD_ID1
+                    || h[13] != BlockCompressedOutputStream.SUBFIELD_ID2) {
+                throw new IOException("not a block-compressed container: " + path + " "
+                        + Arrays.toString(Arrays.copyOf(h, 4)));
+            }
+            long blockSize = (h[16] & 0xffL) | (h[17] & 0xffL) << 8 | (h[18] & 0xffL) << 16
+                    | (h[19] & 0xffL) << 24;
+            if (blockSize <= header.capacity()) {
+                throw new IOException("invalid block size at " + pos);
+            }
+            // record numbers are unknown without index
+            blockIndex.add(pos, -1L);
+            pos += blockSize;
+        }
+        return blockIndex;
+    }
+
+    private int read(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
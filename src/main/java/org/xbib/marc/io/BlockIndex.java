@@ -0,0 +1,225 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The index of a block-compressed container. For each block, the index holds the offset of the block
+ * in the container file, the number of the first record in the block, counting from 0, and the offsets
+ * of the records in the uncompressed block. So a record can be sought without knowing how its
+ * format terminates records.
+ *
+ * The index file starts with the four bytes {@code MBI2}, followed by an entry for each block, with the
+ * block offset and the first record number as big-endian longs, the number of records in the block as
+ * a big-endian int, and the offsets of the records in the uncompressed block as big-endian ints.
+ */
+public class BlockIndex {
+
+    private static final byte[] MAGIC = { 'M', 'B', 'I', '2' };
+
+    private long[] offsets;
+
+    private long[] firstRecords;
+
+    private int size;
+
+    private int[] recordOffsets;
+
+    private int recordCount;
+
+    /**
+     * Create an empty block index.
+     */
+    public BlockIndex() {
+        this.offsets = new long[16];
+        this.firstRecords = new long[16];
+        this.recordOffsets = new int[16];
+    }
+
+    /**
+     * Read a block index from a file.
+     * @param path the path of the index file
+     * @return the block index
+     * @throws IOException if the index can not be read
+     */
+    public static BlockIndex read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a block index from an input stream.
+     * @param in the input stream
+     * @return the block index
+     * @throws IOException if the index can not be read
+     */
+    public static BlockIndex read(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a block index");
+        }
+        BlockIndex blockIndex = new BlockIndex();
+        while (true) {
+            long offset;
+            try {
+                offset = input.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            long firstRecord = input.readLong();
+            int count = input.readInt();
+            int[] blockRecordOffsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                blockRecordOffsets[i] = input.readInt();
+            }
+            blockIndex.add(offset, firstRecord, blockRecordOffsets, count);
+        }
+        return blockIndex;
+    }
+
+    /**
+     * Add a block to the index.
+     * @param offset the offset of the block
+     * @param firstRecord the number of the first record in the block
+     */
+    public void add(long offset, long firstRecord) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            firstRecords = Arrays.copyOf(firstRecords, size * 2);
+        }
+        offsets[size] = offset;
+        firstRecords[size] = firstRecord;
+        size++;
+    }
+
+    /**
+     * Add a block to the index, with the offsets of its records.
+     * @param offset the offset of the block
+     * @param firstRecord the number of the first record in the block
+     * @param blockRecordOffsets the offsets of the records in the uncompressed block
+     * @param count the number of records in the block
+     */
+    public void add(long offset, long firstRecord, int[] blockRecordOffsets, int count) {
+        if (firstRecord != recordCount) {
+            throw new IllegalArgumentException("expected first record " + recordCount + ", got " + firstRecord);
+        }
+        add(offset, firstRecord);
+        if (recordCount + count > recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, Math.max(recordOffsets.length * 2, recordCount + count));
+        }
+        System.arraycopy(blockRecordOffsets, 0, recordOffsets, recordCount, count);
+        recordCount += count;
+    }
+
+    /**
+     * Return the number of blocks.
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the offset of a block.
+     * @param block the block number
+     * @return the offset of the block in the container file
+     */
+    public long getOffset(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * Return the number of the first record of a block.
+     * @param block the block number
+     * @return the number of the first record in the block
+     */
+    public long getFirstRecord(int block) {
+        return firstRecords[block];
+    }
+
+    /**
+     * Return the offset of a record in its uncompressed block.
+     * @param recordNumber the record number, counting from 0
+     * @return the offset of the record in the uncompressed block, or -1 if the record is not known
+     */
+    public int getRecordOffset(long recordNumber) {
+        return recordNumber >= 0 && recordNumber < recordCount ? recordOffsets[(int) recordNumber] : -1;
+    }
+
+    /**
+     * Find the block that contains a record.
+     * @param recordNumber the record number, counting from 0
+     * @return the number of the last block whose first record is not after the record, or -1 if there are no blocks
+     */
+    public int findBlock(long recordNumber) {
+        int low = 0;
+        int high = size - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (firstRecords[mid] <= recordNumber) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes block index entries to an output stream as they are added.
+     */
+    static class Writer {
+
+        private final DataOutputStream out;
+
+        Writer(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.write(MAGIC);
+        }
+
+        void add(long offset, long firstRecord, int[] blockRecordOffsets, int count) throws IOException {
+            out.writeLong(offset);
+            out.writeLong(firstRecord);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(blockRecordOffsets[i]);
+            }
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -75,16 +75,34 @@ public class BufferedSeparatorInputStream extends BaseChunkStream {
         super(in, bufferSize);
     }
 
+    /**
+     * Create a buffered information separator stream with buffers from a page recycler.
+     * The buffers are given back to the recycler when the stream is closed.
+     * @param in the underlying input stream
+     * @param bufferSize the buffer size
+     * @param recycler the page recycler, or null
+     */
+    public BufferedSeparatorInputStream(InputStream in, int bufferSize, PageRecycler recycler) {
+        super(in, bufferSize, recycler);
+    }
+
+    /**
+     * Read the next chunk. The data of a chunk is valid until the next chunk is read or the stream is closed.
+     * @return the chunk, or null at the end of the stream
+     * @throws IOException if the chunk can not be read
+     */
     @Override
     public Chunk<byte[], BytesReference> readChunk() throws IOException {
+        // the pages of the previous chunk are given back only now, the caller may still decode its data
+        ref.reset();
         while (true) {
             end = fillBuf();
             if (end == -1) {
                 return null;
             }
-            Coordinate c = indexOf(buffer, begin, end);
-            if (c.pos != -1) {
-                ref.write(buffer, begin, c.pos - begin);
+            int pos = SeparatorScanner.indexOfSeparator(buffer, begin, end);
+            if (pos != -1) {
+                ref.write(buffer, begin, pos - begin);
                 final char chunkSeparator = separator;
                 final BytesReference chunkData = ref.bytes();
                 Chunk<byte[], BytesReference> chunk = new Chunk<byte[], BytesReference>() {
@@ -106,13 +124,12 @@ public class BufferedSeparatorInputStream extends BaseChunkStream {
                     }
                 };
                 processChunk(chunk);
-                ref.reset();
-                separator = c.sep;
-                begin = c.pos + 1;
+                separator = (char) buffer[pos];
+                begin = pos + 1;
                 return chunk;
             } else {
-                ref.write(buffer, begin, buffersize - begin);
-                begin = buffersize;
+                ref.write(buffer, begin, end - begin);
+                begin = end;
             }
         }
     }
@@ -126,29 +143,4 @@ public class BufferedSeparatorInputStream extends BaseChunkStream {
     protected void processChunk(Chunk<byte[], BytesReference> chunk) throws IOException {
         // intentionally left blank
     }
-
-    private Coordinate indexOf(byte[] b, int start, int end) {
-        for (int i = start; i < end; i++) {
-            if (b[i] == InformationSeparator.US) {
-                return new Coordinate(i, InformationSeparator.US);
-            } else if (b[i] == InformationSeparator.RS) {
-                return new Coordinate(i, InformationSeparator.RS);
-            } else if (b[i] == InformationSeparator.GS) {
-                return new Coordinate(i, InformationSeparator.GS);
-            } else if (b[i] == InformationSeparator.FS) {
-                return new Coordinate(i, InformationSeparator.FS);
-            }
-        }
-        return new Coordinate(-1, '\u0000');
-    }
-
-    private static class Coordinate {
-        int pos;
-        char sep;
-
-        Coordinate(int pos, char sep) {
-            this.pos = pos;
-            this.sep = sep;
-        }
-    }
 }
@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A part of a byte buffer, wrapped in a {@link BytesReference}. The buffer is accessed
+ * by absolute positions only, so many references can share a single buffer,
+ * for example a memory-mapped file region, without copying.
+ */
+public class ByteBufferReference implements BytesReference {
+
+    private static final String EMPTY_STRING = "";
+
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final int length;
+
+    /**
+     * Create {@link ByteBufferReference} from a part of a byte buffer.
+     * @param buffer the byte buffer
+     * @param offset the absolute offset in the buffer
+     * @param length the length
+     */
+    public ByteBufferReference(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public byte get(int index) {
+        return buffer.get(offset + index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int indexOf(byte b, int offset, int len) {
+        if (offset < 0 || (offset + len) > this.length) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = offset; i < offset + len; i++) {
+            if (buffer.get(this.offset + i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public BytesReference slice(int from, int length) {
+        if (from < 0 || (from + length) > this.length) {
+            throw new IllegalArgumentException("can't slice a buffer with length [" + this.length +
+                    "], with slice parameters from [" + from + "], length [" + length + "]");
+        }
+        return new ByteBufferReference(buffer, offset + from, length);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[length];
+        buffer.get(offset, b, 0, length);
+        return b;
+    }
+
+    @Override
+    public ByteBuffer toByteBuffer(int from, int length) {
+        if (from < 0 || (from + length) > this.length) {
+            throw new IllegalArgumentException();
+        }
+        return buffer.slice(offset + from, length);
+    }
+
+    @Override
+    public String toUtf8() {
+        if (length == 0) {
+            return EMPTY_STRING;
+        }
+        return new String(toBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.xbib.marc.io;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -68,15 +69,11 @@ public class BytesArray implements BytesReference {
 
     @Override
     public int indexOf(byte b, int offset, int len) {
-        if (offset < 0 || (offset + length) > this.length) {
+        if (offset < 0 || (offset + len) > this.length) {
             throw new IllegalArgumentException();
         }
-        for (int i = offset; i < offset + len; i++) {
-            if (bytes[i] == b) {
-                return i;
-            }
-        }
-        return -1;
+        int pos = SeparatorScanner.indexOf(bytes, this.offset + offset, this.offset + offset + len, b);
+        return pos != -1 ? pos - this.offset : -1;
     }
 
     @Override
@@ -96,6 +93,14 @@ public class BytesArray implements BytesReference {
         return Arrays.copyOfRange(bytes, offset, offset + length);
     }
 
+    @Override
+    public ByteBuffer toByteBuffer(int from, int length) {
+        if (from < 0 || (from + length) > this.length) {
+            throw new IllegalArgumentException();
+        }
+        return ByteBuffer.wrap(bytes, offset + from, length).slice();
+    }
+
     @Override
     public String toUtf8() {
         if (length == 0) {
@@ -111,8 +116,8 @@ public class BytesArray implements BytesReference {
      */
     public List<byte[]> split(byte sep) {
         List<byte[]> l = new LinkedList<>();
-        int start = 0;
-        for (int i = 0; i < bytes.length; i++) {
+        int start = offset;
+        for (int i = offset; i < offset + length; i++) {
             if (sep == bytes[i]) {
                 byte[] b = Arrays.copyOfRange(bytes, start, i);
                 if (b.length > 0) {
@@ -122,7 +127,7 @@ public class BytesArray implements BytesReference {
                 i = start;
             }
         }
-        l.add(Arrays.copyOfRange(bytes, start, bytes.length));
+        l.add(Arrays.copyOfRange(bytes, start, offset + length));
         return l;
     }
 }
@@ -15,6 +15,8 @@
  */
 package org.xbib.marc.io;
 
+import java.nio.ByteBuffer;
+
 /**
  * A reference to bytes.
  */
@@ -60,6 +62,19 @@ public interface BytesReference {
      */
     byte[] toBytes();
 
+    /**
+     * Returns a part of the bytes as a byte buffer, from position zero to the limit of the buffer.
+     * The default implementation copies the bytes, implementations backed by a single array or buffer
+     * return a view without copying.
+     *
+     * @param from   from
+     * @param length length
+     * @return byte buffer
+     */
+    default ByteBuffer toByteBuffer(int from, int length) {
+        return ByteBuffer.wrap(slice(from, length).toBytes());
+    }
+
     /**
      * Converts to a string based on utf8.
      *
@@ -21,11 +21,19 @@ import java.util.Arrays;
 
 /**
  * A growable stream of bytes, with random access methods.
+ *
+ * By default, the bytes are kept in a single array that grows by copying. If the stream is created
+ * with a {@link PageRecycler}, the bytes are kept in pages of the recycler instead, the stream grows by
+ * adding pages, and the pages are given back to the recycler by {@link #release()}. Pages beyond the
+ * first page are also given back on {@link #reset()}, so a stream that is reused for many records
+ * holds one page only between records.
  */
 public class BytesStreamOutput extends OutputStream {
 
     private static final int DEFAULT_BUFFER_SIZE = 1024;
 
+    private static final byte[] EMPTY = new byte[0];
+
     private static final boolean JRE_IS_64BIT;
 
     static {
@@ -45,6 +53,23 @@ public class BytesStreamOutput extends OutputStream {
      */
     private int count;
 
+    /**
+     * The page recycler, or null if the bytes are kept in a single buffer.
+     */
+    private final PageRecycler recycler;
+
+    /**
+     * The pages, in paged mode.
+     */
+    private byte[][] pages;
+
+    /**
+     * The number of pages obtained from the recycler.
+     */
+    private int pageCount;
+
+    private PageRecycler.LeakTracker tracker;
+
     /**
      * Create a new {@code BytesStreamOutput} with default buffer size.
      */
@@ -58,6 +83,17 @@ public class BytesStreamOutput extends OutputStream {
      */
     public BytesStreamOutput(int size) {
         this.buf = new byte[size];
+        this.recycler = null;
+    }
+
+    /**
+     * Create a new {@code BytesStreamOutput} that keeps its bytes in pages of a page recycler.
+     * The pages must be given back by {@link #release()} when the stream is no longer used.
+     * @param recycler the page recycler
+     */
+    public BytesStreamOutput(PageRecycler recycler) {
+        this.recycler = recycler;
+        this.pages = new byte[4][];
     }
 
     /**
@@ -87,6 +123,13 @@ public class BytesStreamOutput extends OutputStream {
      */
     @Override
     public void write(int b) throws IOException {
+        if (recycler != null) {
+            int pageSize = recycler.getPageSize();
+            ensurePages(count + 1);
+            pages[count / pageSize][count % pageSize] = (byte) b;
+            count++;
+            return;
+        }
         int newcount = count + 1;
         if (newcount > buf.length) {
             buf = Arrays.copyOf(buf, oversize(newcount));
@@ -108,6 +151,10 @@ public class BytesStreamOutput extends OutputStream {
         if (length == 0) {
             return;
         }
+        if (recycler != null) {
+            writePages(b, offset, length);
+            return;
+        }
         int newcount = count + length;
         if (newcount > buf.length) {
             buf = Arrays.copyOf(buf, oversize(newcount));
@@ -121,6 +168,11 @@ public class BytesStreamOutput extends OutputStream {
      * @param length the number of bytes to skip.
      */
     public void skip(int length) {
+        if (recycler != null) {
+            ensurePages(count + length);
+            count += length;
+            return;
+        }
         int newcount = count + length;
         if (newcount > buf.length) {
             buf = Arrays.copyOf(buf, oversize(newcount));
@@ -136,8 +188,30 @@ public class BytesStreamOutput extends OutputStream {
         count = pos;
     }
 
+    /**
+     * Reset the stream to position 0. In paged mode, all pages except the first page are given back
+     * to the recycler.
+     */
     public void reset() {
         count = 0;
+        if (recycler != null) {
+            releasePages(1);
+        }
+    }
+
+    /**
+     * In paged mode, reset the stream to position 0 and give all pages back to the recycler. The stream
+     * can be used again after release, it obtains new pages when needed. Has no effect if the stream is not paged.
+     */
+    public void release() {
+        if (recycler != null) {
+            count = 0;
+            releasePages(0);
+            if (tracker != null) {
+                tracker.close();
+                tracker = null;
+            }
+        }
     }
 
     @Override
@@ -145,9 +219,13 @@ public class BytesStreamOutput extends OutputStream {
         // nothing to do there
     }
 
+    /**
+     * Close the stream. In paged mode, the pages are given back to the recycler, like in {@link #release()}.
+     * @throws IOException if close fails
+     */
     @Override
     public void close() throws IOException {
-        // nothing to do here
+        release();
     }
 
     /**
@@ -155,7 +233,17 @@ public class BytesStreamOutput extends OutputStream {
      * @return the byets reference
      */
     public BytesReference bytes() {
-        return new BytesArray(buf, 0, count);
+        if (recycler == null) {
+            return new BytesArray(buf, 0, count);
+        }
+        if (count == 0) {
+            return new BytesArray(EMPTY);
+        }
+        int pageSize = recycler.getPageSize();
+        if (count <= pageSize) {
+            return new BytesArray(pages[0], 0, count);
+        }
+        return new PagedBytesReference(Arrays.copyOf(pages, (count - 1) / pageSize + 1), pageSize, 0, count);
     }
 
     /**
@@ -169,6 +257,46 @@ public class BytesStreamOutput extends OutputStream {
         return count;
     }
 
+    private void writePages(byte[] b, int offset, int length) {
+        ensurePages(count + length);
+        int pageSize = recycler.getPageSize();
+        int off = offset;
+        int len = length;
+        while (len > 0) {
+            int pos = count % pageSize;
+            int n = Math.min(len, pageSize - pos);
+            System.arraycopy(b, off, pages[count / pageSize], pos, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void ensurePages(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("invalid size " + size);
+        }
+        int pageSize = recycler.getPageSize();
+        int needed = (int) ((size + (long) pageSize - 1) / pageSize);
+        if (needed > pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(needed, pages.length * 2));
+        }
+        while (pageCount < needed) {
+            pages[pageCount++] = recycler.obtain();
+        }
+        if (tracker == null && pageCount > 0) {
+            tracker = recycler.track(this);
+        }
+    }
+
+    private void releasePages(int keep) {
+        while (pageCount > keep) {
+            pageCount--;
+            recycler.release(pages[pageCount]);
+            pages[pageCount] = null;
+        }
+    }
+
     /**
      * Returns an array size &gt;= minTargetSize, generally
      * over-allocating exponentially to achieve amortized
@@ -17,7 +17,13 @@ package org.xbib.marc.io;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A chunk stream.
@@ -27,10 +33,41 @@ import java.util.stream.Stream;
 public interface ChunkStream<S, D> extends Closeable {
 
     /**
-     * Return a stream of chunks.
+     * Return a stream of chunks. The default implementation pulls chunks from {@link #readChunk()}.
      * @return a stream of chunks
      */
-    Stream<Chunk<S, D>> chunks();
+    default Stream<Chunk<S, D>> chunks() {
+        Iterator<Chunk<S, D>> iterator = new Iterator<Chunk<S, D>>() {
+            Chunk<S, D> nextData = null;
+
+            @Override
+            public boolean hasNext() {
+                if (nextData != null) {
+                    return true;
+                } else {
+                    try {
+                        nextData = readChunk();
+                        return nextData != null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+
+            @Override
+            public Chunk<S, D> next() {
+                if (nextData != null || hasNext()) {
+                    Chunk<S, D> data = nextData;
+                    nextData = null;
+                    return data;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
     /**
      * Reads a single chunk from stream.
@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A chunk stream for information separated files, backed by memory-mapped file regions.
+ *
+ * The chunks are the same as the chunks of a {@link BufferedSeparatorInputStream} over the same file,
+ * but the chunk data are {@link ByteBufferReference} slices of the mapped region and never copied.
+ * Because a {@code MappedByteBuffer} is limited to 2 GB, large files are mapped region by region.
+ * A new region always starts at the beginning of the current chunk, so no chunk spans two regions.
+ *
+ * Chunk data remain valid after the stream has moved on to a new region, as long as they are referenced.
+ */
+public class MappedSeparatorChunkStream implements ChunkStream<byte[], BytesReference> {
+
+    private static final int DEFAULT_REGION_SIZE = 256 * 1024 * 1024;
+
+    private static final int MAX_REGION_SIZE = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int regionSize;
+
+    private ByteBuffer region;
+
+    private long regionStart;
+
+    private int begin;
+
+    /**
+     * Trick: first separator emitted will be a file separator.
+     */
+    private char separator = InformationSeparator.FS;
+
+    /**
+     * Create a memory-mapped information separator stream with default region size of 256 MB.
+     * @param path the path of the file
+     * @throws IOException if the file can not be opened or mapped
+     */
+    public MappedSeparatorChunkStream(Path path) throws IOException {
+        this(path, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Create a memory-mapped information separator stream.
+     * @param path the path of the file
+     * @param regionSize the size of a mapped region
+     * @throws IOException if the file can not be opened or mapped
+     */
+    public MappedSeparatorChunkStream(Path path, int regionSize) throws IOException {
+        this(path, 0L, -1L, regionSize);
+    }
+
+    /**
+     * Create a memory-mapped information separator stream over a byte range of a file.
+     * The range should begin at the beginning of a record and end after a record terminator,
+     * because data after the last separator of the range is not a chunk.
+     * @param path the path of the file
+     * @param start the start position of the range, inclusive
+     * @param end the end position of the range, exclusive, or -1 for the end of the file
+     * @param regionSize the size of a mapped region
+     * @throws IOException if the file can not be opened or mapped
+     */
+    public MappedSeparatorChunkStream(Path path, long start, long end, int regionSize) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("region size must be positive: " + regionSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long fileSize = channel.size();
+        this.size = end < 0L ? fileSize : Math.min(end, fileSize);
+        if (start < 0L || start > size) {
+            channel.close();
+            throw new IllegalArgumentException("invalid range start: " + start);
+        }
+        this.regionSize = regionSize;
+        map(start, regionSize);
+    }
+
+    @Override
+    public Chunk<byte[], BytesReference> readChunk() throws IOException {
+        while (true) {
+            int end = region.limit();
+            int pos = SeparatorScanner.indexOfSeparator(region, begin, end);
+            if (pos != -1) {
+                Chunk<byte[], BytesReference> chunk =
+                        new DefaultChunk(separator, new ByteBufferReference(region, begin, pos - begin));
+                separator = (char) region.get(pos);
+                begin = pos + 1;
+                return chunk;
+            }
+            if (regionStart + end >= size) {
+                // like the buffered stream, data after the last separator is not a chunk
+                return null;
+            }
+            if (begin == 0) {
+                // a single chunk does not fit into the region, enlarge it
+                if (end >= MAX_REGION_SIZE) {
+                    throw new IOException("chunk at file position " + regionStart + " is larger than "
+                            + MAX_REGION_SIZE + " bytes");
+                }
+                map(regionStart, (int) Math.min(2L * end, MAX_REGION_SIZE));
+            } else {
+                map(regionStart + begin, regionSize);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(long start, int length) throws IOException {
+        this.regionStart = start;
+        this.region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+        this.begin = 0;
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.lang.ref.Cleaner;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A recycler for byte array pages of a fixed size.
+ *
+ * Pages are obtained with {@link #obtain()} and must be given back with {@link #release(byte[])}
+ * when they are no longer in use. Released pages are kept in a bounded pool and are handed out
+ * again, so long running ingests do not allocate a new buffer for every stream or every record.
+ * Pages that do not fit into the pool are left to the garbage collector.
+ *
+ * A released page must not be used anymore. The recycler does not clear the pages, a page
+ * returned by {@link #obtain()} may contain data of a previous owner.
+ *
+ * In leak detection mode, owners of pages can register with {@link #track(Object)}. If an owner is
+ * garbage collected before it closed its tracker, the place where the tracker was created is logged,
+ * and the leak is counted. Leak detection is meant for debugging, it records a stack trace for each tracker.
+ * The default recycler enables leak detection if the system property
+ * {@code org.xbib.marc.io.leakdetection} is set to {@code true}.
+ *
+ * This class is thread safe.
+ */
+public class PageRecycler {
+
+    private static final Logger logger = Logger.getLogger(PageRecycler.class.getName());
+
+    /**
+     * The default page size, 16 KB.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 16 * 1024;
+
+    /**
+     * The default maximum number of pooled pages.
+     */
+    public static final int DEFAULT_MAX_PAGES = 1024;
+
+    private static final PageRecycler DEFAULT = new PageRecycler(DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES,
+            Boolean.getBoolean("org.xbib.marc.io.leakdetection"));
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    private final boolean leakDetection;
+
+    private final ConcurrentLinkedDeque<byte[]> pool;
+
+    private final AtomicInteger pooled;
+
+    private final AtomicLong outstanding;
+
+    private final AtomicLong leaks;
+
+    private final Cleaner cleaner;
+
+    /**
+     * Create a page recycler without leak detection.
+     * @param pageSize the page size in bytes
+     * @param maxPages the maximum number of pages kept in the pool
+     */
+    public PageRecycler(int pageSize, int maxPages) {
+        this(pageSize, maxPages, false);
+    }
+
+    /**
+     * Create a page recycler.
+     * @param pageSize the page size in bytes
+     * @param maxPages the maximum number of pages kept in the pool
+     * @param leakDetection true if owners that are not released should be reported
+     */
+    public PageRecycler(int pageSize, int maxPages, boolean leakDetection) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("invalid page size " + pageSize);
+        }
+        if (maxPages < 0) {
+            throw new IllegalArgumentException("invalid maximum number of pages " + maxPages);
+        }
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.leakDetection = leakDetection;
+        this.pool = new ConcurrentLinkedDeque<>();
+        this.pooled = new AtomicInteger();
+        this.outstanding = new AtomicLong();
+        this.leaks = new AtomicLong();
+        this.cleaner = leakDetection ? Cleaner.create() : null;
+    }
+
+    /**
+     * Return the default page recycler, which is shared by all users in the JVM.
+     * @return the default page recycler
+     */
+    public static PageRecycler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Return the page size.
+     * @return the page size in bytes
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Obtain a page, from the pool if possible, otherwise a new one.
+     * @return a page of {@link #getPageSize()} bytes
+     */
+    public byte[] obtain() {
+        outstanding.incrementAndGet();
+        byte[] page = pool.pollFirst();
+        if (page == null) {
+            return new byte[pageSize];
+        }
+        pooled.decrementAndGet();
+        return page;
+    }
+
+    /**
+     * Give a page back to the recycler. The page must not be used after it is released.
+     * @param page the page obtained from this recycler
+     */
+    public void release(byte[] page) {
+        Objects.requireNonNull(page);
+        if (page.length != pageSize) {
+            throw new IllegalArgumentException("page of size " + page.length + " does not belong to this recycler");
+        }
+        outstanding.decrementAndGet();
+        if (pooled.incrementAndGet() <= maxPages) {
+            // most recently used first, it is more likely to be in the CPU cache
+            pool.offerFirst(page);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Register an owner of pages for leak detection.
+     * @param owner the owner of pages
+     * @return a tracker that must be closed when the owner has released its pages,
+     * or null if leak detection is not enabled
+     */
+    public LeakTracker track(Object owner) {
+        if (!leakDetection) {
+            return null;
+        }
+        LeakTracker tracker = new LeakTracker(this, owner.getClass().getName());
+        tracker.cleanable = cleaner.register(owner, tracker);
+        return tracker;
+    }
+
+    /**
+     * Return if leak detection is enabled.
+     * @return true if leak detection is enabled
+     */
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Return the number of pages in the pool.
+     * @return the number of pooled pages
+     */
+    public int getPooledPages() {
+        return pool.size();
+    }
+
+    /**
+     * Return the number of pages that have been obtained and not released yet.
+     * @return the number of outstanding pages
+     */
+    public long getOutstandingPages() {
+        return outstanding.get();
+    }
+
+    /**
+     * Return the number of owners that were garbage collected without closing their tracker.
+     * Only counted in leak detection mode.
+     * @return the number of leaks
+     */
+    public long getLeaks() {
+        return leaks.get();
+    }
+
+    /**
+     * A tracker for an owner of pages. The tracker must be closed when the owner has released all its pages.
+     */
+    public static final class LeakTracker implements Runnable {
+
+        private final PageRecycler recycler;
+
+        private final String owner;
+
+        private final Throwable allocation;
+
+        private final AtomicBoolean closed;
+
+        private Cleaner.Cleanable cleanable;
+
+        private LeakTracker(PageRecycler recycler, String owner) {
+            this.recycler = recycler;
+            this.owner = owner;
+            this.allocation = new Throwable("allocation of " + owner);
+            this.closed = new AtomicBoolean();
+        }
+
+        /**
+         * Close the tracker, the owner has released its pages.
+         */
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                cleanable.clean();
+            }
+        }
+
+        /**
+         * Called by the cleaner, after the owner was garbage collected or after the tracker was closed.
+         */
+        @Override
+        public void run() {
+            if (!closed.get()) {
+                recycler.leaks.incrementAndGet();
+                logger.log(Level.WARNING, "LEAK: " + owner + " was garbage collected before its pages were released",
+                        allocation);
+            }
+        }
+    }
+}
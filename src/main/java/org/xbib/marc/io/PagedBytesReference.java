@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link BytesReference} over a sequence of pages of equal size.
+ * The bytes are valid only as long as the pages are not given back to their recycler.
+ */
+class PagedBytesReference implements BytesReference {
+
+    private final byte[][] pages;
+
+    private final int pageSize;
+
+    private final int offset;
+
+    private final int length;
+
+    PagedBytesReference(byte[][] pages, int pageSize, int offset, int length) {
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public byte get(int index) {
+        int pos = offset + index;
+        return pages[pos / pageSize][pos % pageSize];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int indexOf(byte b, int offset, int len) {
+        if (offset < 0 || (offset + len) > this.length) {
+            throw new IllegalArgumentException();
+        }
+        int pos = this.offset + offset;
+        int end = pos + len;
+        while (pos < end) {
+            int page = pos / pageSize;
+            int from = pos % pageSize;
+            int to = Math.min(pageSize, from + end - pos);
+            int i = SeparatorScanner.indexOf(pages[page], from, to, b);
+            if (i != -1) {
+                return page * pageSize + i - this.offset;
+            }
+            pos += to - from;
+        }
+        return -1;
+    }
+
+    @Override
+    public BytesReference slice(int from, int length) {
+        if (from < 0 || (from + length) > this.length) {
+            throw new IllegalArgumentException("can't slice a buffer with length [" + this.length +
+                    "], with slice parameters from [" + from + "], length [" + length + "]");
+        }
+        int pos = offset + from;
+        if (pos / pageSize == (pos + length - 1) / pageSize) {
+            // fits into a single page
+            return new BytesArray(pages[pos / pageSize], pos % pageSize, length);
+        }
+        return new PagedBytesReference(pages, pageSize, pos, length);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[length];
+        int pos = offset;
+        int n = 0;
+        while (n < length) {
+            int from = pos % pageSize;
+            int k = Math.min(pageSize - from, length - n);
+            System.arraycopy(pages[pos / pageSize], from, b, n, k);
+            pos += k;
+            n += k;
+        }
+        return b;
+    }
+
+    @Override
+    public String toUtf8() {
+        return new String(toBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,348 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A GZIP output stream that compresses blocks of the output in parallel.
+ *
+ * Like pigz, the output is divided into blocks of a fixed size, and each block is deflated by a worker thread.
+ * The compressor of a block is primed with the last 32 KB of the preceding input, so the compression ratio
+ * is close to the ratio of a single compressor. Each block ends with a sync flush on a byte boundary, and the
+ * compressed blocks are written in order, so the result is a single standard GZIP member that can be read by
+ * {@link java.util.zip.GZIPInputStream} or any gzip tool. The checksum is computed on the writing thread.
+ *
+ * The number of blocks in flight is bounded, so a slow output applies back pressure to the writer.
+ *
+ * Like in {@link java.util.zip.GZIPOutputStream}, flushing does not end a block unless sync flush is enabled,
+ * because writers that flush after every record would otherwise compress tiny blocks one at a time.
+ *
+ * This class is not thread safe, it must be written by one thread at a time.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The default block size, 128 KB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(
+            Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final OutputStream out;
+
+    private final int level;
+
+    private final int blockSize;
+
+    private final Executor executor;
+
+    private final int maxBlocksInFlight;
+
+    private final boolean syncFlush;
+
+    private final Deque<CompletableFuture<Block>> blocks;
+
+    private final Deque<byte[]> freeBuffers;
+
+    private final CRC32 crc;
+
+    private final byte[] single;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private byte[] dictionary;
+
+    private long size;
+
+    private boolean headerWritten;
+
+    private boolean closed;
+
+    /**
+     * Create a parallel GZIP output stream with default compression and block size on the shared worker pool.
+     * @param out the underlying output stream
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a parallel GZIP output stream on the shared worker pool.
+     * @param out the underlying output stream
+     * @param level the compression level, from 0 to 9, or -1 for the default compression
+     * @param blockSize the number of uncompressed bytes in a block
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize) {
+        this(out, level, blockSize, null);
+    }
+
+    /**
+     * Create a parallel GZIP output stream.
+     * @param out the underlying output stream
+     * @param level the compression level, from 0 to 9, or -1 for the default compression
+     * @param blockSize the number of uncompressed bytes in a block
+     * @param executor the executor for compressing the blocks, or null for the shared worker pool
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize, Executor executor) {
+        this(out, level, blockSize, false, executor != null ? executor : getDefaultExecutor(), 2 * THREADS);
+    }
+
+    /**
+     * Create a parallel GZIP output stream.
+     * @param out the underlying output stream
+     * @param level the compression level, from 0 to 9, or -1 for the default compression
+     * @param blockSize the number of uncompressed bytes in a block
+     * @param syncFlush if true, {@link #flush()} compresses and writes all bytes written so far
+     * @param executor the executor for compressing the blocks
+     * @param maxBlocksInFlight the maximum number of blocks that are submitted but not written yet
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize, boolean syncFlush,
+                                    Executor executor, int maxBlocksInFlight) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("invalid block size " + blockSize);
+        }
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.maxBlocksInFlight = Math.max(1, maxBlocksInFlight);
+        this.syncFlush = syncFlush;
+        this.blocks = new ArrayDeque<>();
+        this.freeBuffers = new ArrayDeque<>();
+        this.crc = new CRC32();
+        this.single = new byte[1];
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        crc.update(b, off, len);
+        size += len;
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int n = Math.min(remaining, blockSize - count);
+            System.arraycopy(b, pos, buffer, count, n);
+            count += n;
+            pos += n;
+            remaining -= n;
+            if (count == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Write the blocks that are already compressed, and flush the underlying stream.
+     * With sync flush, the buffered bytes are compressed and written, too. Each sync flush ends a block,
+     * so frequent flushing reduces parallelism and compression ratio.
+     * @throws IOException if flush fails
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (syncFlush) {
+            if (count > 0) {
+                submit(false);
+            }
+            while (!blocks.isEmpty()) {
+                writeBlock();
+            }
+        } else {
+            while (!blocks.isEmpty() && blocks.peek().isDone()) {
+                writeBlock();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Finish the GZIP member, write the trailer, and close the underlying stream.
+     * @throws IOException if close fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submit(true);
+            while (!blocks.isEmpty()) {
+                writeBlock();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) size);
+            out.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] input = buffer;
+        int length = count;
+        byte[] dict = dictionary;
+        if (!last) {
+            dictionary = nextDictionary(dict, input, length);
+        }
+        blocks.add(CompletableFuture.supplyAsync(() -> deflate(input, length, dict, last), executor));
+        buffer = freeBuffers.isEmpty() ? new byte[blockSize] : freeBuffers.poll();
+        count = 0;
+        while (blocks.size() > maxBlocksInFlight) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * The dictionary for the next block, the last 32 KB of the input so far.
+     */
+    private static byte[] nextDictionary(byte[] dict, byte[] input, int length) {
+        if (length >= DICTIONARY_SIZE || dict == null) {
+            return Arrays.copyOfRange(input, Math.max(0, length - DICTIONARY_SIZE), length);
+        }
+        int keep = Math.min(dict.length, DICTIONARY_SIZE - length);
+        byte[] b = new byte[keep + length];
+        System.arraycopy(dict, dict.length - keep, b, 0, keep);
+        System.arraycopy(input, 0, b, keep, length);
+        return b;
+    }
+
+    private void writeBlock() throws IOException {
+        Block block;
+        try {
+            block = blocks.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+        block.output.writeTo(out);
+        freeBuffers.add(block.input);
+    }
+
+    private Block deflate(byte[] input, int length, byte[] dict, boolean last) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        if (dict != null && dict.length > 0) {
+            deflater.setDictionary(dict);
+        }
+        deflater.setInput(input, 0, length);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] b = new byte[Math.min(64 * 1024, length + 64)];
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(b);
+                output.write(b, 0, n);
+            }
+        } else {
+            while (!deflater.needsInput()) {
+                int n = deflater.deflate(b, 0, b.length, Deflater.NO_FLUSH);
+                output.write(b, 0, n);
+            }
+            int n;
+            do {
+                n = deflater.deflate(b, 0, b.length, Deflater.SYNC_FLUSH);
+                output.write(b, 0, n);
+            } while (n == b.length);
+        }
+        return new Block(input, output);
+    }
+
+    private void writeInt(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    private static ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (ParallelGzipOutputStream.class) {
+                if (defaultExecutor == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    defaultExecutor = Executors.newFixedThreadPool(THREADS, r -> {
+                        Thread thread = new Thread(r, "marc-gzip-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    private static class Block {
+
+        private final byte[] input;
+
+        private final ByteArrayOutputStream output;
+
+        Block(byte[] input, ByteArrayOutputStream output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+}
@@ -25,6 +25,9 @@ import static java.util.Objects.requireNonNull;
  * A buffered input stream that is organized in chunks separated by byte array patterns.
  * Convenience implements are give by {@code PatternInputStream.lf()} for line-feed separated
  * streams, and {@code PatternInputStream.CRLF} for carriage-rturn/line-feed separated streams.
+ *
+ * The pattern is searched by the Boyer-Moore-Horspool algorithm. Chunks are slices of the buffer,
+ * they are valid until the next chunk is read. A chunk that does not fit into the buffer lets the buffer grow.
  */
 public class PatternInputStream extends BaseChunkStream {
 
@@ -34,6 +37,13 @@ public class PatternInputStream extends BaseChunkStream {
 
     private final byte[] pattern;
 
+    private final int[] shift;
+
+    /**
+     * The position from which the buffer has not been searched for the pattern yet.
+     */
+    private int scan;
+
     /**
      * Create a pattern delimited input stream.
      * @param in the underlying input stream
@@ -41,9 +51,23 @@ public class PatternInputStream extends BaseChunkStream {
      * @param bufferSize buffer size
      */
     public PatternInputStream(InputStream in, byte[] pattern, int bufferSize) {
-        super(in, bufferSize);
+        this(in, pattern, bufferSize, null);
+    }
+
+    /**
+     * Create a pattern delimited input stream with a buffer from a page recycler.
+     * The buffer is given back to the recycler when the stream is closed.
+     * @param in the underlying input stream
+     * @param pattern the pattern
+     * @param bufferSize buffer size
+     * @param recycler the page recycler, or null
+     */
+    public PatternInputStream(InputStream in, byte[] pattern, int bufferSize, PageRecycler recycler) {
+        super(in, bufferSize, recycler);
         requireNonNull(pattern);
         this.pattern = pattern.clone();
+        this.shift = skipTable(this.pattern);
+        this.end = 0;
     }
 
     /**
@@ -91,76 +115,111 @@ public class PatternInputStream extends BaseChunkStream {
     }
 
     private Chunk<byte[], BytesReference> internalReadChunk() throws IOException {
-        int matches = 0;
         while (true) {
-            end = fillBuf();
-            if (end == -1) {
-                if (ref.size() > 0) {
-                    // return last read chunk
-                    final BytesReference bytesReference = ref.bytes();
-                    ref.reset();
-                    return new Chunk<byte[], BytesReference>() {
-                        @Override
-                        public byte[] separator() {
-                            return pattern;
-                        }
-
-                        @Override
-                        public BytesReference data() {
-                            return bytesReference;
-                        }
-
-                        @Override
-                        public String toString() {
-                            return Arrays.toString(separator())
-                                    + ": " + Arrays.toString(bytesReference.toBytes())
-                                    + ": " + bytesReference.toUtf8();
-                        }
-
-                    };
-                } else {
-                    return null;
-                }
+            int pos = indexOf(Math.max(begin, scan), end);
+            if (pos != -1) {
+                Chunk<byte[], BytesReference> chunk = createChunk(new BytesArray(buffer, begin, pos - begin));
+                begin = pos + pattern.length;
+                scan = begin;
+                return chunk;
             }
-            for (int i = begin; i < end; i++) {
-                if (buffer[i] == pattern[matches]) {
-                    matches++;
-                } else {
-                    matches = 0;
-                }
-                if (matches == pattern.length) {
-                    int len = i - begin - pattern.length + 1;
-                    if (len < 0) {
-                        ref.skip(len);
-                    } else {
-                        ref.write(buffer, begin, len);
-                    }
-                    final BytesReference bytesReference = ref.bytes();
-                    Chunk<byte[], BytesReference> chunk = new Chunk<byte[], BytesReference>() {
-                        @Override
-                        public byte[] separator() {
-                            return pattern;
-                        }
-
-                        @Override
-                        public BytesReference data() {
-                            return bytesReference;
-                        }
-
-                        @Override
-                        public String toString() {
-                            return Arrays.toString(separator())
-                                    + ": " + Arrays.toString(bytesReference.toBytes())
-                                    + ": " + bytesReference.toUtf8();
-                        }
-                    };
-                    ref.reset();
-                    begin = i + 1;
+            // a match may begin in the last bytes of the buffer and end after the refill
+            scan = Math.max(begin, end - pattern.length + 1);
+            if (!refill()) {
+                if (end > begin) {
+                    // return last read chunk
+                    Chunk<byte[], BytesReference> chunk = createChunk(new BytesArray(buffer, begin, end - begin));
+                    begin = end;
                     return chunk;
                 }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Move the unmatched rest of the buffer to the front, grow the buffer if the rest fills it,
+     * and read more bytes into the buffer.
+     * @return false if the end of the stream has been reached
+     * @throws IOException if bytes can not be read
+     */
+    private boolean refill() throws IOException {
+        if (begin > 0) {
+            System.arraycopy(buffer, begin, buffer, 0, end - begin);
+            end -= begin;
+            scan -= begin;
+            begin = 0;
+        }
+        if (end == buffer.length) {
+            growBuffer(buffer.length * 2);
+        }
+        int n = super.read(buffer, end, buffer.length - end);
+        if (n <= 0) {
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for the pattern in the buffer.
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @return the position of the first match, or -1
+     */
+    private int indexOf(int from, int to) {
+        int last = pattern.length - 1;
+        if (last == 0) {
+            return SeparatorScanner.indexOf(buffer, from, to, pattern[0]);
+        }
+        byte lastByte = pattern[last];
+        int i = from;
+        while (i + last < to) {
+            byte b = buffer[i + last];
+            if (b == lastByte && matchesAt(i)) {
+                return i;
+            }
+            i += shift[b & 0xff];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(int pos) {
+        for (int j = pattern.length - 2; j >= 0; j--) {
+            if (buffer[pos + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Chunk<byte[], BytesReference> createChunk(BytesReference bytesReference) {
+        return new Chunk<>() {
+            @Override
+            public byte[] separator() {
+                return pattern;
             }
-            ref.write(buffer, begin, end - begin);
-            begin = end;
+
+            @Override
+            public BytesReference data() {
+                return bytesReference;
+            }
+
+            @Override
+            public String toString() {
+                return Arrays.toString(separator())
+                        + ": " + Arrays.toString(bytesReference.toBytes())
+                        + ": " + bytesReference.toUtf8();
+            }
+        };
+    }
+
+    private static int[] skipTable(byte[] pattern) {
+        int[] shift = new int[256];
+        Arrays.fill(shift, pattern.length);
+        for (int j = 0; j < pattern.length - 1; j++) {
+            shift[pattern[j] & 0xff] = pattern.length - 1 - j;
         }
+        return shift;
     }
 }
@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Find record boundaries in ISO 2709 files, for splitting a file into byte ranges of complete records.
+ *
+ * A record boundary is the position after a record terminator (GS). Because a GS byte may also
+ * occur in broken records, a candidate is accepted only if the record terminator follows a field
+ * terminator (RS), and the candidate starts with a plausible record label: the record length and the
+ * base address of data are digits, the base address lies inside the record, and the record length
+ * points to another record terminator.
+ *
+ * The channel is read by absolute positions only, so the methods can be called concurrently on a shared channel.
+ */
+public final class RecordBoundaries {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int LEADER_LENGTH = 24;
+
+    private RecordBoundaries() {
+    }
+
+    /**
+     * Find the next record boundary in a range of a file.
+     * @param channel the file channel
+     * @param from the start position of the search, inclusive
+     * @param to the end position of the search, exclusive
+     * @return the position of the first byte of the record, or -1 if there is no record boundary in the range
+     * @throws IOException if the channel can not be read
+     */
+    public static long nextRecordStart(FileChannel channel, long from, long to) throws IOException {
+        long size = channel.size();
+        long limit = Math.min(to, size);
+        // the terminator of a record starting at 'from' is at 'from - 1'
+        long pos = Math.max(from - 1L, 0L);
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        ByteBuffer window = ByteBuffer.allocate(LEADER_LENGTH + 2);
+        while (pos < limit - 1L) {
+            block.clear();
+            block.limit((int) Math.min(BLOCK_SIZE, limit - 1L - pos));
+            int n = read(channel, block, pos);
+            if (n <= 0) {
+                break;
+            }
+            byte[] b = block.array();
+            int i = 0;
+            while ((i = SeparatorScanner.indexOf(b, i, n, (byte) InformationSeparator.GS)) != -1) {
+                long start = pos + i + 1L;
+                if (isBoundary(channel, window, start, size)) {
+                    return start;
+                }
+                i++;
+            }
+            pos += n;
+        }
+        return -1L;
+    }
+
+    /**
+     * Check if a record label is plausible for an ISO 2709 record.
+     * @param b the bytes
+     * @param offset the offset of the record label
+     * @return true if record length and base address of data are digits and the base address is inside the record
+     */
+    public static boolean isPlausibleLeader(byte[] b, int offset) {
+        int recordLength = parseDigits(b, offset, 5);
+        int baseAddress = parseDigits(b, offset + 12, 5);
+        return recordLength > LEADER_LENGTH && baseAddress > LEADER_LENGTH && baseAddress < recordLength;
+    }
+
+    private static boolean isBoundary(FileChannel channel, ByteBuffer window, long start, long size)
+            throws IOException {
+        if (start < 2L || start + LEADER_LENGTH > size) {
+            return false;
+        }
+        window.clear();
+        if (read(channel, window, start - 2L) < window.capacity()) {
+            return false;
+        }
+        byte[] b = window.array();
+        if (b[0] != InformationSeparator.RS || !isPlausibleLeader(b, 2)) {
+            return false;
+        }
+        long end = start + parseDigits(b, 2, 5);
+        if (end > size) {
+            return false;
+        }
+        window.clear().limit(1);
+        return read(channel, window, end - 1L) == 1 && b[0] == InformationSeparator.GS;
+    }
+
+    private static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static int parseDigits(byte[] b, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
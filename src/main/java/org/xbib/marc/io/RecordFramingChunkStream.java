@@ -0,0 +1,292 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A chunk stream for ISO 2709 that frames records by the record length in the leader.
+ *
+ * Each record is read as a single block of the length given by the first five bytes of the leader.
+ * The fields are located by the offsets in the record directory, only the content of a field is scanned
+ * for subfield delimiters. The chunks are slices of the record block, they are valid until the next record is read.
+ *
+ * The chunk sequence is the same as the chunk sequence of a {@link BufferedSeparatorInputStream}.
+ * If a record directory is inconsistent with the record content, the record block is scanned for
+ * separators instead. If a record length is inconsistent, i.e. the block does not end with a record terminator,
+ * the rest of the stream, beginning with that block, is read by a {@link BufferedSeparatorInputStream}.
+ *
+ * If a record label filter is set, a record whose label is rejected by the filter is read as a block
+ * and dropped, without locating fields or scanning for separators, and no chunks are emitted for it.
+ */
+public class RecordFramingChunkStream implements ChunkStream<byte[], BytesReference> {
+
+    private static final int TAG_LENGTH = 3;
+
+    private static final int RECORD_LENGTH_DIGITS = 5;
+
+    private final InputStream in;
+
+    private final int bufferSize;
+
+    private byte[] record;
+
+    private int recordLength;
+
+    private int[] boundaries;
+
+    private int count;
+
+    private int next;
+
+    private int begin;
+
+    private long recordCounter;
+
+    private BufferedSeparatorInputStream fallback;
+
+    private boolean relabel;
+
+    private Predicate<RecordLabel> recordLabelFilter;
+
+    private long skippedRecordCounter;
+
+    /**
+     * Trick: first separator emitted will be a file separator.
+     */
+    private char separator = InformationSeparator.FS;
+
+    /**
+     * Create a record framing chunk stream.
+     * @param in the underlying input stream
+     * @param bufferSize the buffer size
+     */
+    public RecordFramingChunkStream(InputStream in, int bufferSize) {
+        this.in = new BufferedInputStream(in, bufferSize);
+        this.bufferSize = bufferSize;
+        this.record = new byte[Math.max(bufferSize, RecordLabel.LENGTH)];
+        this.boundaries = new int[64];
+    }
+
+    @Override
+    public Chunk<byte[], BytesReference> readChunk() throws IOException {
+        if (fallback != null) {
+            return fallbackChunk();
+        }
+        while (next >= count) {
+            if (!readRecord()) {
+                return fallback != null ? fallbackChunk() : null;
+            }
+        }
+        int pos = boundaries[next++];
+        Chunk<byte[], BytesReference> chunk = new DefaultChunk(separator, new BytesArray(record, begin, pos - begin));
+        separator = (char) record[pos];
+        begin = pos + 1;
+        return chunk;
+    }
+
+    /**
+     * Set a filter for record labels. Records with rejected record labels are skipped.
+     * @param recordLabelFilter the record label filter, or null for all records
+     * @return this chunk stream
+     */
+    public RecordFramingChunkStream setRecordLabelFilter(Predicate<RecordLabel> recordLabelFilter) {
+        this.recordLabelFilter = recordLabelFilter;
+        return this;
+    }
+
+    /**
+     * Return the number of records framed by record length so far.
+     * @return the number of framed records
+     */
+    public long getRecordCounter() {
+        return recordCounter;
+    }
+
+    /**
+     * Return the number of records skipped by the record label filter so far.
+     * @return the number of skipped records
+     */
+    public long getSkippedRecordCounter() {
+        return skippedRecordCounter;
+    }
+
+    /**
+     * Returns true if the stream has given up framing and continues by scanning for separators.
+     * @return true if framing has been given up
+     */
+    public boolean isFallback() {
+        return fallback != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fallback != null) {
+            fallback.close();
+        }
+        in.close();
+    }
+
+    private boolean readRecord() throws IOException {
+        int n = in.readNBytes(record, 0, RecordLabel.LENGTH);
+        if (n == 0) {
+            return false;
+        }
+        if (n < RecordLabel.LENGTH || !isDigits(record, 0, RECORD_LENGTH_DIGITS)) {
+            switchToFallback(n);
+            return false;
+        }
+        RecordLabel label = RecordLabel.builder()
+                .from(new String(record, 0, RecordLabel.LENGTH, StandardCharsets.ISO_8859_1))
+                .build();
+        int length = label.getRecordLength();
+        if (length < RecordLabel.LENGTH + 2) {
+            switchToFallback(n);
+            return false;
+        }
+        if (length > record.length) {
+            record = Arrays.copyOf(record, length);
+        }
+        n += in.readNBytes(record, n, length - n);
+        if (n < length || record[length - 1] != InformationSeparator.GS) {
+            switchToFallback(n);
+            return false;
+        }
+        recordLength = length;
+        count = 0;
+        next = 0;
+        begin = 0;
+        if (recordLabelFilter != null && !recordLabelFilter.test(label)) {
+            // the separator before the next record stays as it is
+            skippedRecordCounter++;
+            return true;
+        }
+        if (!splitByDirectory(label)) {
+            splitByScanning();
+        }
+        recordCounter++;
+        return true;
+    }
+
+    /**
+     * Compute the separator positions of the record from the directory.
+     * @param label the record label
+     * @return false if the directory is not consistent with the record block
+     */
+    private boolean splitByDirectory(RecordLabel label) {
+        int base = label.getBaseAddressOfData();
+        int dataFieldLength = label.getDataFieldLength();
+        int startingCharacterPositionLength = label.getStartingCharacterPositionLength();
+        int segmentIdentifierLength = label.getSegmentIdentifierLength();
+        if (base <= RecordLabel.LENGTH || base >= recordLength
+                || record[base - 1] != InformationSeparator.RS
+                || dataFieldLength <= 0 || startingCharacterPositionLength <= 0 || segmentIdentifierLength < 0
+                || SeparatorScanner.indexOfSeparator(record, 0, base - 1) != -1) {
+            return false;
+        }
+        int entrySize = TAG_LENGTH + dataFieldLength + startingCharacterPositionLength + segmentIdentifierLength;
+        if ((base - 1 - RecordLabel.LENGTH) % entrySize != 0) {
+            return false;
+        }
+        addBoundary(base - 1);
+        int expected = base;
+        for (int i = RecordLabel.LENGTH; i < base - 1; i += entrySize) {
+            int l = i + TAG_LENGTH;
+            int length = parseDigits(record, l, dataFieldLength);
+            int start = parseDigits(record, l + dataFieldLength, startingCharacterPositionLength);
+            if (length < 1 || start < 0) {
+                return false;
+            }
+            start += base;
+            int end = start + length - 1;
+            if (start != expected || end >= recordLength - 1 || record[end] != InformationSeparator.RS) {
+                return false;
+            }
+            int pos = start;
+            while ((pos = SeparatorScanner.indexOfSeparator(record, pos, end)) != -1) {
+                addBoundary(pos++);
+            }
+            addBoundary(end);
+            expected = end + 1;
+        }
+        if (expected != recordLength - 1) {
+            return false;
+        }
+        addBoundary(recordLength - 1);
+        return true;
+    }
+
+    private void splitByScanning() {
+        count = 0;
+        int pos = 0;
+        while ((pos = SeparatorScanner.indexOfSeparator(record, pos, recordLength)) != -1) {
+            addBoundary(pos++);
+        }
+    }
+
+    private void addBoundary(int pos) {
+        if (count == boundaries.length) {
+            boundaries = Arrays.copyOf(boundaries, count * 2);
+        }
+        boundaries[count++] = pos;
+    }
+
+    private void switchToFallback(int n) {
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(Arrays.copyOf(record, n)), in);
+        this.fallback = new BufferedSeparatorInputStream(rest, bufferSize);
+        this.relabel = true;
+    }
+
+    private Chunk<byte[], BytesReference> fallbackChunk() throws IOException {
+        Chunk<byte[], BytesReference> chunk = fallback.readChunk();
+        if (chunk != null && relabel) {
+            // the fallback stream starts with a file separator, but we know better
+            chunk = new DefaultChunk(separator, chunk.data());
+            relabel = false;
+        }
+        return chunk;
+    }
+
+    private static boolean isDigits(byte[] b, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (b[i] < '0' || b[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseDigits(byte[] b, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A reader for the bytes of whole ISO 2709 records, without splitting the records into chunks.
+ *
+ * A record is framed by the record length in the first five bytes of the leader, if the record length
+ * is valid and the framed bytes end with a record terminator. Otherwise, the record ends at the next record
+ * terminator. Separators and line feeds between records are skipped.
+ */
+public class RecordInputStream implements Closeable {
+
+    private static final int RECORD_LENGTH_DIGITS = 5;
+
+    private final InputStream in;
+
+    private byte[] buffer;
+
+    private int pos;
+
+    private int limit;
+
+    private boolean eof;
+
+    /**
+     * Create a record input stream.
+     * @param in the underlying input stream
+     * @param bufferSize the initial buffer size, the buffer grows for larger records
+     */
+    public RecordInputStream(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(bufferSize, 1024)];
+    }
+
+    /**
+     * Read the next record.
+     * @return the bytes of the record, including the record terminator if present, or null at the end of the stream
+     * @throws IOException if the record can not be read
+     */
+    public byte[] readRecord() throws IOException {
+        while (true) {
+            while (pos < limit && isSkippable(buffer[pos])) {
+                pos++;
+            }
+            if (pos < limit) {
+                break;
+            }
+            if (!fill()) {
+                return null;
+            }
+        }
+        int length = recordLength();
+        if (length > 0 && available(length) && buffer[pos + length - 1] == InformationSeparator.GS) {
+            return take(length);
+        }
+        int from = pos;
+        int i;
+        while ((i = SeparatorScanner.indexOf(buffer, from, limit, (byte) InformationSeparator.GS)) == -1) {
+            from = limit;
+            int offset = from - pos;
+            if (!fill()) {
+                return take(limit - pos);
+            }
+            from = pos + offset;
+        }
+        return take(i + 1 - pos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int recordLength() throws IOException {
+        if (!available(RECORD_LENGTH_DIGITS)) {
+            return -1;
+        }
+        int length = 0;
+        for (int i = pos; i < pos + RECORD_LENGTH_DIGITS; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            length = length * 10 + digit;
+        }
+        return length;
+    }
+
+    /**
+     * Make sure that a number of bytes is in the buffer.
+     * @return false if the stream ends before
+     */
+    private boolean available(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read more bytes into the buffer, after moving the unread bytes to the beginning of the buffer.
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n == -1) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private byte[] take(int n) {
+        byte[] b = Arrays.copyOfRange(buffer, pos, pos + n);
+        pos += n;
+        return b;
+    }
+
+    private static boolean isSkippable(byte b) {
+        return SeparatorScanner.isSeparator(b) || b == '\n' || b == '\r';
+    }
+}
@@ -18,11 +18,15 @@ package org.xbib.marc.io;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * A string replacing input stream.
+ * A string replacing input stream. Many strings can be replaced in a single pass,
+ * see {@link TokenReplacementInputStream}.
  */
-public class ReplaceStringInputStream extends FixedTokenReplacementInputStream {
+public class ReplaceStringInputStream extends TokenReplacementInputStream {
 
     /**
      * Create string replacing input stream.
@@ -31,27 +35,37 @@ public class ReplaceStringInputStream extends FixedTokenReplacementInputStream {
      * @param fixedValue the fixed value
      */
     public ReplaceStringInputStream(InputStream in, String token, String fixedValue) {
-        super(in, token, new FixedStringValueTokenHandler(fixedValue));
+        this(in, Collections.singletonMap(token, fixedValue));
+    }
+
+    /**
+     * Create string replacing input stream for many strings.
+     * @param in the underlying input stream
+     * @param replacements a map of tokens to their fixed values
+     */
+    public ReplaceStringInputStream(InputStream in, Map<String, String> replacements) {
+        super(in, replacements.keySet(), new MappedStringValueTokenHandler(replacements));
     }
 
     /**
      * The stream token handler for this replacement input stream.
      */
-    private static class FixedStringValueTokenHandler implements StreamTokenHandler {
+    private static class MappedStringValueTokenHandler implements StreamTokenHandler {
 
-        private final String value;
+        private final Map<String, byte[]> values;
 
         /**
          * Create stream token handler.
-         * @param value value
+         * @param replacements the map of tokens to values
          */
-        FixedStringValueTokenHandler(String value) {
-            this.value = value;
+        MappedStringValueTokenHandler(Map<String, String> replacements) {
+            this.values = new HashMap<>();
+            replacements.forEach((k, v) -> values.put(k, v.getBytes(StandardCharsets.ISO_8859_1)));
         }
 
         @Override
         public InputStream processToken(String token) {
-            return new ByteArrayInputStream(value.getBytes(StandardCharsets.ISO_8859_1));
+            return new ByteArrayInputStream(values.get(token));
         }
     }
 }
@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A push parser for information separated data, fed by byte buffer fragments.
+ *
+ * The chunks are the same as the chunks of a {@link BufferedSeparatorInputStream} over the concatenated
+ * fragments, but instead of pulling from a blocking input stream, the caller pushes fragments of any size
+ * by {@link #feed(ByteBuffer)}, for example from a non-blocking channel handler. Each complete chunk is
+ * passed to the chunk listener before {@code feed} returns. Data of an incomplete chunk at the end of
+ * a fragment is kept until the next separator arrives.
+ *
+ * A chunk that lies within a single fragment is passed as a {@link ByteBufferReference} slice of the
+ * fragment, without copying. Chunk data are only valid while the chunk listener is called, because the
+ * fragment may be reused by the caller after {@code feed} returns.
+ *
+ * A feeder keeps the state of one stream and is not thread safe. Many feeders can be driven by a single
+ * thread.
+ */
+public class SeparatorChunkFeeder implements Closeable {
+
+    private final ChunkListener<byte[], BytesReference> listener;
+
+    private final BytesStreamOutput pending;
+
+    private byte[] scratch;
+
+    /**
+     * Trick: first separator emitted will be a file separator.
+     */
+    private char separator = InformationSeparator.FS;
+
+    private boolean closed;
+
+    /**
+     * Create a separator chunk feeder.
+     * @param listener the chunk listener for the complete chunks
+     */
+    public SeparatorChunkFeeder(ChunkListener<byte[], BytesReference> listener) {
+        this(listener, null);
+    }
+
+    /**
+     * Create a separator chunk feeder with the buffer for incomplete chunks from a page recycler.
+     * The pages are given back to the recycler when the feeder is closed.
+     * @param listener the chunk listener for the complete chunks
+     * @param recycler the page recycler, or null
+     */
+    public SeparatorChunkFeeder(ChunkListener<byte[], BytesReference> listener, PageRecycler recycler) {
+        this.listener = listener;
+        this.pending = recycler != null ? new BytesStreamOutput(recycler) : new BytesStreamOutput();
+    }
+
+    /**
+     * Feed a fragment of data. The remaining bytes of the buffer are consumed, and the position
+     * of the buffer is set to its limit.
+     * @param buffer the byte buffer with the fragment
+     * @throws IOException if the feeder is closed or the chunk listener fails
+     */
+    public void feed(ByteBuffer buffer) throws IOException {
+        if (closed) {
+            throw new IOException("feeder is closed");
+        }
+        int begin = buffer.position();
+        int end = buffer.limit();
+        int pos;
+        while ((pos = SeparatorScanner.indexOfSeparator(buffer, begin, end)) != -1) {
+            if (pending.size() == 0) {
+                listener.chunk(new DefaultChunk(separator, new ByteBufferReference(buffer, begin, pos - begin)));
+            } else {
+                append(buffer, begin, pos - begin);
+                listener.chunk(new DefaultChunk(separator, pending.bytes()));
+                pending.reset();
+            }
+            separator = (char) buffer.get(pos);
+            begin = pos + 1;
+        }
+        append(buffer, begin, end - begin);
+        buffer.position(end);
+    }
+
+    /**
+     * Return the number of bytes of the incomplete chunk that waits for its separator.
+     * @return the number of pending bytes
+     */
+    public int getPendingLength() {
+        return pending.size();
+    }
+
+    /**
+     * Close the feeder at the end of the data. Like the buffered stream, data after the last separator
+     * is not a chunk and is discarded.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.release();
+    }
+
+    private void append(ByteBuffer buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (buffer.hasArray()) {
+            pending.write(buffer.array(), buffer.arrayOffset() + offset, length);
+            return;
+        }
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(length, 8192)];
+        }
+        buffer.get(offset, scratch, 0, length);
+        pending.write(scratch, 0, length);
+    }
+}
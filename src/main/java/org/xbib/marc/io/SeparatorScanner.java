@@ -0,0 +1,152 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A scanner for information separators in byte arrays that tests eight bytes at a time
+ * ("SIMD within a register", SWAR).
+ *
+ * The information separators FS, GS, RS, US are the byte values {@code 0x1c} to {@code 0x1f},
+ * so a byte is a separator if and only if its upper six bits are {@code 000111}. Masking the
+ * lower two bits of every byte in a word and comparing against {@code 0x1c} reduces separator
+ * detection to the well-known "has zero byte" test on a long.
+ *
+ * The methods return positions only, the type of the separator is the byte at the position.
+ * No objects are allocated while scanning.
+ */
+public final class SeparatorScanner {
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle BUFFER_LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private static final long SEPARATOR_MASK = 0xfcfcfcfcfcfcfcfcL;
+
+    private static final long SEPARATOR_PATTERN = 0x1c1c1c1c1c1c1c1cL;
+
+    private SeparatorScanner() {
+    }
+
+    /**
+     * Find the first information separator (FS, GS, RS, US) in the given range of a byte array.
+     * @param b the byte array
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @return the position of the first separator, or -1 if there is no separator in the range
+     */
+    public static int indexOfSeparator(byte[] b, int from, int to) {
+        int i = from;
+        int limit = to - Long.BYTES;
+        while (i <= limit) {
+            long word = (long) LONG_VIEW.get(b, i);
+            long found = zeroBytes((word & SEPARATOR_MASK) ^ SEPARATOR_PATTERN);
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            if (isSeparator(b[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first information separator (FS, GS, RS, US) in the given range of a byte buffer.
+     * Positions are absolute, the position and limit of the buffer are not used nor modified.
+     * @param b the byte buffer
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @return the position of the first separator, or -1 if there is no separator in the range
+     */
+    public static int indexOfSeparator(ByteBuffer b, int from, int to) {
+        int i = from;
+        int limit = to - Long.BYTES;
+        while (i <= limit) {
+            long word = (long) BUFFER_LONG_VIEW.get(b, i);
+            long found = zeroBytes((word & SEPARATOR_MASK) ^ SEPARATOR_PATTERN);
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            if (isSeparator(b.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurence of a byte in the given range of a byte array.
+     * @param b the byte array
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @param value the byte to find
+     * @return the position of the byte, or -1 if the byte does not occur in the range
+     */
+    public static int indexOf(byte[] b, int from, int to, byte value) {
+        long pattern = ONES * (value & 0xff);
+        int i = from;
+        int limit = to - Long.BYTES;
+        while (i <= limit) {
+            long word = (long) LONG_VIEW.get(b, i);
+            long found = zeroBytes(word ^ pattern);
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            if (b[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a byte is an information separator.
+     * @param b the byte
+     * @return true if the byte is one of FS, GS, RS, US
+     */
+    public static boolean isSeparator(byte b) {
+        return (b & 0xfc) == 0x1c;
+    }
+
+    /**
+     * Returns a word with the high bit set in the lowest zero byte of the given word. Higher bytes may
+     * show false positives caused by borrows, but the lowest marked byte is always exact,
+     * which is all we need for little-endian scanning.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+}
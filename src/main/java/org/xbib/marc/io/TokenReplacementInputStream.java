@@ -0,0 +1,351 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * A replacement input stream for many fixed tokens.
+ *
+ * All tokens are searched in a single pass by an Aho-Corasick automaton over the bytes of the stream,
+ * where the characters of the tokens are taken as ISO 8859-1 bytes, like in {@link FixedTokenReplacementInputStream}.
+ * A token is replaced as soon as its last byte has been read. If more than one token ends there,
+ * the longest token is replaced. The search continues after the replaced token, and the replacement
+ * is not searched again.
+ *
+ * For each match, the {@link StreamTokenHandler} is called with the matched token, in lower case if the
+ * stream is not case sensitive, and the returned input stream is read instead of the token.
+ *
+ * The stream reads the underlying stream in blocks, there is no per-byte overhead of method calls.
+ */
+public class TokenReplacementInputStream extends FilterInputStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final int ALPHABET = 256;
+
+    private final StreamTokenHandler handler;
+
+    private final String[] tokens;
+
+    private final int[] tokenLength;
+
+    private final byte[] fold;
+
+    /**
+     * The transitions of the automaton, 256 entries for each state.
+     */
+    private final int[] delta;
+
+    /**
+     * The depth of each state, the number of bytes that may be part of a match.
+     */
+    private final int[] depth;
+
+    /**
+     * The index of the longest token that ends in each state, or -1.
+     */
+    private final int[] output;
+
+    private final byte[] single;
+
+    private byte[] buffer;
+
+    private int start;
+
+    private int ready;
+
+    private int pos;
+
+    private int limit;
+
+    private int state;
+
+    private int matched;
+
+    private InputStream value;
+
+    private boolean eof;
+
+    /**
+     * Creates a case-sensitive replacement input stream for many tokens.
+     * @param in the underlying input stream
+     * @param tokens the tokens
+     * @param handler the stream token handler
+     */
+    public TokenReplacementInputStream(InputStream in, Collection<String> tokens, StreamTokenHandler handler) {
+        this(in, tokens, handler, true);
+    }
+
+    /**
+     * Creates a replacement input stream for many tokens.
+     * @param in the underlying input stream
+     * @param tokens the tokens
+     * @param handler the stream token handler
+     * @param caseSensitive true if case sensitive, false if not
+     */
+    public TokenReplacementInputStream(InputStream in, Collection<String> tokens, StreamTokenHandler handler,
+                                       boolean caseSensitive) {
+        super(in);
+        this.handler = handler;
+        this.fold = new byte[ALPHABET];
+        for (int i = 0; i < ALPHABET; i++) {
+            char ch = caseSensitive ? (char) i : Character.toLowerCase((char) i);
+            fold[i] = (byte) (ch < ALPHABET ? ch : i);
+        }
+        this.tokens = new String[tokens.size()];
+        this.tokenLength = new int[tokens.size()];
+        int maxLength = 0;
+        int size = 1;
+        int i = 0;
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                throw new IllegalArgumentException("empty token");
+            }
+            this.tokens[i] = caseSensitive ? token : toLowerCase(token);
+            this.tokenLength[i] = token.length();
+            maxLength = Math.max(maxLength, token.length());
+            size += token.length();
+            i++;
+        }
+        this.delta = new int[size * ALPHABET];
+        this.depth = new int[size];
+        this.output = new int[size];
+        build(size);
+        this.buffer = new byte[Math.max(DEFAULT_BUFFER_SIZE, 2 * maxLength)];
+        this.single = new byte[1];
+        this.matched = -1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (value != null) {
+                int r = value.read(b, off + n, len - n);
+                if (r == -1) {
+                    value.close();
+                    value = null;
+                } else {
+                    n += r;
+                }
+                continue;
+            }
+            if (start < ready) {
+                int k = Math.min(ready - start, len - n);
+                System.arraycopy(buffer, start, b, off + n, k);
+                start += k;
+                n += k;
+                continue;
+            }
+            if (matched != -1) {
+                // skip the token, read the replacement
+                value = handler.processToken(tokens[matched]);
+                start = ready + tokenLength[matched];
+                ready = start;
+                matched = -1;
+                continue;
+            }
+            if (pos == limit) {
+                if (n > 0) {
+                    // do not block while we have something to return
+                    break;
+                }
+                if (!fill()) {
+                    // end of stream, the bytes of a partial match are no match
+                    state = 0;
+                    ready = limit;
+                    if (start == ready) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+            scan();
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] b = new byte[DEFAULT_BUFFER_SIZE];
+        long remaining = n;
+        while (remaining > 0) {
+            int r = read(b, 0, (int) Math.min(b.length, remaining));
+            if (r == -1) {
+                break;
+            }
+            remaining -= r;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return ready - start;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (value != null) {
+            value.close();
+        }
+        super.close();
+    }
+
+    private void scan() {
+        int s = state;
+        int p = pos;
+        while (p < limit) {
+            s = delta[s * ALPHABET + (fold[buffer[p++] & 0xff] & 0xff)];
+            if (output[s] != -1) {
+                matched = output[s];
+                ready = p - tokenLength[matched];
+                pos = p;
+                state = 0;
+                return;
+            }
+        }
+        pos = p;
+        state = s;
+        ready = p - depth[s];
+    }
+
+    /**
+     * Move the bytes that are not emitted yet to the front of the buffer and read more bytes.
+     * @return false if the end of the underlying stream has been reached
+     * @throws IOException if the underlying stream can not be read
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            pos -= start;
+            ready -= start;
+            start = 0;
+        }
+        int r = in.read(buffer, limit, buffer.length - limit);
+        if (r == -1) {
+            eof = true;
+            return false;
+        }
+        limit += r;
+        return true;
+    }
+
+    private void build(int size) {
+        Arrays.fill(delta, -1);
+        Arrays.fill(output, -1);
+        int states = 1;
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            int s = 0;
+            boolean matchable = true;
+            for (int j = 0; j < token.length(); j++) {
+                char ch = token.charAt(j);
+                if (ch >= ALPHABET) {
+                    // can never match a byte
+                    matchable = false;
+                    break;
+                }
+                int c = fold[ch] & 0xff;
+                int next = delta[s * ALPHABET + c];
+                if (next == -1) {
+                    next = states++;
+                    delta[s * ALPHABET + c] = next;
+                    depth[next] = depth[s] + 1;
+                }
+                s = next;
+            }
+            if (matchable && output[s] == -1) {
+                output[s] = i;
+            }
+        }
+        // breadth-first construction of failure transitions
+        int[] fail = new int[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = delta[c];
+            if (next == -1) {
+                delta[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int r = queue.poll();
+            if (output[r] == -1) {
+                output[r] = output[fail[r]];
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = delta[r * ALPHABET + c];
+                if (next == -1) {
+                    delta[r * ALPHABET + c] = delta[fail[r] * ALPHABET + c];
+                } else {
+                    fail[next] = delta[fail[r] * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static String toLowerCase(String token) {
+        char[] chars = token.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
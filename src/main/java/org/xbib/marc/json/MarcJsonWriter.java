@@ -19,6 +19,8 @@ import org.xbib.marc.Marc;
 import org.xbib.marc.MarcField;
 import org.xbib.marc.MarcListener;
 import org.xbib.marc.MarcRecord;
+import org.xbib.marc.io.BlockCompressedOutputStream;
+import org.xbib.marc.io.ParallelGzipOutputStream;
 import org.xbib.marc.label.RecordLabel;
 import org.xbib.marc.transformer.value.MarcValueTransformers;
 import org.xbib.marc.xml.MarcContentHandler;
@@ -40,13 +42,13 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Deflater;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * This Marc Writer is a MarcContentHandler that writes Marc events to JSON.
@@ -65,6 +67,8 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
 
     private final Lock lock;
 
+    private final ThreadLocal<StringBuilder> recordBuffer = ThreadLocal.withInitial(StringBuilder::new);
+
     private Writer writer;
 
     private JsonBuilder jsonBuilder;
@@ -87,10 +91,20 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
 
     private boolean compress;
 
+    private int compressionLevel;
+
+    private int compressionBlockSize;
+
+    private Executor compressionExecutor;
+
+    private BlockCompressedOutputStream blockCompressedOutputStream;
+
     private String index;
 
     private String indexType;
 
+    private boolean recordBuffering;
+
     /**
      * Flag for indicating if writer is at top of file.
      */
@@ -124,10 +138,44 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         this.style = EnumSet.of(Style.LINES);
     }
 
+    /**
+     * Create a MarcJsonWriter in "split writer" mode.
+     * If compress is true and the file name pattern ends with {@link BlockCompressedOutputStream#FILE_EXTENSION},
+     * the files are written as block-compressed containers with a sidecar index, otherwise they are gzipped.
+     * In block-compressed containers, each line of the JSON lines styles is terminated by a line separator,
+     * so records can be sought by counting lines.
+     * @param fileNamePattern the file name pattern
+     * @param splitlimit split write limit
+     * @param bufferSize the buffer size
+     * @param compress if true, compress the output
+     * @throws IOException if writer can not be created
+     */
     public MarcJsonWriter(String fileNamePattern,
                           int splitlimit,
                           int bufferSize, boolean compress)
             throws IOException {
+        this(fileNamePattern, splitlimit, bufferSize, compress, Deflater.BEST_COMPRESSION, 0, null);
+    }
+
+    /**
+     * Create a MarcJsonWriter in "split writer" mode with compression settings.
+     * @param fileNamePattern the file name pattern
+     * @param splitlimit split write limit
+     * @param bufferSize the buffer size
+     * @param compress if true, compress the output
+     * @param compressionLevel the compression level, from 0 to 9, or -1 for the default compression
+     * @param compressionBlockSize the number of uncompressed bytes in a compressed block, or 0 for the default
+     * @param compressionExecutor the executor for compressing gzip blocks, or null for the shared worker pool
+     * @throws IOException if writer can not be created
+     */
+    public MarcJsonWriter(String fileNamePattern,
+                          int splitlimit,
+                          int bufferSize, boolean compress,
+                          int compressionLevel, int compressionBlockSize, Executor compressionExecutor)
+            throws IOException {
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockSize = compressionBlockSize;
+        this.compressionExecutor = compressionExecutor;
         this.fileNameCounter = new AtomicInteger(0);
         this.fileNamePattern = fileNamePattern;
         this.splitlimit = splitlimit;
@@ -159,6 +207,20 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         return this;
     }
 
+    /**
+     * Encode records given to {@link #record(MarcRecord)} into a buffer of the calling thread, and hold the
+     * writer lock only while the encoded record is appended. Concurrent producers no longer wait for each other
+     * while their records are encoded. The output is the same as without buffering.
+     * Records in the styles {@link Style#ALLOW_DUPLICATES} and {@link Style#EMBEDDED_RECORD}
+     * are written under the lock as before.
+     * @param recordBuffering true if records should be encoded into per-thread buffers
+     * @return this writer
+     */
+    public MarcJsonWriter setRecordBuffering(boolean recordBuffering) {
+        this.recordBuffering = recordBuffering;
+        return this;
+    }
+
     @Override
     public MarcJsonWriter setMarcListener(MarcListener listener) {
         super.setMarcListener(listener);
@@ -236,13 +298,26 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         }
         // do not call super method in MarcContentHandler, it branches to the field methods and this
         // would confuse us. Plus, we have our own locking here on record level.
+        String json;
+        try {
+            json = encodeBuffered(marcRecord);
+        } catch (Exception e) {
+            handleException(new IOException(e));
+            return;
+        }
         lock.lock();
         try {
-            if (style.contains(Style.ALLOW_DUPLICATES)) {
+            if (json != null) {
+                writeRecordSeparator(marcRecord);
+                writer.write(json);
+            } else if (style.contains(Style.ALLOW_DUPLICATES)) {
                 writeWithDuplicateKeys(marcRecord);
             } else {
                 writeUnderlyingMap(marcRecord);
             }
+            if (blockCompressedOutputStream != null) {
+                endBlockRecord(marcRecord);
+            }
             recordCounter.incrementAndGet();
             afterRecord();
         } catch (Exception e) {
@@ -252,6 +327,25 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         }
     }
 
+    /**
+     * Encode a record outside of the writer lock, into the string builder of the current thread,
+     * if record buffering is enabled. Records with duplicate keys and embedded records are written
+     * by the JSON builder of this writer and can not be encoded in advance.
+     *
+     * @param marcRecord the MARC record
+     * @return the encoded record, or null if the record must be written under the lock
+     */
+    private String encodeBuffered(MarcRecord marcRecord) {
+        if (!recordBuffering || marcRecord.isEmpty()
+                || style.contains(Style.ALLOW_DUPLICATES) || style.contains(Style.EMBEDDED_RECORD)) {
+            return null;
+        }
+        StringBuilder sb = recordBuffer.get();
+        sb.setLength(0);
+        encodeUnderlyingMap(marcRecord, sb);
+        return sb.toString();
+    }
+
     @Override
     public void endRecord() {
         if (format != null) {
@@ -273,7 +367,7 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
                 handleException(e);
             }
         }
-        if (style.contains(Style.ELASTICSEARCH_BULK)) {
+        if (style.contains(Style.ELASTICSEARCH_BULK) && blockCompressedOutputStream == null) {
             // finish with line-feed "\n", not with System.lineSeparator() !!!
             try {
                 writer.write("\n");
@@ -374,11 +468,26 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
      * @param marcRecord the MARC record
      * @throws IOException if writing fails
      */
-    @SuppressWarnings("unchecked")
     private void writeUnderlyingMap(MarcRecord marcRecord) throws IOException {
         if (marcRecord.isEmpty()) {
             return;
         }
+        writeRecordSeparator(marcRecord);
+        StringBuilder sb = new StringBuilder();
+        encodeUnderlyingMap(marcRecord, sb);
+        if (style.contains(Style.EMBEDDED_RECORD)) {
+            jsonBuilder.patchOpenMapState();
+        }
+        writer.write(sb.toString());
+    }
+
+    /**
+     * Write the separator before a record, and the metadata line in Elasticsearch bulk style.
+     *
+     * @param marcRecord the MARC record
+     * @throws IOException if writing fails
+     */
+    private void writeRecordSeparator(MarcRecord marcRecord) throws IOException {
         if (top) {
             top = false;
             if (style.contains(Style.ELASTICSEARCH_BULK)) {
@@ -394,7 +503,16 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
                 writeMetaDataLine(marcRecord);
             }
         }
-        StringBuilder sb = new StringBuilder();
+    }
+
+    /**
+     * Encode a MARC record from the underlying map as key-oriented JSON.
+     *
+     * @param marcRecord the MARC record
+     * @param sb the string builder for the JSON
+     */
+    @SuppressWarnings("unchecked")
+    private void encodeUnderlyingMap(MarcRecord marcRecord, StringBuilder sb) {
         if (!style.contains(Style.EMBEDDED_RECORD)) {
             sb.append("{");
         }
@@ -521,10 +639,7 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         }
         if (!style.contains(Style.EMBEDDED_RECORD)) {
             sb.append('}');
-        } else {
-            jsonBuilder.patchOpenMapState();
         }
-        writer.write(sb.toString());
     }
 
     public Exception getException() {
@@ -562,13 +677,35 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         }
     }
 
+    /**
+     * Mark the end of a record in a block-compressed container. Lines are terminated here, and not separated
+     * before the next record, so a block never ends in the middle of a line.
+     */
+    private void endBlockRecord(MarcRecord marcRecord) throws IOException {
+        if (!marcRecord.isEmpty() && (style.contains(Style.LINES) || style.contains(Style.ELASTICSEARCH_BULK))) {
+            writer.write(System.lineSeparator());
+            top = true;
+        }
+        writer.flush();
+        blockCompressedOutputStream.endRecord();
+    }
+
     private void newWriter(String fileNamePattern, AtomicInteger fileNameCounter,
                            int bufferSize, boolean compress) throws IOException {
         String name = String.format(fileNamePattern, fileNameCounter.getAndIncrement());
+        if (compress && BlockCompressedOutputStream.isBlockCompressed(name)) {
+            blockCompressedOutputStream = BlockCompressedOutputStream.create(Paths.get(name), compressionLevel,
+                    compressionBlockSize > 0 ? compressionBlockSize : BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE);
+            writer = new OutputStreamWriter(blockCompressedOutputStream, StandardCharsets.UTF_8);
+            jsonBuilder = new JsonBuilder(writer);
+            return;
+        }
         OutputStream out = Files.newOutputStream(Paths.get(name), StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING);
         writer = new OutputStreamWriter(compress ?
-                new CompressedOutputStream(out, bufferSize) :
+                new ParallelGzipOutputStream(out, compressionLevel,
+                        compressionBlockSize > 0 ? compressionBlockSize : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE,
+                        compressionExecutor) :
                 new BufferedOutputStream(out, bufferSize), StandardCharsets.UTF_8);
         //jsonWriter = new JsonWriter(writer);
         jsonBuilder = new JsonBuilder(writer);
@@ -640,15 +777,4 @@ public class MarcJsonWriter extends MarcContentHandler implements Flushable, Clo
         ALLOW_DUPLICATES,
         EMBEDDED_RECORD
     }
-
-    /**
-     * A GZIP output stream, modified for best compression.
-     */
-    private static class CompressedOutputStream extends GZIPOutputStream {
-
-        CompressedOutputStream(OutputStream out, int size) throws IOException {
-            super(out, size, true);
-            def.setLevel(Deflater.BEST_COMPRESSION);
-        }
-    }
 }
@@ -0,0 +1,723 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.xml;
+
+import org.xbib.marc.MarcField;
+import org.xbib.marc.MarcListener;
+import org.xbib.marc.MarcRecord;
+import org.xbib.marc.MarcRecordListener;
+import org.xbib.marc.io.BlockCompressedOutputStream;
+import org.xbib.marc.io.ParallelGzipOutputStream;
+import org.xbib.marc.label.RecordLabel;
+import org.xbib.marc.transformer.value.MarcValueTransformers;
+
+import javax.xml.XMLConstants;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/**
+ * This MarcXchange writer writes MarcXchange events as UTF-8 bytes directly into a buffer, without StaX events.
+ * Element and attribute names are pre-encoded, and values are escaped by table lookup while they are encoded.
+ * Default output format is MarcXchange.
+ *
+ * The output is equivalent to the output of {@link MarcXchangeWriter}, but the attributes are written in
+ * document order, and characters that are not allowed in XML 1.0 are replaced by the replacement character
+ * {@code U+FFFD}, so the output is always well-formed.
+ */
+@SuppressWarnings("this-escape")
+public class DirectMarcXchangeWriter extends MarcContentHandler implements Flushable, Closeable {
+
+    private static final Logger logger = Logger.getLogger(DirectMarcXchangeWriter.class.getName());
+
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private static final byte[] LINE_SEPARATOR = bytes(System.lineSeparator());
+
+    private static final byte[] XML_DECLARATION = bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+
+    private static final byte[] COLLECTION_START = bytes("<" + COLLECTION);
+
+    private static final byte[] COLLECTION_END = bytes("</" + COLLECTION + ">");
+
+    private static final byte[] RECORD_START = bytes("<" + RECORD);
+
+    private static final byte[] RECORD_END = bytes("</" + RECORD + ">");
+
+    private static final byte[] LEADER_START = bytes("<" + LEADER + ">");
+
+    private static final byte[] LEADER_END = bytes("</" + LEADER + ">");
+
+    private static final byte[] CONTROLFIELD_START = bytes("<" + CONTROLFIELD + " " + TAG_ATTRIBUTE + "=\"");
+
+    private static final byte[] CONTROLFIELD_END = bytes("</" + CONTROLFIELD + ">");
+
+    private static final byte[] DATAFIELD_START = bytes("<" + DATAFIELD + " " + TAG_ATTRIBUTE + "=\"");
+
+    private static final byte[] IND1_ATTRIBUTE = bytes("\" " + IND_ATTRIBUTE + "1=\"");
+
+    private static final byte[] IND2_ATTRIBUTE = bytes("\" " + IND_ATTRIBUTE + "2=\"");
+
+    private static final byte[] DATAFIELD_END = bytes("</" + DATAFIELD + ">");
+
+    private static final byte[] SUBFIELD_START = bytes("<" + SUBFIELD + " " + CODE_ATTRIBUTE + "=\"");
+
+    private static final byte[] BLANK_SUBFIELD_START = bytes("<" + SUBFIELD + " " + CODE_ATTRIBUTE + "=\" \">");
+
+    private static final byte[] SUBFIELD_END = bytes("</" + SUBFIELD + ">");
+
+    private static final byte[] FORMAT_ATTRIBUTE_START = bytes(" " + FORMAT_ATTRIBUTE + "=\"");
+
+    private static final byte[] TYPE_ATTRIBUTE_START = bytes(" " + TYPE_ATTRIBUTE + "=\"");
+
+    private static final byte[] ATTRIBUTE_END = bytes("\"");
+
+    private static final byte[] START_TAG_END = bytes("\">");
+
+    private static final byte[] GT = bytes(">");
+
+    private static final byte[] REPLACEMENT = bytes("\ufffd");
+
+    /**
+     * The escapes for character data, by ASCII character. A null entry means the character is copied.
+     */
+    private static final byte[][] TEXT_ESCAPES = new byte[128][];
+
+    /**
+     * The escapes for attribute values, by ASCII character. A null entry means the character is copied.
+     */
+    private static final byte[][] ATTRIBUTE_ESCAPES = new byte[128][];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            if (c != '\t' && c != '\n' && c != '\r') {
+                TEXT_ESCAPES[c] = REPLACEMENT;
+            }
+        }
+        TEXT_ESCAPES['&'] = bytes("&amp;");
+        TEXT_ESCAPES['<'] = bytes("&lt;");
+        TEXT_ESCAPES['>'] = bytes("&gt;");
+        System.arraycopy(TEXT_ESCAPES, 0, ATTRIBUTE_ESCAPES, 0, TEXT_ESCAPES.length);
+        ATTRIBUTE_ESCAPES['"'] = bytes("&quot;");
+        // keep white space in attribute values from normalization
+        ATTRIBUTE_ESCAPES['\t'] = bytes("&#9;");
+        ATTRIBUTE_ESCAPES['\n'] = bytes("&#10;");
+        ATTRIBUTE_ESCAPES['\r'] = bytes("&#13;");
+    }
+
+    private final Lock lock;
+
+    private final boolean indent;
+
+    private final byte[] namespaceDeclaration;
+
+    private OutputStream out;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean wroteMarkup;
+
+    private boolean namespaceWritten;
+
+    private Exception exception;
+
+    private boolean documentStarted;
+
+    private boolean collectionStarted;
+
+    private boolean recordStarted;
+
+    private boolean recordHasChildren;
+
+    private boolean fatalErrors;
+
+    private boolean schemaWritten;
+
+    private String fileNamePattern;
+
+    private AtomicInteger fileNameCounter;
+
+    private int splitlimit;
+
+    private boolean compress;
+
+    private int compressionLevel;
+
+    private int compressionBlockSize;
+
+    private Executor compressionExecutor;
+
+    private BlockCompressedOutputStream blockCompressedOutputStream;
+
+    private boolean isClosed;
+
+    /**
+     * Create a MarcXchange writer on an underlying output stream.
+     * @param out the underlying output stream
+     */
+    public DirectMarcXchangeWriter(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * Create a MarcXchange writer on an underlying output stream.
+     * @param out the underlying output stream
+     * @param indent if true, indent MarcXchange output
+     */
+    public DirectMarcXchangeWriter(OutputStream out, boolean indent) {
+        this(out, indent, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a MarcXchange writer on an underlying output stream.
+     * @param out the underlying output stream
+     * @param indent if true, indent MarcXchange output
+     * @param bufferSize the buffer size
+     */
+    public DirectMarcXchangeWriter(OutputStream out, boolean indent, int bufferSize) {
+        this.out = out;
+        this.indent = indent;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.lock = new ReentrantLock();
+        this.namespaceDeclaration = bytes(" xmlns=\"" + getNamespaceUri() + "\"");
+    }
+
+    /**
+     * Create a MarcXchange writer in "split writer" mode.
+     * @param fileNamePattern file name pattern
+     * @param splitlimit split write limit. Split records if configured. A splitlimit of -1 prevents splitting.
+     * @param bufferSize buffer size
+     * @param compress if true, compress MarcXchange output. If the file name pattern ends with
+     * {@link BlockCompressedOutputStream#FILE_EXTENSION}, the files are written as block-compressed containers
+     * with a sidecar index, otherwise they are gzipped.
+     * @param indent if true, indent MarcXchange output
+     * @throws IOException if writer can not be created
+     */
+    public DirectMarcXchangeWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress,
+                                   boolean indent) throws IOException {
+        this(fileNamePattern, splitlimit, bufferSize, compress, indent, Deflater.BEST_COMPRESSION, 0, null);
+    }
+
+    /**
+     * Create a MarcXchange writer in "split writer" mode with compression settings.
+     * @param fileNamePattern file name pattern
+     * @param splitlimit split write limit. Split records if configured. A splitlimit of -1 prevents splitting.
+     * @param bufferSize buffer size
+     * @param compress if true, compress MarcXchange output
+     * @param indent if true, indent MarcXchange output
+     * @param compressionLevel the compression level, from 0 to 9, or -1 for the default compression
+     * @param compressionBlockSize the number of uncompressed bytes in a compressed block, or 0 for the default
+     * @param compressionExecutor the executor for compressing gzip blocks, or null for the shared worker pool
+     * @throws IOException if writer can not be created
+     */
+    public DirectMarcXchangeWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress,
+                                   boolean indent, int compressionLevel, int compressionBlockSize,
+                                   Executor compressionExecutor) throws IOException {
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockSize = compressionBlockSize;
+        this.compressionExecutor = compressionExecutor;
+        this.fileNameCounter = new AtomicInteger(0);
+        this.fileNamePattern = fileNamePattern;
+        this.splitlimit = splitlimit;
+        this.compress = compress;
+        this.indent = indent;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.lock = new ReentrantLock();
+        this.namespaceDeclaration = bytes(" xmlns=\"" + getNamespaceUri() + "\"");
+        newOut(fileNamePattern, fileNameCounter, bufferSize, compress);
+    }
+
+    @Override
+    public DirectMarcXchangeWriter setFormat(String format) {
+        return this;
+    }
+
+    @Override
+    public DirectMarcXchangeWriter setType(String type) {
+        super.setType(type);
+        return this;
+    }
+
+    @Override
+    public DirectMarcXchangeWriter setMarcValueTransformers(MarcValueTransformers marcValueTransformers) {
+        super.setMarcValueTransformers(marcValueTransformers);
+        return this;
+    }
+
+    public DirectMarcXchangeWriter setFatalErrors(boolean fatalErrors) {
+        this.fatalErrors = fatalErrors;
+        return this;
+    }
+
+    @Override
+    public DirectMarcXchangeWriter setMarcListener(MarcListener listener) {
+        super.setMarcListener(listener);
+        return this;
+    }
+
+    @Override
+    public DirectMarcXchangeWriter setMarcRecordListener(MarcRecordListener recordListener) {
+        super.setMarcRecordListener(recordListener);
+        return this;
+    }
+
+    @Override
+    public void startDocument() {
+        if (exception != null) {
+            return;
+        }
+        try {
+            if (!documentStarted) {
+                write(XML_DECLARATION);
+                wroteMarkup = true;
+                documentStarted = true;
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void endDocument() {
+        if (exception != null) {
+            return;
+        }
+        documentStarted = false;
+    }
+
+    @Override
+    public void beginCollection() {
+        super.beginCollection();
+        if (exception != null) {
+            return;
+        }
+        try {
+            if (!collectionStarted) {
+                indent(0);
+                write(COLLECTION_START);
+                writeNamespace();
+                writeSchema();
+                write(GT);
+                wroteMarkup = true;
+                collectionStarted = true;
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void beginRecord(String format, String type) {
+        super.beginRecord(format, type);
+        if (exception != null) {
+            return;
+        }
+        try {
+            if (!recordStarted) {
+                indent(recordLevel());
+                write(RECORD_START);
+                writeNamespace();
+                if (createFormatAttribute()) {
+                    String realformat = getFormat() != null ? getFormat() : format != null ? format : getDefaultFormat();
+                    write(FORMAT_ATTRIBUTE_START);
+                    writeEscaped(realformat, ATTRIBUTE_ESCAPES);
+                    write(ATTRIBUTE_END);
+                }
+                if (createTypeAttribute()) {
+                    String realtype = getType() != null ? getType() : type != null ? type : getDefaultType();
+                    write(TYPE_ATTRIBUTE_START);
+                    writeEscaped(realtype, ATTRIBUTE_ESCAPES);
+                    write(ATTRIBUTE_END);
+                }
+                writeSchema();
+                write(GT);
+                wroteMarkup = true;
+                recordStarted = true;
+                recordHasChildren = false;
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void leader(RecordLabel label) {
+        super.leader(label);
+        if (exception != null) {
+            return;
+        }
+        if (label == null) {
+            return;
+        }
+        try {
+            RecordLabel recordLabel = RecordLabel.builder()
+                    .from(label)
+                    .setRecordLength(0) // reset record length, does not make sense in XML
+                    .build();
+            indent(recordLevel() + 1);
+            write(LEADER_START);
+            writeEscaped(recordLabel.toString(), TEXT_ESCAPES);
+            write(LEADER_END);
+            recordHasChildren = true;
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void field(MarcField field) {
+        super.field(field);
+        if (exception != null) {
+            return;
+        }
+        try {
+            int level = recordLevel() + 1;
+            if (field.isControl()) {
+                String value = field.recoverControlFieldValue();
+                if (value != null && !value.isEmpty()) {
+                    indent(level);
+                    write(CONTROLFIELD_START);
+                    writeEscaped(transform(field.getTag()), ATTRIBUTE_ESCAPES);
+                    write(START_TAG_END);
+                    writeEscaped(transform(value), TEXT_ESCAPES);
+                    write(CONTROLFIELD_END);
+                    recordHasChildren = true;
+                }
+            } else if (!field.isEmpty()) {
+                String indicator = field.getIndicator();
+                String ind1 = indicator != null && indicator.length() > 0 ? indicator.substring(0, 1) : " ";
+                String ind2 = indicator != null && indicator.length() > 1 ? indicator.substring(1, 2) : " ";
+                indent(level);
+                write(DATAFIELD_START);
+                writeEscaped(transform(field.getTag()), ATTRIBUTE_ESCAPES);
+                // not full MarcXchange indicators
+                write(IND1_ATTRIBUTE);
+                writeEscaped(transform(ind1), ATTRIBUTE_ESCAPES);
+                write(IND2_ATTRIBUTE);
+                writeEscaped(transform(ind2), ATTRIBUTE_ESCAPES);
+                write(START_TAG_END);
+                recordHasChildren = true;
+                boolean hasChildren = false;
+                for (MarcField.Subfield subfield : field.getSubfields()) {
+                    String value = subfield.getValue();
+                    // we skip null values, like the StaX writer.
+                    // we do not skip empty values because of subfield ID transport in MAB or UNIMARC.
+                    if (value == null) {
+                        continue;
+                    }
+                    String code = subfield.getId();
+                    // A subfield ID of length 0 will be substituted by blank (" "), see MarcXchangeWriter
+                    if (code.isEmpty()) {
+                        code = " ";
+                    }
+                    indent(level + 1);
+                    write(SUBFIELD_START);
+                    writeEscaped(transform(code), ATTRIBUTE_ESCAPES);
+                    write(START_TAG_END);
+                    writeEscaped(transform(value), TEXT_ESCAPES);
+                    write(SUBFIELD_END);
+                    hasChildren = true;
+                }
+                String value = field.getValue();
+                if (value != null && !value.isEmpty()) {
+                    // if we have data in a datafield, create subfield blank (" ") with data
+                    indent(level + 1);
+                    write(BLANK_SUBFIELD_START);
+                    writeEscaped(transform(value), TEXT_ESCAPES);
+                    write(SUBFIELD_END);
+                    hasChildren = true;
+                }
+                if (hasChildren) {
+                    indent(level);
+                }
+                write(DATAFIELD_END);
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void endRecord() {
+        super.endRecord();
+        if (exception != null) {
+            return;
+        }
+        try {
+            if (recordStarted) {
+                if (recordHasChildren) {
+                    indent(recordLevel());
+                }
+                write(RECORD_END);
+                if (blockCompressedOutputStream != null) {
+                    flushBuffer();
+                    blockCompressedOutputStream.endRecord();
+                }
+                afterRecord();
+                recordStarted = false;
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void endCollection() {
+        super.endCollection();
+        if (exception != null) {
+            return;
+        }
+        try {
+            if (collectionStarted) {
+                indent(0);
+                write(COLLECTION_END);
+                collectionStarted = false;
+            }
+            flush();
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    @Override
+    public void record(MarcRecord marcRecord) {
+        if (exception != null) {
+            return;
+        }
+        lock.lock();
+        try {
+            super.record(marcRecord);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        flushBuffer();
+        out.close();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    protected String getNamespaceUri() {
+        return MARCXCHANGE_V2_NS_URI;
+    }
+
+    protected String getSchemaLocation() {
+        return MARCXCHANGE_V2_0_SCHEMA_LOCATION;
+    }
+
+    protected boolean createFormatAttribute() {
+        return true;
+    }
+
+    protected boolean createTypeAttribute() {
+        return true;
+    }
+
+    /**
+     * Return the indentation level of the record element.
+     */
+    private int recordLevel() {
+        return collectionStarted ? 1 : 0;
+    }
+
+    /**
+     * Declare the namespace at the first element of the output.
+     */
+    private void writeNamespace() throws IOException {
+        if (!namespaceWritten) {
+            write(namespaceDeclaration);
+            namespaceWritten = true;
+        }
+    }
+
+    /**
+     * Write the schema location at the first element of the output.
+     */
+    private void writeSchema() throws IOException {
+        if (!schemaWritten) {
+            write(bytes(" xmlns:xsi=\"" + XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI + "\"" +
+                    " xsi:schemaLocation=\"" + getNamespaceUri() + " " + getSchemaLocation() + "\""));
+            schemaWritten = true;
+        }
+    }
+
+    /**
+     * Like the indenting XML event writer, start elements on a new line, except the first element.
+     */
+    private void indent(int level) throws IOException {
+        if (!indent || !wroteMarkup) {
+            return;
+        }
+        write(LINE_SEPARATOR);
+        for (int i = 0; i < level; i++) {
+            ensureCapacity(2);
+            buffer[count++] = ' ';
+            buffer[count++] = ' ';
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Encode a value as UTF-8 into the buffer. ASCII characters are looked up in an escape table, and copied
+     * if there is no escape. Characters outside of XML 1.0 are replaced.
+     */
+    private void writeEscaped(String value, byte[][] escapes) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            // the longest escape is six bytes
+            ensureCapacity(6);
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                byte[] escape = escapes[c];
+                if (escape == null) {
+                    buffer[count++] = (byte) c;
+                } else {
+                    System.arraycopy(escape, 0, buffer, count, escape.length);
+                    count += escape.length;
+                }
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xc0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xf0 | (cp >> 18));
+                buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c) || c == '\ufffe' || c == '\uffff') {
+                System.arraycopy(REPLACEMENT, 0, buffer, count, REPLACEMENT.length);
+                count += REPLACEMENT.length;
+            } else {
+                buffer[count++] = (byte) (0xe0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Split records if configured. A splitlimit of -1 prevents splitting.
+     */
+    private void afterRecord() {
+        if (fileNamePattern != null) {
+            if (splitlimit != -1) {
+                if (getRecordCounter() % splitlimit == 0) {
+                    try {
+                        endCollection();
+                        endDocument();
+                        close();
+                        newOut(fileNamePattern, fileNameCounter, buffer.length, compress);
+                        startDocument();
+                        beginCollection();
+                    } catch (IOException e) {
+                        logger.log(Level.SEVERE, e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void newOut(String fileNamePattern, AtomicInteger fileNameCounter, int bufferSize, boolean compress)
+            throws IOException {
+        String name = String.format(fileNamePattern, fileNameCounter.getAndIncrement());
+        // every file declares the namespace and the schema
+        wroteMarkup = false;
+        namespaceWritten = false;
+        schemaWritten = false;
+        isClosed = false;
+        if (compress && BlockCompressedOutputStream.isBlockCompressed(name)) {
+            blockCompressedOutputStream = BlockCompressedOutputStream.create(Paths.get(name), compressionLevel,
+                    compressionBlockSize > 0 ? compressionBlockSize : BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE);
+            out = blockCompressedOutputStream;
+            return;
+        }
+        OutputStream outputStream = Files.newOutputStream(Paths.get(name), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out = compress ? new ParallelGzipOutputStream(outputStream, compressionLevel,
+                compressionBlockSize > 0 ? compressionBlockSize : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE,
+                compressionExecutor) : outputStream;
+    }
+
+    private String transform(String value) {
+        return marcValueTransformers != null ? marcValueTransformers.transform(value) : value;
+    }
+
+    private void handleException(IOException e) {
+        exception = e;
+        if (fatalErrors) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * A MarcXML writer that writes UTF-8 bytes directly, like {@link DirectMarcXchangeWriter}.
+ */
+public class DirectMarcXmlWriter extends DirectMarcXchangeWriter {
+
+    /**
+     * Create a MarcXML writer on an underlying output stream.
+     * @param out the underlying output stream
+     */
+    public DirectMarcXmlWriter(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Create a MarcXML writer on an underlying output stream.
+     * @param out the underlying output stream
+     * @param indent if true, indent MarcXML output
+     */
+    public DirectMarcXmlWriter(OutputStream out, boolean indent) {
+        super(out, indent);
+    }
+
+    /**
+     * Create a MarcXML writer on an underlying output stream.
+     * @param out the underlying output stream
+     * @param indent if true, indent MarcXML output
+     * @param bufferSize the buffer size
+     */
+    public DirectMarcXmlWriter(OutputStream out, boolean indent, int bufferSize) {
+        super(out, indent, bufferSize);
+    }
+
+    public DirectMarcXmlWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress,
+                               boolean indent) throws IOException {
+        super(fileNamePattern, splitlimit, bufferSize, compress, indent);
+    }
+
+    public DirectMarcXmlWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress,
+                               boolean indent, int compressionLevel, int compressionBlockSize,
+                               Executor compressionExecutor) throws IOException {
+        super(fileNamePattern, splitlimit, bufferSize, compress, indent, compressionLevel, compressionBlockSize,
+                compressionExecutor);
+    }
+
+    @Override
+    protected String getNamespaceUri() {
+        return MARCXML_NS_URI;
+    }
+
+    @Override
+    protected String getSchemaLocation() {
+        return MARCXML_SCHEMA_LOCATION;
+    }
+
+    @Override
+    protected boolean createFormatAttribute() {
+        return false;
+    }
+
+    @Override
+    protected boolean createTypeAttribute() {
+        return false;
+    }
+}
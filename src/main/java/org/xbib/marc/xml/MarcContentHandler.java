@@ -16,9 +16,11 @@
 package org.xbib.marc.xml;
 
 import org.xbib.marc.MarcField;
+import org.xbib.marc.MarcFieldProjection;
 import org.xbib.marc.MarcListener;
 import org.xbib.marc.MarcRecord;
 import org.xbib.marc.MarcRecordListener;
+import org.xbib.marc.MarcSymbolTable;
 import org.xbib.marc.MarcXchangeConstants;
 import org.xbib.marc.MarcXmlConstants;
 import org.xbib.marc.label.RecordLabel;
@@ -93,6 +95,10 @@ public class MarcContentHandler
 
     private boolean disabledControlFields;
 
+    private MarcFieldProjection fieldProjection;
+
+    private boolean skipField;
+
     public MarcContentHandler() {
         this.recordCounter = new AtomicInteger();
         this.stack = new LinkedList<>();
@@ -182,6 +188,17 @@ public class MarcContentHandler
         return this;
     }
 
+    /**
+     * Set a field projection. Unwanted control fields and data fields are skipped by their tag attribute,
+     * before their content is collected.
+     * @param fieldProjection the field projection, or null for all fields
+     * @return this handler
+     */
+    public MarcContentHandler setFieldProjection(MarcFieldProjection fieldProjection) {
+        this.fieldProjection = fieldProjection;
+        return this;
+    }
+
     @Override
     public void beginCollection() {
         // early setup of MARC listener, even before beginRecord(format, type), it works only
@@ -367,18 +384,24 @@ public class MarcContentHandler
                         }
                     }
                 }
+                if (fieldProjection != null && !fieldProjection.includes(tag)) {
+                    skipField = true;
+                    return;
+                }
                 MarcField.Builder builder = MarcField.builder();
                 if (disabledControlFields) {
                     builder.disableControlFields();
                 }
                 builder.tag(tag);
                 if (max > 0) {
-                    builder.indicator(sb.substring(min - 1, max));
+                    builder.indicator(MarcSymbolTable.symbol(sb, min - 1, max));
                 }
                 stack.push(builder);
             }
             case SUBFIELD -> {
-                stack.peek().subfield(atts.getValue(CODE_ATTRIBUTE), null);
+                if (!skipField) {
+                    stack.peek().subfield(atts.getValue(CODE_ATTRIBUTE), null);
+                }
             }
             default -> {
             }
@@ -405,6 +428,10 @@ public class MarcContentHandler
                 leader(RecordLabel.builder().from(content.toString().toCharArray()).build());
             }
             case CONTROLFIELD -> {
+                if (skipField) {
+                    skipField = false;
+                    return;
+                }
                 MarcField marcField = stack.pop().value(content.toString()).build();
                 if (marcValueTransformers != null) {
                     marcField = marcValueTransformers.transformValue(marcField);
@@ -412,6 +439,10 @@ public class MarcContentHandler
                 field(marcField);
             }
             case DATAFIELD -> {
+                if (skipField) {
+                    skipField = false;
+                    return;
+                }
                 MarcField marcField = stack.pop().build();
                 if (marcValueTransformers != null) {
                     marcField = marcValueTransformers.transformValue(marcField);
@@ -419,6 +450,9 @@ public class MarcContentHandler
                 field(marcField);
             }
             case SUBFIELD -> {
+                if (skipField) {
+                    return;
+                }
                 String s = content.toString();
                 stack.peek().subfieldValue(isTrim ? s.trim() : s);
             }
@@ -430,7 +464,9 @@ public class MarcContentHandler
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
         // ignore characters when element has not started
-        if (inelement) {
+        if (skipField) {
+            fieldProjection.skipped(length);
+        } else if (inelement) {
             content.append(ch, start, length);
         }
     }
@@ -16,6 +16,7 @@
 package org.xbib.marc.xml;
 
 import org.xbib.marc.MarcField;
+import org.xbib.marc.MarcFieldProjection;
 import org.xbib.marc.MarcListener;
 import org.xbib.marc.MarcXchangeConstants;
 import org.xbib.marc.label.RecordLabel;
@@ -64,6 +65,10 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
 
     private boolean disabledControlFields;
 
+    private MarcFieldProjection fieldProjection;
+
+    private boolean skipField;
+
     public MarcXchangeEventConsumer() {
         this.stack = new LinkedList<>();
         this.marcListeners = new HashMap<>();
@@ -101,6 +106,17 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
         return this;
     }
 
+    /**
+     * Set a field projection. Unwanted control fields and data fields are skipped by their tag attribute,
+     * before their content is collected.
+     * @param fieldProjection the field projection, or null for all fields
+     * @return this consumer
+     */
+    public MarcXchangeEventConsumer setFieldProjection(MarcFieldProjection fieldProjection) {
+        this.fieldProjection = fieldProjection;
+        return this;
+    }
+
     @Override
     public void beginCollection() {
         if (marcListener != null) {
@@ -213,6 +229,10 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
                     beginRecord(thisformat, thistype);
                 }
                 case CONTROLFIELD, DATAFIELD -> {
+                    if (fieldProjection != null && !fieldProjection.includes(tag)) {
+                        skipField = true;
+                        return;
+                    }
                     MarcField.Builder builder = MarcField.builder();
                     if (disabledControlFields) {
                         builder.disableControlFields();
@@ -224,7 +244,9 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
                     stack.push(builder);
                 }
                 case SUBFIELD -> {
-                    stack.peek().subfield(code, null);
+                    if (!skipField) {
+                        stack.peek().subfield(code, null);
+                    }
                 }
                 default -> {
                 }
@@ -254,13 +276,23 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
                     leader(RecordLabel.builder().from(content.toString().toCharArray()).build());
                 }
                 case CONTROLFIELD -> {
-                    field(transformValue(stack.pop().value(content.toString()).build()));
+                    if (skipField) {
+                        skipField = false;
+                    } else {
+                        field(transformValue(stack.pop().value(content.toString()).build()));
+                    }
                 }
                 case DATAFIELD -> {
-                    field(transformValue(stack.pop().build()));
+                    if (skipField) {
+                        skipField = false;
+                    } else {
+                        field(transformValue(stack.pop().build()));
+                    }
                 }
                 case SUBFIELD -> {
-                    stack.peek().subfieldValue(content.toString());
+                    if (!skipField) {
+                        stack.peek().subfieldValue(content.toString());
+                    }
                 }
                 default -> {
                 }
@@ -268,7 +300,9 @@ public class MarcXchangeEventConsumer implements XMLEventConsumer, MarcXchangeCo
             content.setLength(0);
         } else if (event.isCharacters()) {
             Characters c = (Characters) event;
-            if (!c.isIgnorableWhiteSpace()) {
+            if (skipField) {
+                fieldProjection.skipped(c.getData().length());
+            } else if (!c.isIgnorableWhiteSpace()) {
                 content.append(c.getData());
             }
         } else if (event.isStartDocument()) {
@@ -19,6 +19,8 @@ import org.xbib.marc.MarcField;
 import org.xbib.marc.MarcListener;
 import org.xbib.marc.MarcRecord;
 import org.xbib.marc.MarcRecordListener;
+import org.xbib.marc.io.BlockCompressedOutputStream;
+import org.xbib.marc.io.ParallelGzipOutputStream;
 import org.xbib.marc.label.RecordLabel;
 import org.xbib.marc.transformer.value.MarcValueTransformers;
 
@@ -30,6 +32,7 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
 import javax.xml.stream.util.XMLEventConsumer;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
@@ -48,13 +51,13 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Deflater;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * This MarcXchange Writer writes MarcXchange events to a StaX XML output stream or XML event consumer.
@@ -89,6 +92,8 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
 
     private final Lock lock;
 
+    private final ThreadLocal<List<XMLEvent>> recordBuffer = ThreadLocal.withInitial(ArrayList::new);
+
     private Writer writer;
 
     private boolean indent;
@@ -119,8 +124,18 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
 
     private boolean compress;
 
+    private int compressionLevel;
+
+    private int compressionBlockSize;
+
+    private Executor compressionExecutor;
+
+    private BlockCompressedOutputStream blockCompressedOutputStream;
+
     private boolean isClosed;
 
+    private boolean recordBuffering;
+
     /**
      * Create a MarcXchange writer on an underlying output stream.
      * @param out the underlying output stream
@@ -172,12 +187,35 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
      * @param fileNamePattern file name pattern
      * @param splitlimit split write limit. Split records if configured. A splitlimit of -1 prevents splitting.
      * @param bufferSize buffer size
-     * @param compress if true, compress MarcXchange output
+     * @param compress if true, compress MarcXchange output. If the file name pattern ends with
+     * {@link BlockCompressedOutputStream#FILE_EXTENSION}, the files are written as block-compressed containers
+     * with a sidecar index, otherwise they are gzipped.
      * @param indent if true, indent MarcXchange output
      * @throws IOException if writer can not be created
      */
     public MarcXchangeWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress, boolean indent)
             throws IOException {
+        this(fileNamePattern, splitlimit, bufferSize, compress, indent, Deflater.BEST_COMPRESSION, 0, null);
+    }
+
+    /**
+     * Create a MarcXchange writer in "split writer" mode with compression settings.
+     * @param fileNamePattern file name pattern
+     * @param splitlimit split write limit. Split records if configured. A splitlimit of -1 prevents splitting.
+     * @param bufferSize buffer size
+     * @param compress if true, compress MarcXchange output
+     * @param indent if true, indent MarcXchange output
+     * @param compressionLevel the compression level, from 0 to 9, or -1 for the default compression
+     * @param compressionBlockSize the number of uncompressed bytes in a compressed block, or 0 for the default
+     * @param compressionExecutor the executor for compressing gzip blocks, or null for the shared worker pool
+     * @throws IOException if writer can not be created
+     */
+    public MarcXchangeWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress, boolean indent,
+                             int compressionLevel, int compressionBlockSize, Executor compressionExecutor)
+            throws IOException {
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockSize = compressionBlockSize;
+        this.compressionExecutor = compressionExecutor;
         this.fileNameCounter = new AtomicInteger(0);
         this.fileNamePattern = fileNamePattern;
         this.splitlimit = splitlimit;
@@ -229,6 +267,20 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         return this;
     }
 
+    /**
+     * Create the XML events of the leader and the fields of records given to {@link #record(MarcRecord)}
+     * in a buffer of the calling thread, and hold the writer lock only while the events are added to the
+     * XML event consumer. Concurrent producers no longer wait for each other while the events of their
+     * records are created. The output is the same as without buffering.
+     * Records are written field by field as before if there are MARC listeners on this writer.
+     * @param recordBuffering true if record events should be created in per-thread buffers
+     * @return this writer
+     */
+    public MarcXchangeWriter setRecordBuffering(boolean recordBuffering) {
+        this.recordBuffering = recordBuffering;
+        return this;
+    }
+
     @Override
     public MarcXchangeWriter setMarcListener(MarcListener listener) {
         super.setMarcListener(listener);
@@ -328,17 +380,8 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         if (exception != null) {
             return;
         }
-        if (label == null) {
-            return;
-        }
         try {
-            xmlEventConsumer.add(eventFactory.createStartElement(getLeaderElement(), null, namespaces));
-            RecordLabel recordLabel = RecordLabel.builder()
-                    .from(label)
-                    .setRecordLength(0) // reset record length, does not make sense in XML
-                    .build();
-            xmlEventConsumer.add(eventFactory.createCharacters(recordLabel.toString()));
-            xmlEventConsumer.add(eventFactory.createEndElement(getLeaderElement(), namespaces));
+            writeLeader(label, xmlEventConsumer, namespaces);
         } catch (XMLStreamException e) {
             handleException(new IOException(e));
         }
@@ -351,60 +394,7 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
             if (exception != null) {
                 return;
             }
-            if (field.isControl()) {
-                String value = field.recoverControlFieldValue();
-                if (value != null && !value.isEmpty()) {
-                    Iterator<Attribute> attrs = Collections.singletonList(eventFactory.createAttribute(TAG_ATTRIBUTE,
-                            transform(field.getTag()))).iterator();
-                    xmlEventConsumer.add(eventFactory.createStartElement(getControlfieldElement(), attrs, namespaces));
-                    xmlEventConsumer.add(eventFactory.createCharacters(transform(value)));
-                    xmlEventConsumer.add(eventFactory.createEndElement(getControlfieldElement(), namespaces));
-                }
-            } else if (!field.isEmpty()) {
-                String tag = field.getTag();
-                String indicator = field.getIndicator();
-                String ind1 = indicator != null && indicator.length() > 0 ? indicator.substring(0, 1) : " ";
-                String ind2 = indicator != null && indicator.length() > 1 ? indicator.substring(1, 2) : " ";
-                List<Attribute> attrs = new LinkedList<>();
-                attrs.add(eventFactory.createAttribute(TAG_ATTRIBUTE, transform(tag)));
-                // not full MarcXchange indicators
-                attrs.add(eventFactory.createAttribute(IND_ATTRIBUTE + "1", transform(ind1)));
-                attrs.add(eventFactory.createAttribute(IND_ATTRIBUTE + "2", transform(ind2)));
-                xmlEventConsumer.add(eventFactory.createStartElement(getDatafieldElement(), attrs.iterator(), namespaces));
-                for (MarcField.Subfield subfield : field.getSubfields()) {
-                    String value = subfield.getValue();
-                    // we skip null values because XML event consumer will fail on length() with NPE.
-                    // we do not skip empty values because of subfield ID transport in MAB or UNIMARC.
-                    if (value == null) {
-                        continue;
-                    }
-                    String code = subfield.getId();
-                    // From https://www.loc.gov/standards/iso25577/ISO_DIS_25577_2(E)070727.doc
-                    // "There is one restriction. A special mode (identifier length = 0) of ISO 2709 operates with
-                    // data fields without subfields. In the MarcXchange schema subfields are required,
-                    // i.e. identifier length = 0 is not supported."
-                    // But we support it! A subfield ID of length 0 will be substituted by blank (" ").
-                    if (code.isEmpty()) {
-                        code = " ";
-                    }
-                    List<Attribute> subfieldattrs = new LinkedList<>();
-                    subfieldattrs.add(eventFactory.createAttribute(CODE_ATTRIBUTE, transform(code)));
-                    xmlEventConsumer.add(eventFactory.createStartElement(getSubfieldElement(),
-                            subfieldattrs.iterator(), namespaces));
-                    xmlEventConsumer.add(eventFactory.createCharacters(transform(value)));
-                    xmlEventConsumer.add(eventFactory.createEndElement(getSubfieldElement(), namespaces));
-                }
-                String value = field.getValue();
-                if (value != null && !value.isEmpty()) {
-                    // if we have data in a datafield, create subfield blank (" ") with data
-                    attrs = new LinkedList<>();
-                    attrs.add(eventFactory.createAttribute(CODE_ATTRIBUTE, " "));
-                    xmlEventConsumer.add(eventFactory.createStartElement(getSubfieldElement(), attrs.iterator(), namespaces));
-                    xmlEventConsumer.add(eventFactory.createCharacters(transform(value)));
-                    xmlEventConsumer.add(eventFactory.createEndElement(getSubfieldElement(), namespaces));
-                }
-                xmlEventConsumer.add(eventFactory.createEndElement(getDatafieldElement(), namespaces));
-            }
+            writeField(field, xmlEventConsumer, namespaces);
         } catch (XMLStreamException e) {
             handleException(new IOException(e));
         }
@@ -419,11 +409,20 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         try {
             if (recordStarted) {
                 xmlEventConsumer.add(eventFactory.createEndElement(getRecordElement(), namespaces));
+                if (blockCompressedOutputStream != null) {
+                    if (xmlEventConsumer instanceof XMLEventWriter) {
+                        ((XMLEventWriter) xmlEventConsumer).flush();
+                    }
+                    writer.flush();
+                    blockCompressedOutputStream.endRecord();
+                }
                 afterRecord();
                 recordStarted = false;
             }
         } catch (XMLStreamException e) {
             handleException(new IOException(e));
+        } catch (IOException e) {
+            handleException(e);
         }
     }
 
@@ -452,6 +451,10 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         if (exception != null) {
             return;
         }
+        if (recordBuffering && listeners.isEmpty() && marcRecordListener == null) {
+            writeBuffered(marcRecord);
+            return;
+        }
         lock.lock();
         try {
             super.record(marcRecord);
@@ -465,6 +468,39 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         }
     }
 
+    /**
+     * Create the events of the leader and the fields of a record in the buffer of the current thread, and
+     * add them under the lock. The record element is created under the lock, because the namespace and the
+     * schema are declared at the first element. Inner elements do not declare namespaces.
+     */
+    private void writeBuffered(MarcRecord marcRecord) {
+        List<XMLEvent> events = recordBuffer.get();
+        try {
+            XMLEventConsumer consumer = events::add;
+            writeLeader(marcRecord.getRecordLabel(), consumer, Collections.emptyIterator());
+            for (MarcField marcField : marcRecord.getFields()) {
+                writeField(marcField, consumer, Collections.emptyIterator());
+            }
+            lock.lock();
+            try {
+                beginRecord(marcRecord.getFormat(), marcRecord.getType());
+                for (XMLEvent event : events) {
+                    xmlEventConsumer.add(event);
+                }
+                endRecord();
+                if (xmlEventConsumer instanceof XMLEventWriter) {
+                    ((XMLEventWriter) xmlEventConsumer).flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (XMLStreamException e) {
+            handleException(new IOException(e));
+        } finally {
+            events.clear();
+        }
+    }
+
     public void startCustomElement(String prefix, String uri, String localname) {
         try {
             xmlEventConsumer.add(eventFactory.createStartElement(prefix, uri, localname, null,
@@ -544,6 +580,78 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
         return SUBFIELD_ELEMENT;
     }
 
+    private void writeLeader(RecordLabel label, XMLEventConsumer consumer, Iterator<Namespace> namespaces)
+            throws XMLStreamException {
+        if (label == null) {
+            return;
+        }
+        consumer.add(eventFactory.createStartElement(getLeaderElement(), null, namespaces));
+        RecordLabel recordLabel = RecordLabel.builder()
+                .from(label)
+                .setRecordLength(0) // reset record length, does not make sense in XML
+                .build();
+        consumer.add(eventFactory.createCharacters(recordLabel.toString()));
+        consumer.add(eventFactory.createEndElement(getLeaderElement(), namespaces));
+    }
+
+    private void writeField(MarcField field, XMLEventConsumer consumer, Iterator<Namespace> namespaces)
+            throws XMLStreamException {
+        if (field.isControl()) {
+            String value = field.recoverControlFieldValue();
+            if (value != null && !value.isEmpty()) {
+                Iterator<Attribute> attrs = Collections.singletonList(eventFactory.createAttribute(TAG_ATTRIBUTE,
+                        transform(field.getTag()))).iterator();
+                consumer.add(eventFactory.createStartElement(getControlfieldElement(), attrs, namespaces));
+                consumer.add(eventFactory.createCharacters(transform(value)));
+                consumer.add(eventFactory.createEndElement(getControlfieldElement(), namespaces));
+            }
+        } else if (!field.isEmpty()) {
+            String tag = field.getTag();
+            String indicator = field.getIndicator();
+            String ind1 = indicator != null && indicator.length() > 0 ? indicator.substring(0, 1) : " ";
+            String ind2 = indicator != null && indicator.length() > 1 ? indicator.substring(1, 2) : " ";
+            List<Attribute> attrs = new LinkedList<>();
+            attrs.add(eventFactory.createAttribute(TAG_ATTRIBUTE, transform(tag)));
+            // not full MarcXchange indicators
+            attrs.add(eventFactory.createAttribute(IND_ATTRIBUTE + "1", transform(ind1)));
+            attrs.add(eventFactory.createAttribute(IND_ATTRIBUTE + "2", transform(ind2)));
+            consumer.add(eventFactory.createStartElement(getDatafieldElement(), attrs.iterator(), namespaces));
+            for (MarcField.Subfield subfield : field.getSubfields()) {
+                String value = subfield.getValue();
+                // we skip null values because XML event consumer will fail on length() with NPE.
+                // we do not skip empty values because of subfield ID transport in MAB or UNIMARC.
+                if (value == null) {
+                    continue;
+                }
+                String code = subfield.getId();
+                // From https://www.loc.gov/standards/iso25577/ISO_DIS_25577_2(E)070727.doc
+                // "There is one restriction. A special mode (identifier length = 0) of ISO 2709 operates with
+                // data fields without subfields. In the MarcXchange schema subfields are required,
+                // i.e. identifier length = 0 is not supported."
+                // But we support it! A subfield ID of length 0 will be substituted by blank (" ").
+                if (code.isEmpty()) {
+                    code = " ";
+                }
+                List<Attribute> subfieldattrs = new LinkedList<>();
+                subfieldattrs.add(eventFactory.createAttribute(CODE_ATTRIBUTE, transform(code)));
+                consumer.add(eventFactory.createStartElement(getSubfieldElement(),
+                        subfieldattrs.iterator(), namespaces));
+                consumer.add(eventFactory.createCharacters(transform(value)));
+                consumer.add(eventFactory.createEndElement(getSubfieldElement(), namespaces));
+            }
+            String value = field.getValue();
+            if (value != null && !value.isEmpty()) {
+                // if we have data in a datafield, create subfield blank (" ") with data
+                attrs = new LinkedList<>();
+                attrs.add(eventFactory.createAttribute(CODE_ATTRIBUTE, " "));
+                consumer.add(eventFactory.createStartElement(getSubfieldElement(), attrs.iterator(), namespaces));
+                consumer.add(eventFactory.createCharacters(transform(value)));
+                consumer.add(eventFactory.createEndElement(getSubfieldElement(), namespaces));
+            }
+            consumer.add(eventFactory.createEndElement(getDatafieldElement(), namespaces));
+        }
+    }
+
     /**
      * Split records if configured. A splitlimit of -1 prevents splitting.
      */
@@ -571,10 +679,18 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
                                     int bufferSize, boolean compress)
             throws IOException {
         String name = String.format(fileNamePattern, fileNameCounter.getAndIncrement());
+        if (compress && BlockCompressedOutputStream.isBlockCompressed(name)) {
+            blockCompressedOutputStream = BlockCompressedOutputStream.create(Paths.get(name), compressionLevel,
+                    compressionBlockSize > 0 ? compressionBlockSize : BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE);
+            writer = new OutputStreamWriter(blockCompressedOutputStream, StandardCharsets.UTF_8);
+            return;
+        }
         OutputStream out = Files.newOutputStream(Paths.get(name), StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING);
         writer = new OutputStreamWriter(compress ?
-                new CompressedOutputStream(out, bufferSize) :
+                new ParallelGzipOutputStream(out, compressionLevel,
+                        compressionBlockSize > 0 ? compressionBlockSize : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE,
+                        compressionExecutor) :
                 new BufferedOutputStream(out, bufferSize), StandardCharsets.UTF_8);
     }
 
@@ -600,15 +716,4 @@ public class MarcXchangeWriter extends MarcContentHandler implements Flushable,
             throw new UncheckedIOException(e);
         }
     }
-
-    /**
-     * A GZIP output stream, modified for best compression.
-     */
-    private static class CompressedOutputStream extends GZIPOutputStream {
-
-        CompressedOutputStream(OutputStream out, int size) throws IOException {
-            super(out, size, true);
-            def.setLevel(Deflater.BEST_COMPRESSION);
-        }
-    }
 }
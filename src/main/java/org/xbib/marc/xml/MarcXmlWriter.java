@@ -12,6 +12,7 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class MarcXmlWriter extends MarcXchangeWriter {
 
@@ -69,6 +70,13 @@ public class MarcXmlWriter extends MarcXchangeWriter {
         super(fileNamePattern, splitlimit, bufferSize, compress, indent);
     }
 
+    public MarcXmlWriter(String fileNamePattern, int splitlimit, int bufferSize, boolean compress, boolean indent,
+                         int compressionLevel, int compressionBlockSize, Executor compressionExecutor)
+            throws IOException {
+        super(fileNamePattern, splitlimit, bufferSize, compress, indent, compressionLevel, compressionBlockSize,
+                compressionExecutor);
+    }
+
     public MarcXmlWriter(XMLEventConsumer consumer) {
         super(consumer);
     }
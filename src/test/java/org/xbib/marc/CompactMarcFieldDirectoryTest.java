@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.label.RecordLabel;
+import java.io.IOException;
+import java.util.Map;
+
+public class CompactMarcFieldDirectoryTest {
+
+    // three entries, the second and third are not in position order, the last one repeats a position
+    private static final String LEADER = "00000nam  2200073   4500";
+
+    private static final String DIRECTORY = "001001300000" + "245002500031" + "100001800013" + "500001000031";
+
+    @Test
+    public void testSameEntriesAsMarcFieldDirectory() throws IOException {
+        RecordLabel label = RecordLabel.builder().from(LEADER.toCharArray()).build();
+        String encoded = LEADER + DIRECTORY;
+        MarcFieldDirectory expected = new MarcFieldDirectory(label, encoded);
+        CompactMarcFieldDirectory directory = new CompactMarcFieldDirectory(label, encoded);
+        assertEquals(expected.size(), directory.size());
+        int k = 0;
+        for (Map.Entry<Integer, MarcField.Builder> entry : expected.entrySet()) {
+            int i = directory.indexOf(entry.getKey());
+            assertEquals(k++, i);
+            MarcField.Builder builder = directory.getBuilder(i);
+            assertEquals(entry.getValue().tag(), builder.tag());
+            assertEquals(entry.getValue().position(), builder.position());
+            assertEquals(entry.getValue().length(), builder.length());
+            assertTrue(builder == directory.getBuilder(i));
+        }
+        assertEquals(-1, directory.indexOf(98));
+        assertEquals("500", directory.getBuilder(directory.indexOf(73 + 31)).tag());
+    }
+
+    @Test
+    public void testEmptyDirectory() throws IOException {
+        RecordLabel label = RecordLabel.builder().from("00000nam  2200025   4500".toCharArray()).build();
+        assertTrue(new CompactMarcFieldDirectory(label, "00000nam  2200025   4500").isEmpty());
+    }
+
+    @Test
+    public void testCorruptDirectory() {
+        RecordLabel label = RecordLabel.builder().from(LEADER.toCharArray()).build();
+        String encoded = LEADER + DIRECTORY.replace("245002500031", "2450025x0031");
+        assertThrows(IOException.class, () -> new CompactMarcFieldDirectory(label, encoded));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class CompactMarcFieldTest {
+
+    @Test
+    public void testSameAsMarcField() {
+        MarcField marcField = MarcField.builder()
+                .tag("245")
+                .indicator("10")
+                .subfield("a", "Summerland /")
+                .subfield("c", "Michael Chabon.")
+                .subfield("a", "Second")
+                .subfield("b")
+                .build();
+        CompactMarcField compact = marcField.compact();
+        assertEquals(marcField.toString(), compact.toString());
+        assertEquals(marcField.toKey(), compact.toKey());
+        assertEquals(marcField, compact);
+        assertEquals(marcField.getSubfields(), compact.getSubfields());
+        assertEquals(marcField.getSubfield("a"), compact.getSubfield("a"));
+        assertEquals("Summerland /", compact.getFirstSubfieldValue("a"));
+        assertEquals("Second", compact.getLastSubfieldValue("a"));
+        assertNull(compact.getFirstSubfieldValue("b"));
+        assertNull(compact.getFirstSubfieldValue("x"));
+        assertEquals(List.of("Summerland /", "Michael Chabon.", "Second"), compact.getSubfieldValues(Set.of("a", "c")));
+        assertEquals(marcField.getFirstSubfield(), compact.getFirstSubfield());
+        assertEquals(marcField.getLastSubfield(), compact.getLastSubfield());
+        assertEquals("aabc", compact.getSubfieldIds());
+        assertEquals(4, compact.getSubfieldCount());
+        assertTrue(compact.matchesValue(Pattern.compile("Michael.*")));
+        assertFalse(compact.matchesValue(Pattern.compile("Mike")));
+        assertTrue(compact.isValid());
+        assertFalse(compact.isControl());
+        assertTrue(compact == compact.compact());
+        MarcField controlField = MarcField.builder().tag("001").value("ID").buildCompact();
+        assertTrue(controlField.isControl());
+        assertEquals("ID", controlField.getValue());
+        assertEquals("001$$", controlField.toKey());
+        assertTrue(MarcField.builder().buildCompact().isEmpty());
+    }
+
+    @Test
+    public void testMultiCharacterSubfieldIds() {
+        MarcField marcField = MarcField.builder()
+                .tag("100")
+                .indicator(" ")
+                .subfield("a", "one")
+                .subfield("ab", "two")
+                .build();
+        CompactMarcField compact = marcField.compact();
+        assertEquals(marcField.toString(), compact.toString());
+        assertEquals("two", compact.getFirstSubfieldValue("ab"));
+        assertEquals("a", compact.getSubfieldId(0));
+    }
+
+    @Test
+    public void testCompactFieldsFromGenerator() throws Exception {
+        for (String s : List.of("zdblokutf8.mrc", "summerland.mrc", "chabon.mrc")) {
+            List<String> expected = records(s, false, false);
+            assertEquals(expected, records(s, true, false));
+            assertEquals(expected, records(s, true, true));
+        }
+    }
+
+    private List<String> records(String s, boolean compactFields, boolean byteDecoding) throws Exception {
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            Marc.Builder builder = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8);
+            if (compactFields) {
+                builder.enableCompactFields();
+            }
+            if (byteDecoding) {
+                builder.enableByteDecoding();
+            }
+            return builder.recordStream()
+                    .peek(marcRecord -> marcRecord.getFields().forEach(marcField ->
+                            assertEquals(compactFields, marcField instanceof CompactMarcField)))
+                    .map(marcRecord -> marcRecord.getFields().stream()
+                            .map(MarcField::toString)
+                            .collect(Collectors.joining("\n")))
+                    .collect(Collectors.toList());
+        }
+    }
+}
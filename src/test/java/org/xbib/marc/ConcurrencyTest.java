@@ -17,17 +17,24 @@ package org.xbib.marc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.xbib.marc.json.MarcJsonWriter;
 import org.xbib.marc.xml.MarcXchangeWriter;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConcurrencyTest {
 
@@ -154,4 +161,198 @@ public class ConcurrencyTest {
             assertEquals(n * 293, writer.getRecordCounter());
         }
     }
+
+    /**
+     * Process records on parallel workers, and write them as JSON lines in input order.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void orderedParallelJsonLinesWrite() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (MarcJsonWriter writer = new MarcJsonWriter(expected)
+                .setStyle(EnumSet.of(MarcJsonWriter.Style.LINES));
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcRecordListener(writer)
+                    .build()
+                    .writeRecordCollection();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (MarcJsonWriter writer = new MarcJsonWriter(outputStream)
+                .setStyle(EnumSet.of(MarcJsonWriter.Style.LINES));
+             ParallelMarcRecordListener listener = new ParallelMarcRecordListener(writer, marcRecord -> {
+                 // make the workers finish out of order
+                 if (marcRecord.getFields().size() % 3 == 0) {
+                     Thread.yield();
+                 }
+                 return marcRecord;
+             }, 8);
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcRecordListener(listener)
+                    .build()
+                    .writeRecordCollection();
+            assertNull(listener.getException());
+            assertEquals(293, listener.getRecordCounter());
+            assertEquals(293, writer.getRecordCounter());
+        }
+        assertEquals(expected.toString(StandardCharsets.UTF_8), outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Errors of the processor and of the downstream listener drop the record, but must not stall
+     * the records after it.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void parallelListenerErrors() throws Exception {
+        List<MarcRecord> records = new ArrayList<>();
+        AtomicInteger downstream = new AtomicInteger();
+        MarcRecordListener marcRecordListener = new MarcRecordListener() {
+            @Override
+            public void beginCollection() {
+            }
+
+            @Override
+            public void record(MarcRecord marcRecord) {
+                if (downstream.incrementAndGet() == 7) {
+                    throw new AssertionError("downstream error");
+                }
+                records.add(marcRecord);
+            }
+
+            @Override
+            public void endCollection() {
+            }
+        };
+        AtomicInteger processed = new AtomicInteger();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (ParallelMarcRecordListener listener = new ParallelMarcRecordListener(marcRecordListener, marcRecord -> {
+                 if (processed.incrementAndGet() == 3) {
+                     throw new AssertionError("processor error");
+                 }
+                 return marcRecord;
+             }, 4);
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            executorService.submit(() -> {
+                Marc.builder()
+                        .setInputStream(inputStream)
+                        .setMarcRecordListener(listener)
+                        .build()
+                        .writeRecordCollection();
+                return true;
+            }).get(30L, TimeUnit.SECONDS);
+            assertTrue(listener.getException() instanceof AssertionError);
+            assertEquals(293, listener.getRecordCounter());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(292, downstream.get());
+        assertEquals(291, records.size());
+    }
+
+    /**
+     * Write records with buffering in the writers. The output must be the same as without buffering.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void bufferedRecordWrite() throws Exception {
+        assertEquals(writeIso2709(false), writeIso2709(true));
+        assertEquals(writeXml(false), writeXml(true));
+        assertEquals(writeJson(false), writeJson(true));
+    }
+
+    /**
+     * Write ISO 2709 records from 16 threads with buffering, and read them again.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void concurrentBufferedIso2709Write() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int n = 16;
+        try (MarcWriter writer = new MarcWriter(outputStream, StandardCharsets.UTF_8)
+                .setRecordBuffering(true)) {
+            writer.beginCollection();
+            ExecutorService executorService = Executors.newFixedThreadPool(n);
+            for (int i = 0; i < n; i++) {
+                executorService.submit(() -> {
+                    try (InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+                        Marc.builder()
+                                .setInputStream(inputStream)
+                                .setMarcRecordListener(writer)
+                                .build()
+                                .writeRecords();
+                    }
+                    return true;
+                });
+            }
+            executorService.shutdown();
+            executorService.awaitTermination(30L, TimeUnit.SECONDS);
+            writer.endCollection();
+            assertNull(writer.getException());
+            assertEquals(n * 293, writer.getRecordCounter());
+        }
+        assertEquals(n * 293, Marc.builder()
+                .setInputStream(new ByteArrayInputStream(outputStream.toByteArray()))
+                .setCharset(StandardCharsets.UTF_8)
+                .recordStream()
+                .filter(marcRecord -> !marcRecord.isEmpty())
+                .count());
+    }
+
+    private String writeIso2709(boolean recordBuffering) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (MarcWriter writer = new MarcWriter(outputStream, StandardCharsets.UTF_8)
+                .setRecordBuffering(recordBuffering);
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcRecordListener(writer)
+                    .build()
+                    .writeRecordCollection();
+            assertNull(writer.getException());
+            assertEquals(293, writer.getRecordCounter());
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private String writeXml(boolean recordBuffering) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (MarcXchangeWriter writer = new MarcXchangeWriter(outputStream, true)
+                .setRecordBuffering(recordBuffering);
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            writer.startDocument();
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcRecordListener(writer)
+                    .build()
+                    .writeRecordCollection();
+            writer.endDocument();
+            assertNull(writer.getException());
+            assertEquals(293, writer.getRecordCounter());
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private String writeJson(boolean recordBuffering) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (MarcJsonWriter writer = new MarcJsonWriter(outputStream)
+                .setRecordBuffering(recordBuffering);
+             InputStream inputStream = getClass().getResource("zdblokutf8.mrc").openStream()) {
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcRecordListener(writer)
+                    .build()
+                    .writeRecordCollection();
+            assertNull(writer.getException());
+            assertEquals(293, writer.getRecordCounter());
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
 }
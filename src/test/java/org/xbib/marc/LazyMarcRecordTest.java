@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.io.BytesReference;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LazyMarcRecordTest {
+
+    private static final List<String> FILES = List.of("zdblokutf8.mrc", "summerland.mrc", "chabon.mrc",
+            "brkrtest.mrc", "bad_too_long_plus_2.mrc", "error.mrc");
+
+    @Test
+    public void testSameAsMarcRecord() throws Exception {
+        for (String s : FILES) {
+            List<MarcRecord> expected = records(s, false);
+            List<MarcRecord> lazy = records(s, true);
+            assertEquals(expected.size(), lazy.size(), s);
+            for (int i = 0; i < expected.size(); i++) {
+                assertTrue(lazy.get(i) instanceof LazyMarcRecord);
+                assertEquals(expected.get(i).getFields().toString(), lazy.get(i).getFields().toString(), s);
+                assertEquals(expected.get(i).toString(), lazy.get(i).toString(), s);
+            }
+        }
+    }
+
+    @Test
+    public void testFieldLookupByTag() throws Exception {
+        for (String s : FILES) {
+            List<MarcRecord> expected = records(s, false);
+            List<MarcRecord> lazy = records(s, true);
+            for (int i = 0; i < expected.size(); i++) {
+                MarcRecord marcRecord = expected.get(i);
+                for (String tag : List.of("001", "245", "650", "999")) {
+                    assertEquals(String.valueOf(marcRecord.getFirst(tag)), String.valueOf(lazy.get(i).getFirst(tag)));
+                    assertEquals(marcRecord.getAll(tag).toString(), lazy.get(i).getAll(tag).toString());
+                }
+            }
+        }
+        LazyMarcRecord marcRecord = (LazyMarcRecord) records("summerland.mrc", true).get(0);
+        assertNotNull(marcRecord.getFirst("245", "10"));
+        assertNull(marcRecord.getFirst("245", "00"));
+        assertEquals("Summerland /", marcRecord.getFirst("245").getFirstSubfieldValue("a"));
+    }
+
+    @Test
+    public void testCopyRecordBytes() throws Exception {
+        for (String s : FILES) {
+            List<MarcRecord> lazy = records(s, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (MarcRecord marcRecord : lazy) {
+                out.write(((LazyMarcRecord) marcRecord).getRecordBytes().toBytes());
+            }
+            List<String> copied = Marc.builder()
+                    .setInputStream(new ByteArrayInputStream(out.toByteArray()))
+                    .setCharset(StandardCharsets.UTF_8)
+                    .lazyRecordStream()
+                    .map(MarcRecord::toString)
+                    .collect(Collectors.toList());
+            assertEquals(lazy.stream().map(MarcRecord::toString).collect(Collectors.toList()), copied, s);
+        }
+    }
+
+    @Test
+    public void testFilteredRecordHasNoRecordBytes() throws Exception {
+        LazyMarcRecord marcRecord = (LazyMarcRecord) records("summerland.mrc", true).get(0);
+        marcRecord.filterFields(marcField -> !"650".equals(marcField.getTag()), null);
+        assertNull(marcRecord.getRecordBytes());
+        assertTrue(marcRecord.getAll("650").isEmpty());
+    }
+
+    @Test
+    public void testWriterCopiesRecordBytes() throws Exception {
+        for (String s : FILES) {
+            for (boolean buffering : new boolean[] { false, true }) {
+                List<MarcRecord> lazy = records(s, true);
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (MarcWriter writer = new MarcWriter(out, StandardCharsets.UTF_8)
+                        .setRecordDirectory(true)
+                        .setRecordBuffering(buffering)) {
+                    for (MarcRecord marcRecord : lazy) {
+                        BytesReference recordBytes = ((LazyMarcRecord) marcRecord).getCopyableRecordBytes();
+                        if (recordBytes != null) {
+                            expected.write(recordBytes.toBytes());
+                            writer.record(marcRecord);
+                        }
+                    }
+                    assertNull(writer.getException());
+                }
+                assertArrayEquals(expected.toByteArray(), out.toByteArray(), s);
+            }
+        }
+    }
+
+    @Test
+    public void testWriterEncodesFilteredRecord() throws Exception {
+        LazyMarcRecord marcRecord = (LazyMarcRecord) records("summerland.mrc", true).get(0);
+        marcRecord.filterFields(marcField -> !"650".equals(marcField.getTag()), null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MarcWriter writer = new MarcWriter(out, StandardCharsets.UTF_8).setRecordDirectory(true)) {
+            writer.record(marcRecord);
+            assertNull(writer.getException());
+        }
+        MarcRecord written = Marc.builder()
+                .setInputStream(new ByteArrayInputStream(out.toByteArray()))
+                .setCharset(StandardCharsets.UTF_8)
+                .lazyRecordStream()
+                .findFirst()
+                .orElseThrow();
+        assertTrue(written.getAll("650").isEmpty());
+        assertEquals(marcRecord.getFields().toString(), written.getFields().toString());
+    }
+
+    @Test
+    public void testRejectParserSettings() {
+        Marc.Builder builder = Marc.builder()
+                .setInputStream(new ByteArrayInputStream(new byte[0]))
+                .setKeyPattern(Pattern.compile("245.*"));
+        assertThrows(IllegalStateException.class, builder::lazyRecordIterator);
+        assertThrows(IllegalStateException.class, builder::lazyRecordStream);
+        assertThrows(IllegalStateException.class, () -> Marc.builder()
+                .setInputStream(new ByteArrayInputStream(new byte[0]))
+                .disableControlFields()
+                .lazyRecordIterator());
+    }
+
+    @Test
+    public void testLazyRecordStreamFromPath() throws Exception {
+        Path path = Paths.get(getClass().getResource("summerland.mrc").toURI());
+        try (Stream<MarcRecord> stream = Marc.builder()
+                .setPath(path)
+                .setCharset(StandardCharsets.UTF_8)
+                .lazyRecordStream()) {
+            assertEquals(records("summerland.mrc", false).size(), stream.count());
+        }
+    }
+
+    private List<MarcRecord> records(String s, boolean lazy) throws Exception {
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            Marc.Builder builder = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8);
+            List<MarcRecord> list = new ArrayList<>();
+            (lazy ? builder.lazyRecordIterator() : builder.recordIterator()).forEachRemaining(list::add);
+            return list;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.xml.MarcXchangeWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class MarcFieldProjectionTest {
+
+    @Test
+    public void testTagsAndRanges() {
+        MarcFieldProjection projection = MarcFieldProjection.of("001", "245", "6XX", "85x");
+        assertTrue(projection.includes("001"));
+        assertTrue(projection.includes("245"));
+        assertTrue(projection.includes("650"));
+        assertTrue(projection.includes("856"));
+        assertFalse(projection.includes("100"));
+        assertFalse(projection.includes("860"));
+        assertFalse(projection.includes(null));
+        assertTrue(projection.includes("xx245", 2));
+        assertTrue(MarcFieldProjection.of(tag -> tag.startsWith("1")).includes("100"));
+    }
+
+    @Test
+    public void testIso2709Projection() throws Exception {
+        String s = "summerland.mrc";
+        Set<String> tags = Set.of("001", "245", "650", "651");
+        List<String> expected;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            expected = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordStream()
+                    .map(marcRecord -> project(marcRecord, tags))
+                    .collect(Collectors.toList());
+        }
+        for (boolean byteDecoding : new boolean[] { false, true }) {
+            MarcFieldProjection projection = MarcFieldProjection.of("001", "245", "65X");
+            List<String> list;
+            try (InputStream in = getClass().getResource(s).openStream()) {
+                Marc.Builder builder = Marc.builder()
+                        .setInputStream(in)
+                        .setCharset(StandardCharsets.UTF_8)
+                        .setFieldProjection(projection);
+                if (byteDecoding) {
+                    builder.enableByteDecoding();
+                }
+                list = builder.recordStream()
+                        .map(marcRecord -> project(marcRecord, tags))
+                        .collect(Collectors.toList());
+            }
+            assertEquals(expected, list);
+            assertTrue(projection.getSkippedBytes() > 0);
+        }
+    }
+
+    @Test
+    public void testXmlProjection() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = getClass().getResource("summerland.mrc").openStream();
+             MarcXchangeWriter writer = new MarcXchangeWriter(out)) {
+            Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setMarcListener(writer)
+                    .build()
+                    .writeCollection();
+        }
+        byte[] xml = out.toByteArray();
+        MarcFieldProjection projection = MarcFieldProjection.of("001", "245");
+        List<MarcRecord> records = Marc.builder()
+                .setInputStream(new ByteArrayInputStream(xml))
+                .setFieldProjection(projection)
+                .xmlRecordStream()
+                .collect(Collectors.toList());
+        assertEquals(1, records.size());
+        assertEquals(Set.of("001", "245"), records.get(0).getFields().stream()
+                .map(MarcField::getTag)
+                .collect(Collectors.toSet()));
+        assertTrue(projection.getSkippedBytes() > 0);
+    }
+
+    private static String project(MarcRecord marcRecord, Set<String> tags) {
+        return marcRecord.getFields().stream()
+                .filter(marcField -> tags.contains(marcField.getTag()))
+                .map(MarcField::toString)
+                .collect(Collectors.joining("\n"));
+    }
+}
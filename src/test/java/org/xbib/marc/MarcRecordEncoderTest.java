@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MarcRecordEncoderTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        MarcRecord marcRecord = Marc.builder()
+                .recordLabel(RecordLabel.builder().from("00000nam  2200000 a 4500").build())
+                .addField(MarcField.builder().tag("001").value("123").build())
+                .addField(MarcField.builder().tag("245").indicator("10").subfield("a", "Hello Wörld").build())
+                .buildRecord();
+        MarcRecordEncoder encoder = new MarcRecordEncoder(StandardCharsets.UTF_8);
+        assertTrue(encoder.encode(marcRecord));
+        assertEquals("00071nam  2200049 a 4500" +
+                        "001000400000" + "245001700004" + "\u001E" +
+                        "123\u001E" + "10\u001FaHello Wörld\u001E" + "\u001D",
+                new String(encoder.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(71, encoder.getLength());
+    }
+
+    @Test
+    public void testWriteRecordsWithDirectory() throws Exception {
+        byte[] bytes;
+        try (InputStream inputStream = getClass().getResource("chabon.mrc").openStream()) {
+            bytes = inputStream.readAllBytes();
+        }
+        for (boolean recordBuffering : new boolean[] { false, true }) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (MarcWriter writer = new MarcWriter(outputStream, StandardCharsets.UTF_8)
+                    .setRecordDirectory(true)
+                    .setRecordBuffering(recordBuffering)) {
+                Marc.builder()
+                        .setInputStream(new ByteArrayInputStream(bytes))
+                        .setCharset(StandardCharsets.UTF_8)
+                        .setMarcRecordListener(writer)
+                        .build()
+                        .writeRecordCollection();
+                assertNull(writer.getException());
+                assertEquals(2, writer.getRecordCounter());
+            }
+            // the directory, the record length and the base address of data are the same as in the original
+            assertArrayEquals(bytes, outputStream.toByteArray());
+        }
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        Marc.Builder builder = Marc.builder()
+                .recordLabel(RecordLabel.EMPTY)
+                .addField(MarcField.builder().tag("001").value("123").build());
+        String value = "x".repeat(9000);
+        for (int i = 0; i < 12; i++) {
+            builder.addField(MarcField.builder().tag("500").indicator("  ").subfield("a", value).build());
+        }
+        // longer than the four digits of the field length
+        builder.addField(MarcField.builder().tag("520").indicator("  ").subfield("a", "y".repeat(10000)).build());
+        MarcRecord marcRecord = builder.buildRecord();
+        MarcRecordEncoder encoder = new MarcRecordEncoder(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> encoder.encode(marcRecord));
+        MarcRecordEncoder skippingEncoder = new MarcRecordEncoder(StandardCharsets.UTF_8,
+                MarcRecordEncoder.OverflowPolicy.SKIP);
+        assertFalse(skippingEncoder.encode(marcRecord));
+        assertEquals(0, skippingEncoder.getLength());
+        assertEquals(1, skippingEncoder.getOverflowCounter());
+        MarcRecordEncoder droppingEncoder = new MarcRecordEncoder(StandardCharsets.UTF_8,
+                MarcRecordEncoder.OverflowPolicy.DROP_FIELDS);
+        assertTrue(droppingEncoder.encode(marcRecord));
+        assertTrue(droppingEncoder.getLength() <= MarcRecordEncoder.MAX_RECORD_LENGTH);
+        assertEquals(2, droppingEncoder.getOverflowCounter());
+        List<MarcRecord> list = Marc.builder()
+                .setInputStream(new ByteArrayInputStream(droppingEncoder.toByteArray()))
+                .setCharset(StandardCharsets.UTF_8)
+                .recordStream()
+                .filter(r -> !r.isEmpty())
+                .collect(Collectors.toList());
+        assertEquals(1, list.size());
+        assertEquals(11, list.get(0).getAll("500").size());
+        assertEquals(0, list.get(0).getAll("520").size());
+        assertEquals(value, list.get(0).getFirst("500").getFirstSubfieldValue("a"));
+    }
+}
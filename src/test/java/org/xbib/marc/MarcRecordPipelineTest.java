@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MarcRecordPipelineTest {
+
+    private static final String FILE = "dialects/unimarc/periouni.mrc";
+
+    @Test
+    public void testSameOrderAsRecordIterator() throws Exception {
+        List<String> expected = new ArrayList<>();
+        try (InputStream in = getClass().getResource(FILE).openStream()) {
+            Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8)
+                    .iterable().forEach(marcRecord -> expected.add(marcRecord.toString()));
+        }
+        List<String> records = new ArrayList<>();
+        try (InputStream in = getClass().getResource(FILE).openStream()) {
+            MarcRecordPipeline pipeline = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordPipeline()
+                    .setParseWorkers(4)
+                    .setTransformWorkers(2)
+                    .setBatchSize(7)
+                    .setQueueCapacity(2);
+            long count = pipeline.run(new Collector(records));
+            assertEquals(expected.size(), count);
+            assertEquals(expected.size(), pipeline.getReadStage().getRecords());
+            assertEquals(expected.size(), pipeline.getParseStage().getRecords());
+            assertEquals(expected.size(), pipeline.getSinkStage().getRecords());
+            assertEquals(pipeline.getReadStage().getBatches(), pipeline.getSinkStage().getBatches());
+            assertEquals(0, pipeline.getParseStage().getQueueDepth());
+            assertTrue(pipeline.getSinkStage().getThroughput() > 0.0d);
+        }
+        assertEquals(expected, records);
+    }
+
+    @Test
+    public void testTransformer() throws Exception {
+        List<String> records = new ArrayList<>();
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        try (InputStream in = getClass().getResource(FILE).openStream()) {
+            long count = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordPipeline()
+                    .setExecutor(executorService)
+                    .setTransformWorkers(3)
+                    .setTransformer(marcRecord -> marcRecord.getFirst("606") != null ? marcRecord : null)
+                    .run(new Collector(records));
+            assertEquals(records.size(), count);
+            assertTrue(count > 0 && count < 3064);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testReuseRecord() throws Exception {
+        List<MarcRecord> records = new ArrayList<>();
+        try (InputStream in = getClass().getResource(FILE).openStream()) {
+            long count = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .reuseRecord()
+                    .recordPipeline()
+                    .setParseWorkers(4)
+                    .run(new MarcRecordListener() {
+                        @Override
+                        public void beginCollection() {
+                            // not used
+                        }
+
+                        @Override
+                        public void record(MarcRecord marcRecord) {
+                            records.add(marcRecord);
+                        }
+
+                        @Override
+                        public void endCollection() {
+                            // not used
+                        }
+                    });
+            assertEquals(3064, count);
+        }
+        Set<MarcRecord> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(records);
+        assertEquals(records.size(), distinct.size());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        try (InputStream in = getClass().getResource(FILE).openStream()) {
+            MarcRecordPipeline pipeline = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordPipeline()
+                    .setTransformer(marcRecord -> {
+                        throw new IllegalStateException("failed");
+                    });
+            IOException e = assertThrows(IOException.class, () -> pipeline.run(new Collector(new ArrayList<>())));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static class Collector implements MarcRecordListener {
+
+        private final List<String> records;
+
+        Collector(List<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void beginCollection() {
+            // not used
+        }
+
+        @Override
+        public void record(MarcRecord marcRecord) {
+            records.add(marcRecord.toString());
+        }
+
+        @Override
+        public void endCollection() {
+            // not used
+        }
+    }
+}
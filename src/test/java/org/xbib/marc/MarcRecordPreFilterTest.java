@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.label.RecordLabel;
+import org.xbib.marc.label.RecordStatus;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+public class MarcRecordPreFilterTest {
+
+    private static final Predicate<RecordLabel> NOT_DELETED =
+            recordLabel -> recordLabel.getRecordStatus() != RecordStatus.DELETED;
+
+    private static final Predicate<List<MarcField>> EVEN_ID = controlFields -> controlFields.stream()
+            .anyMatch(marcField -> "001".equals(marcField.getTag()) && marcField.getValue() != null
+                    && (marcField.getValue().charAt(marcField.getValue().length() - 1) - '0') % 2 == 0);
+
+    @Test
+    public void testRecordLabelPreFilter() throws Exception {
+        String s = "zdblokutf8.mrc";
+        List<MarcRecord> records;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            records = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordStream()
+                    .collect(Collectors.toList());
+        }
+        List<String> expected = records.stream()
+                .filter(marcRecord -> NOT_DELETED.test(marcRecord.getRecordLabel()))
+                .map(MarcRecord::toString)
+                .collect(Collectors.toList());
+        assertTrue(expected.size() > 0 && expected.size() < records.size());
+        MarcRecordPreFilter preFilter = MarcRecordPreFilter.of(NOT_DELETED);
+        assertEquals(expected, records(s, preFilter));
+        assertEquals(records.size() - expected.size(), preFilter.getSkippedRecords());
+        // without record framing, by the MARC generator
+        preFilter = MarcRecordPreFilter.of(NOT_DELETED);
+        Path path = Paths.get(getClass().getResource(s).toURI());
+        List<String> list = Marc.builder()
+                .setPath(path)
+                .setCharset(StandardCharsets.UTF_8)
+                .setRecordPreFilter(preFilter)
+                .recordStream()
+                .map(MarcRecord::toString)
+                .collect(Collectors.toList());
+        assertEquals(expected, list);
+        assertEquals(records.size() - expected.size(), preFilter.getSkippedRecords());
+    }
+
+    @Test
+    public void testControlFieldPreFilter() throws Exception {
+        String s = "zdblokutf8.mrc";
+        List<MarcRecord> all;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            all = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .recordStream()
+                    .collect(Collectors.toList());
+        }
+        List<String> expected = all.stream()
+                .filter(marcRecord -> NOT_DELETED.test(marcRecord.getRecordLabel()))
+                .filter(marcRecord -> EVEN_ID.test(marcRecord.getFields().stream()
+                        .filter(MarcField::isControl)
+                        .collect(Collectors.toList())))
+                .map(MarcRecord::toString)
+                .collect(Collectors.toList());
+        assertTrue(expected.size() > 0);
+        MarcRecordPreFilter preFilter = MarcRecordPreFilter.of(NOT_DELETED, EVEN_ID);
+        assertEquals(expected, records(s, preFilter));
+        assertEquals(all.size() - expected.size(), preFilter.getSkippedRecords());
+    }
+
+    private List<String> records(String s, MarcRecordPreFilter preFilter) throws Exception {
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            return Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setRecordPreFilter(preFilter)
+                    .recordStream()
+                    .map(MarcRecord::toString)
+                    .collect(Collectors.toList());
+        }
+    }
+}
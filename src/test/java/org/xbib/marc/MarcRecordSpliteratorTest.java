@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class MarcRecordSpliteratorTest {
+
+    private static final String PERIOUNI = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+
+    @Test
+    public void testSplitAtRecordBoundaries() throws Exception {
+        Path path = Paths.get(getClass().getResource(PERIOUNI).toURI());
+        Marc.Builder builder = Marc.builder().setCharset(StandardCharsets.UTF_8);
+        Spliterator<MarcRecord> spliterator = new MarcRecordSpliterator(path, Files.size(path), 1024L, true,
+                marcRecordListener -> Marc.builder()
+                        .setCharset(StandardCharsets.UTF_8)
+                        .setMarcRecordListener(marcRecordListener)
+                        .createGenerator());
+        Spliterator<MarcRecord> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+        List<String> list = new ArrayList<>();
+        prefix.forEachRemaining(r -> list.add(r.toString()));
+        spliterator.forEachRemaining(r -> list.add(r.toString()));
+        assertEquals(sequentialRecords(builder), list);
+    }
+
+    @Test
+    public void testOrderedParallelRecordStream() throws Exception {
+        List<String> list = Marc.builder()
+                .setPath(Paths.get(getClass().getResource(PERIOUNI).toURI()))
+                .setCharset(StandardCharsets.UTF_8)
+                .parallelRecordStream(true, 4096L)
+                .map(MarcRecord::toString)
+                .collect(Collectors.toList());
+        assertEquals(3064, list.size());
+        assertEquals(sequentialRecords(Marc.builder().setCharset(StandardCharsets.UTF_8)), list);
+    }
+
+    @Test
+    public void testUnorderedParallelRecordStream() throws Exception {
+        List<String> list = Marc.builder()
+                .setPath(Paths.get(getClass().getResource(PERIOUNI).toURI()))
+                .setCharset(StandardCharsets.UTF_8)
+                .parallelRecordStream(false, 4096L)
+                .map(MarcRecord::toString)
+                .collect(Collectors.toList());
+        List<String> expected = sequentialRecords(Marc.builder().setCharset(StandardCharsets.UTF_8));
+        Collections.sort(expected);
+        Collections.sort(list);
+        assertEquals(expected, list);
+    }
+
+    @Test
+    public void testParallelRecordStreamWithReuseRecord() throws Exception {
+        List<MarcRecord> records = Marc.builder()
+                .setPath(Paths.get(getClass().getResource(PERIOUNI).toURI()))
+                .setCharset(StandardCharsets.UTF_8)
+                .reuseRecord()
+                .parallelRecordStream(true, 4096L)
+                .collect(Collectors.toList());
+        assertEquals(3064, records.size());
+        Set<MarcRecord> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(records);
+        assertEquals(records.size(), distinct.size());
+        assertEquals(sequentialRecords(Marc.builder().setCharset(StandardCharsets.UTF_8)),
+                records.stream().map(MarcRecord::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCloseShortCircuitedStream() throws Exception {
+        Path path = Paths.get(getClass().getResource(PERIOUNI).toURI());
+        MarcRecordSpliterator spliterator = new MarcRecordSpliterator(path, Files.size(path), 4096L, true,
+                marcRecordListener -> Marc.builder()
+                        .setCharset(StandardCharsets.UTF_8)
+                        .setMarcRecordListener(marcRecordListener)
+                        .createGenerator());
+        try (Stream<MarcRecord> stream = StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+            assertEquals(1L, stream.limit(1).count());
+            // the range is not read to the end
+            assertEquals(1, spliterator.getOpenRangeCount());
+        }
+        assertEquals(0, spliterator.getOpenRangeCount());
+        List<String> expected = sequentialRecords(Marc.builder().setCharset(StandardCharsets.UTF_8));
+        try (Stream<MarcRecord> stream = Marc.builder()
+                .setPath(path)
+                .setCharset(StandardCharsets.UTF_8)
+                .parallelRecordStream(true, 4096L)) {
+            assertEquals(expected.subList(0, 1),
+                    stream.limit(1).map(MarcRecord::toString).collect(Collectors.toList()));
+        }
+    }
+
+    private List<String> sequentialRecords(Marc.Builder builder) throws Exception {
+        List<String> list = new ArrayList<>();
+        try (InputStream in = getClass().getResource(PERIOUNI).openStream()) {
+            for (MarcRecord marcRecord : builder.setInputStream(in).iterable()) {
+                list.add(marcRecord.toString());
+            }
+        }
+        return list;
+    }
+}
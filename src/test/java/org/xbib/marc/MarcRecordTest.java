@@ -16,6 +16,7 @@
 package org.xbib.marc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -33,6 +34,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -144,6 +146,106 @@ public class MarcRecordTest {
         }
     }
 
+    @Test
+    public void testTagIndex() throws Exception {
+        String s = "dialects/unimarc/periouni.mrc";
+        List<MarcRecord> records = new ArrayList<>();
+        List<MarcRecord> indexed = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8)
+                    .iterable().forEach(records::add);
+        }
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8).enableTagIndex()
+                    .iterable().forEach(indexed::add);
+        }
+        assertEquals(records.size(), indexed.size());
+        for (int i = 0; i < records.size(); i++) {
+            MarcRecord marcRecord = records.get(i);
+            MarcRecord indexedRecord = indexed.get(i);
+            assertEquals(marcRecord.getAll("001"), indexedRecord.getAll("001"));
+            assertEquals(marcRecord.getFirst("001"), indexedRecord.getFirst("001"));
+            for (String tag : List.of("200", "210", "606", "801", "999")) {
+                assertEquals(marcRecord.getAll(tag), indexedRecord.getAll(tag));
+                assertEquals(marcRecord.getFirst(tag), indexedRecord.getFirst(tag));
+                assertEquals(marcRecord.getAll(tag, "1 "), indexedRecord.getAll(tag, "1 "));
+                assertEquals(marcRecord.getFirst(tag, "  ", "a"), indexedRecord.getFirst(tag, "  ", "a"));
+            }
+        }
+        MarcRecord marcRecord = indexed.get(0);
+        marcRecord.filterFields(marcField -> !"801".equals(marcField.getTag()), null);
+        assertTrue(marcRecord.getAll("801").isEmpty());
+        assertNotNull(marcRecord.getFirst("100"));
+    }
+
+    @Test
+    public void testMapNotCreatedForFieldAccess() {
+        AtomicInteger comparisons = new AtomicInteger();
+        Comparator<String> comparator = (s1, s2) -> {
+            comparisons.incrementAndGet();
+            return s1.compareTo(s2);
+        };
+        MarcRecord marcRecord = new MarcRecord(null, null, RecordLabel.builder().build(), List.of(
+                MarcField.builder().tag("001").value("123456").build(),
+                MarcField.builder().tag("100").indicator(" ").subfield("a", "Hello").build(),
+                MarcField.builder().tag("650").indicator(" ").subfield("a", "World").build()),
+                false, comparator);
+        assertEquals(3, marcRecord.getFields().size());
+        assertNotNull(marcRecord.getFirst("100"));
+        assertEquals(1, marcRecord.getAll("650").size());
+        marcRecord.filterFields(marcField -> !"001".equals(marcField.getTag()), null);
+        // the map is only created by map methods
+        assertEquals(0, comparisons.get());
+        assertTrue(marcRecord.containsKey("100"));
+        assertTrue(comparisons.get() > 0);
+    }
+
+    @Test
+    public void testMapAfterFilterFields() {
+        for (boolean mapBeforeFilter : new boolean[] { false, true }) {
+            MarcRecord marcRecord = Marc.builder()
+                    .recordLabel(RecordLabel.builder().build())
+                    .addField(MarcField.builder().tag("001").value("123456").build())
+                    .addField(MarcField.builder().tag("100").indicator(" ").subfield("a", "Hello").build())
+                    .addField(MarcField.builder().tag("650").indicator(" ").subfield("a", "World").build())
+                    .buildRecord();
+            if (mapBeforeFilter) {
+                assertTrue(marcRecord.containsKey("650"));
+            }
+            marcRecord.filterFields(marcField -> !"650".equals(marcField.getTag()), null);
+            // the map reflects the filtered fields, whether it was created before or not
+            assertFalse(marcRecord.containsKey("650"));
+            assertTrue(marcRecord.containsKey("100"));
+        }
+    }
+
+    @Test
+    public void testReuseRecord() throws Exception {
+        String s = "dialects/unimarc/periouni.mrc";
+        List<String> expected = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8)
+                    .iterable().forEach(marcRecord -> expected.add(marcRecord.toString()));
+        }
+        List<String> reused = new ArrayList<>();
+        List<MarcRecord> copies = new ArrayList<>();
+        MarcRecord first = null;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            for (MarcRecord marcRecord : Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8)
+                    .reuseRecord().iterable()) {
+                if (first == null) {
+                    first = marcRecord;
+                }
+                assertTrue(first == marcRecord);
+                reused.add(marcRecord.toString());
+                copies.add(marcRecord.copy());
+            }
+        }
+        assertEquals(expected, reused);
+        assertEquals(expected.get(0), copies.get(0).toString());
+        assertEquals(expected.get(expected.size() - 1), copies.get(copies.size() - 1).toString());
+    }
+
     @Test
     public void testSequentialIteration() throws Exception {
         String s = "dialects/unimarc/periouni.mrc";
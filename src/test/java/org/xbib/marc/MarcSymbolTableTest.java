@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MarcSymbolTableTest {
+
+    @Test
+    public void testSymbols() {
+        assertNull(MarcSymbolTable.symbol(null));
+        assertSame(MarcSymbolTable.symbol(new String("a")), MarcSymbolTable.symbol('a'));
+        assertSame(MarcSymbolTable.symbol(new String("10")), MarcSymbolTable.symbol("x10y", 1, 3));
+        assertSame(MarcSymbolTable.symbol(new String("245")), MarcSymbolTable.symbol("24510", 0, 3));
+        assertSame(MarcSymbolTable.symbol(new String("LDR")), MarcSymbolTable.symbol(" LDR", 1, 4));
+        assertEquals("", MarcSymbolTable.symbol("abc", 1, 1));
+        assertEquals("abcd", MarcSymbolTable.symbol("abcd"));
+        assertEquals("äö", MarcSymbolTable.symbol("äö", 0, 2));
+    }
+
+    @Test
+    public void testParsedFieldsShareSymbols() throws Exception {
+        for (boolean compact : List.of(false, true)) {
+            List<MarcField> fields = new ArrayList<>();
+            try (InputStream in = getClass().getResource("zdblokutf8.mrc").openStream()) {
+                Marc.Builder builder = Marc.builder()
+                        .setInputStream(in)
+                        .setCharset(StandardCharsets.UTF_8)
+                        .setMarcListener(new MarcFieldAdapter() {
+                            @Override
+                            public void field(MarcField field) {
+                                fields.add(field);
+                            }
+                        });
+                if (compact) {
+                    builder.enableCompactFields();
+                }
+                builder.build().writeCollection();
+            }
+            for (MarcField marcField : fields) {
+                assertSame(MarcSymbolTable.symbol(marcField.getTag()), marcField.getTag());
+                if (marcField.getIndicator() != null) {
+                    assertSame(MarcSymbolTable.symbol(marcField.getIndicator()), marcField.getIndicator());
+                }
+                for (MarcField.Subfield subfield : marcField.getSubfields()) {
+                    assertSame(MarcSymbolTable.symbol(subfield.getId()), subfield.getId());
+                }
+            }
+        }
+    }
+}
@@ -156,6 +156,41 @@ public class MarcTest {
         }
     }
 
+    @Test
+    public void testByteDecoding() throws Exception {
+        for (String s : new String[]{
+                "summerland.mrc",
+                "chabon-loc.mrc",
+                "bad-characters-in-various-fields.mrc",
+                "oclc_63111280_export_as_UTF8_from_connexion.mrc",
+                "zdbtitutf8.mrc"
+        }) {
+            for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1 }) {
+                List<String> list1;
+                try (InputStream inputStream = getClass().getResource(s).openStream()) {
+                    list1 = Marc.builder()
+                            .setInputStream(inputStream)
+                            .setCharset(charset)
+                            .recordStream()
+                            .map(MarcRecord::toString)
+                            .toList();
+                }
+                List<String> list2;
+                try (InputStream inputStream = getClass().getResource(s).openStream()) {
+                    list2 = Marc.builder()
+                            .setInputStream(inputStream)
+                            .setCharset(charset)
+                            .enableByteDecoding()
+                            .recordStream()
+                            .map(MarcRecord::toString)
+                            .toList();
+                }
+                assertTrue(list1.size() > 0);
+                assertEquals(list1, list2);
+            }
+        }
+    }
+
     /**
      * There may be faulty input streams that contain information separators at the wrong place.
      * For the problem, see {@code org.marc4j.test.PermissiveReaderTest#testCyrillicEFix()}.
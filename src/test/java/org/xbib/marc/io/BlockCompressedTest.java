@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcRecord;
+import org.xbib.marc.MarcWriter;
+import org.xbib.marc.json.MarcJsonWriter;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+public class BlockCompressedTest {
+
+    @Test
+    public void testBlocks() throws Exception {
+        byte[] b = "a\nbb\nccc\ndddd\n".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream indexOut = new ByteArrayOutputStream();
+        try (BlockCompressedOutputStream stream = new BlockCompressedOutputStream(out, indexOut,
+                Deflater.DEFAULT_COMPRESSION, 4)) {
+            int start = 0;
+            for (int i = 0; i < b.length; i++) {
+                if (b[i] == '\n') {
+                    stream.write(b, start, i + 1 - start);
+                    stream.endRecord();
+                    start = i + 1;
+                }
+            }
+            assertEquals(4, stream.getRecordCount());
+        }
+        // a standard gzip reader reads all blocks
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertArrayEquals(b, in.readAllBytes());
+        }
+        // "a\nbb\n", "ccc\n", "dddd\n"
+        BlockIndex index = BlockIndex.read(new ByteArrayInputStream(indexOut.toByteArray()));
+        assertEquals(3, index.size());
+        assertEquals(0L, index.getOffset(0));
+        assertEquals(0L, index.getFirstRecord(0));
+        assertEquals(2L, index.getFirstRecord(1));
+        assertEquals(3L, index.getFirstRecord(2));
+        assertEquals(0, index.findBlock(1));
+        assertEquals(1, index.findBlock(2));
+        assertEquals(2, index.findBlock(3));
+        assertEquals(0, index.getRecordOffset(0));
+        assertEquals(2, index.getRecordOffset(1));
+        assertEquals(0, index.getRecordOffset(2));
+        assertEquals(0, index.getRecordOffset(3));
+        assertEquals(-1, index.getRecordOffset(4));
+    }
+
+    @Test
+    public void testMarcWriterBlockCompressed() throws Exception {
+        Path path = Paths.get("build/periouni0.mrc.bgz");
+        try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc").openStream();
+             MarcWriter writer = new MarcWriter("build/periouni%d.mrc.bgz", StandardCharsets.UTF_8,
+                     65536, -1, true)) {
+            Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setMarcListener(writer)
+                    .build()
+                    .writeCollection();
+            assertNull(writer.getException());
+        }
+        assertTrue(Files.exists(BlockCompressedOutputStream.indexPath(path)));
+        List<String> records;
+        try (Stream<MarcRecord> stream = Marc.builder()
+                .setCharset(StandardCharsets.UTF_8)
+                .blockCompressedRecordStream(path, false)) {
+            records = stream.map(MarcRecord::toString).collect(Collectors.toList());
+        }
+        assertEquals(3064, records.size());
+        try (Stream<MarcRecord> stream = Marc.builder()
+                .setCharset(StandardCharsets.UTF_8)
+                .blockCompressedRecordStream(path, true)) {
+            assertEquals(records, stream.map(MarcRecord::toString).collect(Collectors.toList()));
+        }
+        try (BlockCompressedReader reader = new BlockCompressedReader(path)) {
+            assertTrue(reader.getBlockCount() > 1);
+        }
+        // seek to records in the middle of a block and at the start of a block
+        try (BlockCompressedReader reader = new BlockCompressedReader(path)) {
+            long firstOfSecondBlock = reader.getIndex().getFirstRecord(1);
+            for (long n : new long[] { 0L, 5L, firstOfSecondBlock, firstOfSecondBlock + 1, records.size() - 1 }) {
+                try (InputStream in = reader.openRecord(n)) {
+                    MarcRecord marcRecord = Marc.builder()
+                            .setInputStream(in)
+                            .setCharset(StandardCharsets.UTF_8)
+                            .recordStream()
+                            .findFirst()
+                            .orElseThrow();
+                    assertEquals(records.get((int) n), marcRecord.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testJsonLinesBlockCompressed() throws Exception {
+        Path path = Paths.get("build/periouni0.jsonl.bgz");
+        try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc").openStream();
+             MarcJsonWriter writer = new MarcJsonWriter("build/periouni%d.jsonl.bgz", Integer.MAX_VALUE,
+                     65536, true)) {
+            writer.setStyle(EnumSet.of(MarcJsonWriter.Style.LINES));
+            Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setMarcListener(writer)
+                    .build()
+                    .writeCollection();
+            assertNull(writer.getException());
+        }
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        assertTrue(lines.size() > 1);
+        try (BlockCompressedReader reader = new BlockCompressedReader(path)) {
+            assertTrue(reader.getBlockCount() > 1);
+            long n = reader.getIndex().getFirstRecord(1) + 2;
+            try (BufferedReader lineReader = new BufferedReader(new InputStreamReader(
+                    reader.openRecord(n), StandardCharsets.UTF_8))) {
+                assertEquals(lines.get((int) n), lineReader.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testElasticsearchBulkBlockCompressed() throws Exception {
+        Path path = Paths.get("build/irmarc0.bulk.bgz");
+        // small blocks, so the ten records are spread over several blocks
+        try (InputStream in = getClass().getResource("/org/xbib/marc/IRMARC8.bin").openStream();
+             MarcJsonWriter writer = new MarcJsonWriter("build/irmarc%d.bulk.bgz", Integer.MAX_VALUE,
+                     65536, true, Deflater.DEFAULT_COMPRESSION, 4096, null)) {
+            writer.setStyle(EnumSet.of(MarcJsonWriter.Style.ELASTICSEARCH_BULK))
+                    .setIndex("testindex", "testtype");
+            Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.ISO_8859_1)
+                    .setMarcListener(writer)
+                    .build()
+                    .writeCollection();
+            assertNull(writer.getException());
+            assertEquals(10, writer.getRecordCounter());
+        }
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        // an action line and a document line for each record
+        assertEquals(20, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"index\""));
+        try (BlockCompressedReader reader = new BlockCompressedReader(path)) {
+            assertTrue(reader.getBlockCount() > 1);
+            long firstOfSecondBlock = reader.getIndex().getFirstRecord(1);
+            for (long n : new long[] { 0L, 5L, firstOfSecondBlock, firstOfSecondBlock + 2, lines.size() / 2 - 1 }) {
+                try (BufferedReader lineReader = new BufferedReader(new InputStreamReader(
+                        reader.openRecord(n), StandardCharsets.UTF_8))) {
+                    assertEquals(lines.get((int) (2 * n)), lineReader.readLine());
+                    assertEquals(lines.get((int) (2 * n + 1)), lineReader.readLine());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testScanWithoutIndex() throws IOException {
+        Path path = Paths.get("build/noindex.txt.bgz");
+        try (BlockCompressedOutputStream stream = new BlockCompressedOutputStream(Files.newOutputStream(path),
+                null, Deflater.DEFAULT_COMPRESSION, 1)) {
+            for (int i = 0; i < 100; i++) {
+                stream.write(("line " + i + "\n").getBytes(StandardCharsets.US_ASCII));
+                stream.endRecord();
+            }
+        }
+        Files.deleteIfExists(BlockCompressedOutputStream.indexPath(path));
+        try (BlockCompressedReader reader = new BlockCompressedReader(path)) {
+            assertEquals(100, reader.getBlockCount());
+            assertEquals("line 5\n", new String(reader.readBlock(5), StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcRecord;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedSeparatorChunkStreamTest {
+
+    @Test
+    public void testSameChunksAsBufferedStream() throws Exception {
+        String s = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 8192);
+            Chunk<byte[], BytesReference> chunk;
+            while ((chunk = stream.readChunk()) != null) {
+                list1.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+            }
+        }
+        Path path = Paths.get(getClass().getResource(s).toURI());
+        // small region size to force remapping
+        for (int regionSize : new int[] { 4096, 1024 * 1024 }) {
+            List<String> list2 = new ArrayList<>();
+            try (MappedSeparatorChunkStream stream = new MappedSeparatorChunkStream(path, regionSize)) {
+                Chunk<byte[], BytesReference> chunk;
+                while ((chunk = stream.readChunk()) != null) {
+                    list2.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+                }
+            }
+            assertEquals(list1, list2);
+        }
+    }
+
+    @Test
+    public void testRecordsFromPath() throws Exception {
+        String s = "/org/xbib/marc/summerland.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            for (MarcRecord marcRecord : Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .iterable()) {
+                list1.add(marcRecord.toString());
+            }
+        }
+        List<String> list2 = new ArrayList<>();
+        for (MarcRecord marcRecord : Marc.builder()
+                .setPath(Paths.get(getClass().getResource(s).toURI()))
+                .setCharset(StandardCharsets.UTF_8)
+                .iterable()) {
+            list2.add(marcRecord.toString());
+        }
+        assertEquals(list1, list2);
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcWriter;
+import org.xbib.marc.dialects.pica.PicaInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PageRecyclerTest {
+
+    @Test
+    public void testObtainRelease() {
+        PageRecycler recycler = new PageRecycler(16, 1);
+        byte[] page1 = recycler.obtain();
+        byte[] page2 = recycler.obtain();
+        assertEquals(2, recycler.getOutstandingPages());
+        recycler.release(page1);
+        recycler.release(page2);
+        assertEquals(0, recycler.getOutstandingPages());
+        // only one page is kept
+        assertEquals(1, recycler.getPooledPages());
+        assertSame(page1, recycler.obtain());
+    }
+
+    @Test
+    public void testPagedBytesStreamOutput() throws IOException {
+        PageRecycler recycler = new PageRecycler(16, 8);
+        BytesStreamOutput output = new BytesStreamOutput(recycler);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            byte[] b = ("chunk" + i).getBytes();
+            output.write(b, 0, b.length);
+            output.write('|');
+            expected.write(b, 0, b.length);
+            expected.write('|');
+        }
+        BytesReference bytes = output.bytes();
+        assertArrayEquals(expected.toByteArray(), bytes.toBytes());
+        assertEquals(expected.toString(), bytes.toUtf8());
+        assertEquals(expected.toString().indexOf('c', 300), bytes.indexOf((byte) 'c', 300, 100));
+        assertEquals(expected.toString().substring(10, 50), bytes.slice(10, 40).toUtf8());
+        assertEquals(expected.toString().charAt(77), (char) bytes.get(77));
+        // keep first page only
+        output.reset();
+        assertEquals(1, recycler.getOutstandingPages());
+        output.write(new byte[] { 'a', 'b' }, 0, 2);
+        assertEquals("ab", output.bytes().toUtf8());
+        output.release();
+        assertEquals(0, recycler.getOutstandingPages());
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        PageRecycler recycler = new PageRecycler(16, 8, true);
+        BytesStreamOutput output = new BytesStreamOutput(recycler);
+        output.write('a');
+        output.release();
+        leak(recycler);
+        for (int i = 0; i < 50 && recycler.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(20L);
+        }
+        assertEquals(1, recycler.getLeaks());
+    }
+
+    @Test
+    public void testRecycledChunkStream() throws Exception {
+        String s = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream();
+             BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 8192)) {
+            list1.addAll(chunks(stream));
+        }
+        PageRecycler recycler = new PageRecycler(64, 16);
+        for (int i = 0; i < 2; i++) {
+            List<String> list2 = new ArrayList<>();
+            try (InputStream in = getClass().getResource(s).openStream();
+                 BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 64, recycler)) {
+                list2.addAll(chunks(stream));
+            }
+            assertEquals(list1, list2);
+            assertEquals(0, recycler.getOutstandingPages());
+        }
+    }
+
+    @Test
+    public void testChunkPagesKeptUntilNextChunk() throws Exception {
+        PageRecycler recycler = new PageRecycler(1024, 16);
+        byte[] b = new byte[3000 + 1 + 10 + 1];
+        Arrays.fill(b, 0, 3000, (byte) 'a');
+        b[3000] = (byte) InformationSeparator.RS;
+        Arrays.fill(b, 3001, 3011, (byte) 'b');
+        b[3011] = (byte) InformationSeparator.GS;
+        try (BufferedSeparatorInputStream stream =
+                     new BufferedSeparatorInputStream(new ByteArrayInputStream(b), 1024, recycler)) {
+            Chunk<byte[], BytesReference> chunk = stream.readChunk();
+            // another owner obtains and fills pages while the chunk is not decoded yet
+            List<byte[]> pages = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                byte[] page = recycler.obtain();
+                Arrays.fill(page, (byte) 'x');
+                pages.add(page);
+            }
+            byte[] expected = new byte[3000];
+            Arrays.fill(expected, (byte) 'a');
+            assertArrayEquals(expected, chunk.data().toBytes());
+            pages.forEach(recycler::release);
+            chunk = stream.readChunk();
+            assertEquals("bbbbbbbbbb", chunk.data().toUtf8());
+        }
+        assertEquals(0, recycler.getOutstandingPages());
+    }
+
+    @Test
+    public void testRecycledDialectStream() throws Exception {
+        String s = "/org/xbib/marc/dialects/pica/pica.binary";
+        String expected = pica(s, null);
+        PageRecycler recycler = new PageRecycler(64, 16);
+        assertEquals(expected, pica(s, recycler));
+        assertEquals(0, recycler.getOutstandingPages());
+    }
+
+    @Test
+    public void testRecycledWriter() throws Exception {
+        String s = "/org/xbib/marc/chabon.mrc";
+        PageRecycler recycler = new PageRecycler(64, 16);
+        for (boolean recordBuffering : new boolean[] { false, true }) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (InputStream in = getClass().getResource(s).openStream();
+                 MarcWriter writer = new MarcWriter(expected, StandardCharsets.UTF_8)
+                         .setRecordBuffering(recordBuffering)) {
+                Marc.builder().setInputStream(in).setMarcRecordListener(writer).build().writeRecords();
+            }
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (InputStream in = getClass().getResource(s).openStream();
+                 MarcWriter writer = new MarcWriter(actual, StandardCharsets.UTF_8)
+                         .setRecordBuffering(recordBuffering)
+                         .setPageRecycler(recycler)) {
+                Marc.builder().setInputStream(in).setMarcRecordListener(writer).build().writeRecords();
+            }
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            assertEquals(0, recycler.getOutstandingPages());
+        }
+    }
+
+    private String pica(String s, PageRecycler recycler) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream in = getClass().getResource(s).openStream();
+             MarcWriter writer = new MarcWriter(outputStream, StandardCharsets.UTF_8)) {
+            Marc marc = Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .setPageRecycler(recycler)
+                    .setMarcListener(writer)
+                    .build();
+            try (PicaInputStream stream = marc.pica()) {
+                marc.wrapIntoCollection(stream);
+            }
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void leak(PageRecycler recycler) throws IOException {
+        BytesStreamOutput output = new BytesStreamOutput(recycler);
+        output.write('a');
+    }
+
+    private static List<String> chunks(ChunkStream<byte[], BytesReference> stream) throws IOException {
+        List<String> list = new ArrayList<>();
+        Chunk<byte[], BytesReference> chunk;
+        while ((chunk = stream.readChunk()) != null) {
+            list.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public void testRoundtrip() throws Exception {
+        byte[] b;
+        try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc").openStream()) {
+            b = in.readAllBytes();
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            for (int blockSize : new int[] { 100, 4096, 65536, 1 << 20 }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out,
+                        Deflater.BEST_COMPRESSION, blockSize, false, executorService, 8)) {
+                    // write in odd pieces
+                    for (int i = 0; i < b.length; i += 777) {
+                        gzip.write(b, i, Math.min(777, b.length - i));
+                    }
+                }
+                assertArrayEquals(b, gunzip(out.toByteArray()));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressionRatio() throws Exception {
+        byte[] b;
+        try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc").openStream()) {
+            b = in.readAllBytes();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, Deflater.DEFAULT_COMPRESSION,
+                64 * 1024)) {
+            gzip.write(b);
+        }
+        assertArrayEquals(b, gunzip(out.toByteArray()));
+        // the dictionary of the previous block keeps the ratio close to single stream compression
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(b);
+        deflater.finish();
+        byte[] buf = new byte[b.length];
+        int n = 0;
+        while (!deflater.finished()) {
+            n += deflater.deflate(buf);
+        }
+        deflater.end();
+        assertTrue(out.size() < n * 1.02 + 1024);
+    }
+
+    @Test
+    public void testSyncFlush() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, Deflater.DEFAULT_COMPRESSION,
+                    1024, true, executorService, 2);
+            gzip.write("Hello".getBytes());
+            gzip.flush();
+            // a sync flushed prefix can be inflated without the rest
+            byte[] prefix = out.toByteArray();
+            GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(prefix));
+            assertArrayEquals("Hello".getBytes(), in.readNBytes(5));
+            gzip.write(" World".getBytes());
+            gzip.close();
+            assertArrayEquals("Hello World".getBytes(), gunzip(out.toByteArray()));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(out).close();
+        assertArrayEquals(new byte[0], gunzip(out.toByteArray()));
+    }
+
+    @Test
+    public void testWriterCompressionSettings() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc").openStream();
+             MarcWriter writer = new MarcWriter(expected, StandardCharsets.UTF_8)) {
+            Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8).setMarcListener(writer).build()
+                    .writeCollection();
+        }
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Executor executor = runnable -> {
+            tasks.incrementAndGet();
+            executorService.execute(runnable);
+        };
+        try {
+            for (int level : new int[] { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED }) {
+                Path path = Paths.get("build/periouni-level" + level + "-0.mrc.gz");
+                try (InputStream in = getClass().getResource("/org/xbib/marc/dialects/unimarc/periouni.mrc")
+                        .openStream();
+                     MarcWriter writer = new MarcWriter("build/periouni-level" + level + "-%d.mrc.gz",
+                             StandardCharsets.UTF_8, 65536, -1, true, level, 4096, executor)) {
+                    Marc.builder().setInputStream(in).setCharset(StandardCharsets.UTF_8).setMarcListener(writer)
+                            .build().writeCollection();
+                    assertNull(writer.getException());
+                }
+                byte[] b = Files.readAllBytes(path);
+                assertArrayEquals(expected.toByteArray(), gunzip(b));
+                // stored blocks are larger than the input
+                assertEquals(level == Deflater.NO_COMPRESSION, b.length > expected.size());
+            }
+            // one task per block of 4096 bytes
+            assertTrue(tasks.get() >= 2 * (expected.size() / 4096));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static byte[] gunzip(byte[] b) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(b))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -21,7 +21,9 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -112,4 +114,21 @@ public class PatternInputStreamTest {
         assertEquals(20000, count.get());
     }
 
+    @Test
+    public void testPatternAcrossBufferRefills() throws IOException {
+        byte[] b = "Hello\r\r\nWorld\r\r\n\r\r\nHello".getBytes(StandardCharsets.UTF_8);
+        byte[] pattern = "\r\r\n".getBytes(StandardCharsets.UTF_8);
+        for (int bufferSize : new int[] { 1, 2, 3, 5, 8192 }) {
+            PatternInputStream separatorStream =
+                    new PatternInputStream(new ByteArrayInputStream(b), pattern, bufferSize);
+            List<String> list = new ArrayList<>();
+            Chunk<byte[], BytesReference> chunk;
+            while ((chunk = separatorStream.readChunk()) != null) {
+                list.add(chunk.data().toUtf8());
+            }
+            separatorStream.close();
+            assertEquals("[Hello, World, , Hello]", list.toString());
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcRecord;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordFramingChunkStreamTest {
+
+    @Test
+    public void testSameChunksAsBufferedStream() throws Exception {
+        String s = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            list1.addAll(chunks(new BufferedSeparatorInputStream(in, 8192)));
+        }
+        List<String> list2 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream();
+             RecordFramingChunkStream stream = new RecordFramingChunkStream(in, 8192)) {
+            list2.addAll(chunks(stream));
+            assertEquals(3064, stream.getRecordCounter());
+            assertFalse(stream.isFallback());
+        }
+        assertEquals(list1, list2);
+    }
+
+    @Test
+    public void testFallbackOnBadRecordLength() throws Exception {
+        // zdbtitutf8.mrc contains records with a record length that does not match the record
+        String s = "/org/xbib/marc/zdbtitutf8.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            list1.addAll(chunks(new BufferedSeparatorInputStream(in, 8192)));
+        }
+        List<String> list2 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream();
+             RecordFramingChunkStream stream = new RecordFramingChunkStream(in, 8192)) {
+            list2.addAll(chunks(stream));
+            assertTrue(stream.isFallback());
+        }
+        assertEquals(list1, list2);
+    }
+
+    @Test
+    public void testRecordsWithRecordFraming() throws Exception {
+        String s = "/org/xbib/marc/chabon.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            for (MarcRecord marcRecord : Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .iterable()) {
+                list1.add(marcRecord.toString());
+            }
+        }
+        List<String> list2 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            for (MarcRecord marcRecord : Marc.builder()
+                    .setInputStream(in)
+                    .enableRecordFraming()
+                    .setCharset(StandardCharsets.UTF_8)
+                    .iterable()) {
+                list2.add(marcRecord.toString());
+            }
+        }
+        assertEquals(list1, list2);
+    }
+
+    private static List<String> chunks(ChunkStream<byte[], BytesReference> stream) throws IOException {
+        List<String> list = new ArrayList<>();
+        Chunk<byte[], BytesReference> chunk;
+        while ((chunk = stream.readChunk()) != null) {
+            list.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+        }
+        return list;
+    }
+}
@@ -21,6 +21,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ReplaceStringInputStreamTest {
 
@@ -123,6 +125,14 @@ public class ReplaceStringInputStreamTest {
         in = new ReplaceStringInputStream(in, "GREEN", "grape");
         in = new ReplaceStringInputStream(in, "BLUE", "banana");
         assertStream("", expectedInputStream, in);
+        // all replacements in a single pass
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("RED", "pear");
+        map.put("GREEN", "grape");
+        map.put("BLUE", "banana");
+        expectedInputStream = new ByteArrayInputStream(expected.getBytes(StandardCharsets.UTF_8));
+        in = new ReplaceStringInputStream(new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)), map);
+        assertStream("", expectedInputStream, in);
     }
 
 }
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcRecord;
+import org.xbib.marc.MarcRecordListener;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SeparatorChunkFeederTest {
+
+    @Test
+    public void testSameChunksAsBufferedStream() throws Exception {
+        String s = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+        List<String> list1 = new ArrayList<>();
+        byte[] bytes;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            bytes = in.readAllBytes();
+        }
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 8192);
+            Chunk<byte[], BytesReference> chunk;
+            while ((chunk = stream.readChunk()) != null) {
+                list1.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+            }
+        }
+        // fragments smaller and larger than chunks, in heap and direct buffers
+        for (int fragmentSize : new int[] { 1, 7, 4096 }) {
+            for (boolean direct : new boolean[] { false, true }) {
+                List<String> list2 = new ArrayList<>();
+                try (SeparatorChunkFeeder feeder = new SeparatorChunkFeeder(chunk ->
+                        list2.add(chunk.separator()[0] + ":" + chunk.data().toUtf8()))) {
+                    feed(feeder, bytes, fragmentSize, direct);
+                }
+                assertEquals(list1, list2);
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsFromFeeder() throws Exception {
+        String s = "/org/xbib/marc/summerland.mrc";
+        List<String> list1 = new ArrayList<>();
+        byte[] bytes;
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            bytes = in.readAllBytes();
+        }
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            for (MarcRecord marcRecord : Marc.builder()
+                    .setInputStream(in)
+                    .setCharset(StandardCharsets.UTF_8)
+                    .iterable()) {
+                list1.add(marcRecord.toString());
+            }
+        }
+        List<String> list2 = new ArrayList<>();
+        try (SeparatorChunkFeeder feeder = Marc.builder()
+                .setCharset(StandardCharsets.UTF_8)
+                .setMarcRecordListener(new MarcRecordListener() {
+                    @Override
+                    public void beginCollection() {
+                    }
+
+                    @Override
+                    public void record(MarcRecord marcRecord) {
+                        list2.add(marcRecord.toString());
+                    }
+
+                    @Override
+                    public void endCollection() {
+                    }
+                })
+                .iso2709Feeder()) {
+            feed(feeder, bytes, 13, false);
+        }
+        assertEquals(list1, list2);
+    }
+
+    @Test
+    public void testCloseTwice() throws Exception {
+        byte[] bytes;
+        try (InputStream in = getClass().getResource("/org/xbib/marc/summerland.mrc").openStream()) {
+            bytes = in.readAllBytes();
+        }
+        // the last record is not terminated, it is emitted on close
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == InformationSeparator.GS) {
+            length--;
+        }
+        List<String> list = new ArrayList<>();
+        SeparatorChunkFeeder feeder = Marc.builder()
+                .setCharset(StandardCharsets.UTF_8)
+                .setMarcRecordListener(new MarcRecordListener() {
+                    @Override
+                    public void beginCollection() {
+                    }
+
+                    @Override
+                    public void record(MarcRecord marcRecord) {
+                        list.add(marcRecord.toString());
+                    }
+
+                    @Override
+                    public void endCollection() {
+                    }
+                })
+                .iso2709Feeder();
+        feed(feeder, Arrays.copyOf(bytes, length), 13, false);
+        feeder.close();
+        assertEquals(1, list.size());
+        feeder.close();
+        assertEquals(1, list.size());
+    }
+
+    private static void feed(SeparatorChunkFeeder feeder, byte[] bytes, int fragmentSize, boolean direct)
+            throws Exception {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(fragmentSize) : ByteBuffer.allocate(fragmentSize);
+        for (int i = 0; i < bytes.length; i += fragmentSize) {
+            buffer.clear();
+            buffer.put(bytes, i, Math.min(fragmentSize, bytes.length - i));
+            buffer.flip();
+            feeder.feed(buffer);
+            assertEquals(buffer.limit(), buffer.position());
+        }
+    }
+}
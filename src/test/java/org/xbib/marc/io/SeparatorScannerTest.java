@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SeparatorScannerTest {
+
+    @Test
+    public void testSeparatorPositions() {
+        byte[] b = "0123456789abcdef\u001fghij\u001eklmnopqrstuvwxyz\u001d\u001c".getBytes();
+        assertEquals(16, SeparatorScanner.indexOfSeparator(b, 0, b.length));
+        assertEquals(21, SeparatorScanner.indexOfSeparator(b, 17, b.length));
+        assertEquals(38, SeparatorScanner.indexOfSeparator(b, 22, b.length));
+        assertEquals(39, SeparatorScanner.indexOfSeparator(b, 39, b.length));
+        assertEquals(-1, SeparatorScanner.indexOfSeparator(b, 22, 38));
+        assertEquals(InformationSeparator.RS, (char) b[SeparatorScanner.indexOfSeparator(b, 17, b.length)]);
+    }
+
+    @Test
+    public void testRandomAgainstByteByByte() {
+        Random random = new Random(42L);
+        for (int n = 0; n < 10000; n++) {
+            byte[] b = new byte[random.nextInt(64)];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (byte) (random.nextInt(8) == 0 ? 0x1c + random.nextInt(4) : random.nextInt(256));
+            }
+            int from = random.nextInt(b.length + 1);
+            int to = from + random.nextInt(b.length - from + 1);
+            int expected = -1;
+            for (int i = from; i < to; i++) {
+                if (b[i] >= 0x1c && b[i] <= 0x1f) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, SeparatorScanner.indexOfSeparator(b, from, to));
+            byte value = (byte) random.nextInt(256);
+            expected = -1;
+            for (int i = from; i < to; i++) {
+                if (b[i] == value) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, SeparatorScanner.indexOf(b, from, to, value));
+        }
+    }
+
+    @Test
+    public void testSameChunksForSmallBuffers() throws Exception {
+        String s = "/org/xbib/marc/dialects/unimarc/periouni.mrc";
+        List<String> list1 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 8192);
+            Chunk<byte[], BytesReference> chunk;
+            while ((chunk = stream.readChunk()) != null) {
+                list1.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+            }
+        }
+        List<String> list2 = new ArrayList<>();
+        try (InputStream in = getClass().getResource(s).openStream()) {
+            // small buffer size to force many chunks crossing buffer boundaries
+            BufferedSeparatorInputStream stream = new BufferedSeparatorInputStream(in, 13);
+            Chunk<byte[], BytesReference> chunk;
+            while ((chunk = stream.readChunk()) != null) {
+                list2.add(chunk.separator()[0] + ":" + chunk.data().toUtf8());
+            }
+        }
+        assertEquals(list1, list2);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TokenReplacementInputStreamTest {
+
+    @Test
+    public void testLongestTokenWins() throws IOException {
+        assertEquals("x[abc]y[bc]", replace("xabcybc", Arrays.asList("bc", "abc"), true));
+    }
+
+    @Test
+    public void testEarliestEndWins() throws IOException {
+        // "ab" ends before "abcd" can end
+        assertEquals("[ab]cd", replace("abcd", Arrays.asList("abcd", "ab"), true));
+    }
+
+    @Test
+    public void testCaseInsensitive() throws IOException {
+        assertEquals("[red] [red] [blue]", replace("Red RED blue", Arrays.asList("RED", "Blue"), false));
+    }
+
+    @Test
+    public void testTokenHandlerCalls() throws IOException {
+        List<String> list = new ArrayList<>();
+        StreamTokenHandler handler = token -> {
+            list.add(token);
+            return new ByteArrayInputStream(new byte[0]);
+        };
+        InputStream in = new TokenReplacementInputStream(new ByteArrayInputStream("aXbYcX".getBytes(StandardCharsets.UTF_8)),
+                Arrays.asList("X", "Y"), handler);
+        assertEquals("abc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals("[X, Y, X]", list.toString());
+    }
+
+    @Test
+    public void testSingleByteReads() throws IOException {
+        InputStream in = new TokenReplacementInputStream(new ByteArrayInputStream("aXXb".getBytes(StandardCharsets.UTF_8)),
+                Arrays.asList("XX"), token -> new ByteArrayInputStream("y".getBytes(StandardCharsets.UTF_8)));
+        StringBuilder sb = new StringBuilder();
+        int ch;
+        while ((ch = in.read()) != -1) {
+            sb.append((char) ch);
+        }
+        assertEquals("ayb", sb.toString());
+    }
+
+    @Test
+    public void testTokensAcrossRefill() throws IOException {
+        // the buffer holds 8192 bytes, so tokens around this offset are split between two reads
+        String token = "TOKEN";
+        for (int offset = 8192 - token.length(); offset <= 8192; offset++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("x".repeat(offset)).append(token).append("y".repeat(100)).append(token);
+            String expected = sb.toString().replace(token, "[" + token + "]");
+            assertEquals(expected, replace(sb.toString(), Arrays.asList(token, "OKX"), true), "offset " + offset);
+            // an underlying stream that returns few bytes at a time refills the buffer more often
+            InputStream in = new TokenReplacementInputStream(new TrickleInputStream(sb.toString()),
+                    Arrays.asList(token, "OKX"), t -> new ByteArrayInputStream(("[" + t + "]")
+                    .getBytes(StandardCharsets.UTF_8)));
+            assertEquals(expected, new String(in.readAllBytes(), StandardCharsets.UTF_8), "offset " + offset);
+        }
+    }
+
+    @Test
+    public void testSameAsFixedTokenReplacement() throws IOException {
+        Random random = new Random(42L);
+        char[] alphabet = { 'a', 'b', 'A', 'B', 'c' };
+        for (int i = 0; i < 200; i++) {
+            StringBuilder token = new StringBuilder();
+            int tokenLength = 1 + random.nextInt(4);
+            for (int j = 0; j < tokenLength; j++) {
+                token.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            StringBuilder input = new StringBuilder();
+            int inputLength = random.nextInt(20000);
+            for (int j = 0; j < inputLength; j++) {
+                input.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            boolean caseSensitive = random.nextBoolean();
+            StreamTokenHandler handler = t -> new ByteArrayInputStream(("[" + t + "]")
+                    .getBytes(StandardCharsets.UTF_8));
+            byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+            InputStream expected = new FixedTokenReplacementInputStream(new ByteArrayInputStream(bytes),
+                    token.toString(), handler, caseSensitive);
+            InputStream actual = new TokenReplacementInputStream(new TrickleInputStream(input.toString()),
+                    List.of(token.toString()), handler, caseSensitive);
+            assertEquals(new String(expected.readAllBytes(), StandardCharsets.UTF_8),
+                    new String(actual.readAllBytes(), StandardCharsets.UTF_8),
+                    "token " + token + " case sensitive " + caseSensitive);
+        }
+    }
+
+    private static String replace(String s, List<String> tokens, boolean caseSensitive) throws IOException {
+        InputStream in = new TokenReplacementInputStream(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)),
+                tokens, token -> new ByteArrayInputStream(("[" + token + "]").getBytes(StandardCharsets.UTF_8)),
+                caseSensitive);
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An input stream that returns at most 1000 bytes for each read.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(String s) {
+            super(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+}
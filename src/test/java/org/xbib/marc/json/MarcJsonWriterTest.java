@@ -36,12 +36,14 @@ import org.xbib.marc.StreamMatcher;
 import org.xbib.marc.transformer.value.MarcValueTransformers;
 import org.xbib.marc.xml.MarcContentHandler;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.text.Normalizer;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class MarcJsonWriterTest {
 
@@ -225,9 +227,7 @@ public class MarcJsonWriterTest {
     }
 
     /**
-     * Ugly idea to check against gzipped file lengths!
-     *
-     * TODO: fix the test, gzip and gunzip, and check against clear text content.
+     * Check the gunzipped file lengths against the lengths of the uncompressed bulk files.
      *
      * @throws Exception if test errors
      */
@@ -252,21 +252,21 @@ public class MarcJsonWriterTest {
                     .writeCollection();
             assertNull(writer.getException());
             assertEquals(10, writer.getRecordCounter());
-            Path f0 = Paths.get("build/bulk0.jsonl.gz");
-            assertTrue(Files.exists(f0));
-            assertEquals(2142, Files.size(f0));
-            Path f1 = Paths.get("build/bulk1.jsonl.gz");
-            assertTrue(Files.exists(f1));
-            assertEquals(2606, Files.size(f1));
-            Path f2 = Paths.get("build/bulk2.jsonl.gz");
-            assertTrue(Files.exists(f2));
-            assertEquals(2664, Files.size(f2));
-            Path f3 = Paths.get("build/bulk3.jsonl.gz");
-            assertTrue(Files.exists(f3));
-            assertEquals(1023, Files.size(f3));
-            Path f4 = Paths.get("build/bulk4.jsonl.gz");
-            assertFalse(Files.exists(f4));
         }
+        Path f0 = Paths.get("build/bulk0.jsonl.gz");
+        assertTrue(Files.exists(f0));
+        assertEquals(6295, uncompressedSize(f0));
+        Path f1 = Paths.get("build/bulk1.jsonl.gz");
+        assertTrue(Files.exists(f1));
+        assertEquals(7410, uncompressedSize(f1));
+        Path f2 = Paths.get("build/bulk2.jsonl.gz");
+        assertTrue(Files.exists(f2));
+        assertEquals(6706, uncompressedSize(f2));
+        Path f3 = Paths.get("build/bulk3.jsonl.gz");
+        assertTrue(Files.exists(f3));
+        assertEquals(2204, uncompressedSize(f3));
+        Path f4 = Paths.get("build/bulk4.jsonl.gz");
+        assertFalse(Files.exists(f4));
     }
 
     @Test
@@ -423,4 +423,10 @@ public class MarcJsonWriterTest {
         // leader is not written if empty, format and type may be null, JSON key duplicates are allowed. The MARC field structure will be lost.
         assertEquals("{\"016\":{\"7 \":[{\"2\":\"DE-101\"},{\"a\":\"010000151\"}]},\"016\":{\"7 \":[{\"2\":\"DE-600\"},{\"a\":\"23-1\"}]}}", stringWriter.toString());
     }
+
+    private static long uncompressedSize(Path path) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
 }
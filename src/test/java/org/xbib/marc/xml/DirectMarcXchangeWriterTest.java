@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2016-2022 Jörg Prante <joergprante@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      <a href="http://www.apache.org/licenses/LICENSE-2.0">Apache License 2.0</a>
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.xbib.marc.xml;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.marc.Marc;
+import org.xbib.marc.MarcField;
+import org.xbib.marc.MarcRecord;
+import org.xbib.marc.label.RecordLabel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectMarcXchangeWriterTest {
+
+    /**
+     * Write records with the StaX writer and with the direct writer, and compare the records read from both.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testSameRecords() throws Exception {
+        for (boolean indent : new boolean[] { false, true }) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (MarcXchangeWriter writer = new MarcXchangeWriter(expected, indent);
+                 InputStream inputStream = getClass().getResource("/org/xbib/marc/zdblokutf8.mrc").openStream()) {
+                writer.startDocument();
+                Marc.builder()
+                        .setInputStream(inputStream)
+                        .setMarcRecordListener(writer)
+                        .build()
+                        .writeRecordCollection();
+                writer.endDocument();
+                assertNull(writer.getException());
+            }
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (DirectMarcXchangeWriter writer = new DirectMarcXchangeWriter(actual, indent);
+                 InputStream inputStream = getClass().getResource("/org/xbib/marc/zdblokutf8.mrc").openStream()) {
+                writer.startDocument();
+                Marc.builder()
+                        .setInputStream(inputStream)
+                        .setMarcRecordListener(writer)
+                        .build()
+                        .writeRecordCollection();
+                writer.endDocument();
+                assertNull(writer.getException());
+                assertEquals(293, writer.getRecordCounter());
+            }
+            List<String> records = read(actual.toByteArray());
+            assertEquals(293, records.size());
+            assertEquals(read(expected.toByteArray()), records);
+        }
+    }
+
+    /**
+     * Write records from MARC events with the direct MarcXML writer.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMarcXmlEvents() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (DirectMarcXmlWriter writer = new DirectMarcXmlWriter(outputStream);
+             InputStream inputStream = getClass().getResource("/org/xbib/marc/chabon.mrc").openStream()) {
+            writer.startDocument();
+            Marc.builder()
+                    .setInputStream(inputStream)
+                    .setMarcListener(writer)
+                    .build()
+                    .writeCollection();
+            writer.endDocument();
+            assertNull(writer.getException());
+        }
+        String xml = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(xml.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<collection xmlns=\"http://www.loc.gov/MARC21/slim\""));
+        assertTrue(xml.contains("<record><leader>"));
+        assertEquals(2, read(outputStream.toByteArray()).size());
+    }
+
+    /**
+     * Special characters are escaped, and characters that are not allowed in XML are replaced.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testEscape() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (DirectMarcXchangeWriter writer = new DirectMarcXchangeWriter(outputStream)) {
+            writer.beginCollection();
+            writer.beginRecord(null, null);
+            writer.leader(RecordLabel.builder().build());
+            writer.field(MarcField.builder().tag("001").value("1<2").build());
+            writer.field(MarcField.builder().tag("245").indicator("10")
+                    .subfield("a", "Tom & \"Jerry\" \u001f\uD83D\uDE00\uD800")
+                    .subfield("b", "\u00e4\u20ac").build());
+            writer.endRecord();
+            writer.endCollection();
+            assertNull(writer.getException());
+        }
+        String xml = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<controlfield tag=\"001\">1&lt;2</controlfield>"));
+        assertTrue(xml.contains("<datafield tag=\"245\" ind1=\"1\" ind2=\"0\">"));
+        assertTrue(xml.contains("<subfield code=\"a\">Tom &amp; \"Jerry\" \ufffd\uD83D\uDE00\ufffd</subfield>"));
+        assertTrue(xml.contains("<subfield code=\"b\">\u00e4\u20ac</subfield>"));
+        assertFalse(xml.contains("\u001f"));
+        List<String> records = read(outputStream.toByteArray());
+        assertEquals(1, records.size());
+    }
+
+    private static List<String> read(byte[] bytes) throws IOException {
+        try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
+            return Marc.builder()
+                    .setInputStream(inputStream)
+                    .xmlRecordStream()
+                    .map(MarcRecord::toString)
+                    .collect(Collectors.toList());
+        }
+    }
+}